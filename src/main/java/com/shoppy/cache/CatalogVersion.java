@@ -0,0 +1,39 @@
+package com.shoppy.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter bumped after every product write, used as the entity tag of catalog responses. The tag also carries
+ * the startup time so a restart never reuses a tag handed out by the previous process.
+ */
+@Component
+public class CatalogVersion {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    public void increment() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Strong entity tag of the current version.
+     */
+    public String etag() {
+        return etag("");
+    }
+
+    /**
+     * Strong entity tag of the current version for one of several representations of the same resource.
+     */
+    public String etag(String variant) {
+        return '"' + epoch + '-' + version.get() + (variant.isEmpty() ? "" : '-' + variant) + '"';
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.shoppy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import com.shoppy.exception.APIException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounded record of recent idempotency keys and the outcome of the request that first used them: success, or the
+ * conflict it failed with. A request whose key is already present runs nothing; it waits a bounded time for the first
+ * one when that is still running and answers with its outcome, or with a conflict when the first one is still in
+ * progress. Requests failing with any other error, including validation errors the client can fix, forget their key
+ * so they can be retried. Keys are only remembered by this instance. Statistics are published under the
+ * "idempotency-keys" cache name.
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final String CACHE_NAME = "idempotency-keys";
+
+    private final Cache<String, CompletableFuture<APIException>> cache;
+    private final Duration waitTimeout;
+
+    public IdempotencyCache(
+            @Value("${shoppy.cache.idempotency-keys.maximum-size:10000}") long maximumSize,
+            @Value("${shoppy.cache.idempotency-keys.expire-after-write:24h}") Duration expireAfterWrite,
+            @Value("${shoppy.cache.idempotency-keys.wait-timeout:10s}") Duration waitTimeout,
+            MeterRegistry meterRegistry
+    ) {
+        this.waitTimeout = waitTimeout;
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Runs the action once per key, rethrowing the stored conflict when the first run failed with one.
+     *
+     * @return whether the outcome was replayed instead of running the action
+     */
+    public boolean execute(String key, Runnable action) {
+        CompletableFuture<APIException> outcome = new CompletableFuture<>();
+        CompletableFuture<APIException> existing = cache.asMap().putIfAbsent(key, outcome);
+        if (existing != null) {
+            APIException failure = await(existing);
+            if (failure != null) {
+                throw failure;
+            }
+            return true;
+        }
+        try {
+            action.run();
+            outcome.complete(null);
+            return false;
+        }
+        catch (APIException exception) {
+            if (exception.getStatus() == HttpStatus.CONFLICT) {
+                outcome.complete(exception);
+                throw exception;
+            }
+            cache.asMap().remove(key, outcome);
+            outcome.completeExceptionally(exception);
+            throw exception;
+        }
+        catch (RuntimeException | Error exception) {
+            cache.asMap().remove(key, outcome);
+            outcome.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    private APIException await(CompletableFuture<APIException> outcome) {
+        try {
+            return outcome.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException exception) {
+            throw new APIException("request in progress", HttpStatus.CONFLICT);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new APIException("request in progress", HttpStatus.CONFLICT);
+        }
+        catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+}
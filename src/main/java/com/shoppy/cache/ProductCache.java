@@ -0,0 +1,92 @@
+package com.shoppy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import com.shoppy.model.Product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of products by id. Entries are immutable snapshots and every read returns a fresh copy,
+ * so callers can neither see each other's changes nor alter the cached state. Hit, miss and eviction counters are
+ * published under the "products" cache name (see /actuator/metrics/cache.gets).
+ */
+@Component
+public class ProductCache {
+
+    public static final String CACHE_NAME = "products";
+
+    private final Cache<Long, CachedProduct> cache;
+
+    public ProductCache(
+            @Value("${shoppy.cache.products.maximum-size:10000}") long maximumSize,
+            @Value("${shoppy.cache.products.expire-after-write:5m}") Duration expireAfterWrite,
+            MeterRegistry meterRegistry
+    ) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached product or loads it with the given function. Missing products (null) are not cached.
+     */
+    public Product get(Long id, Function<Long, Product> loader) {
+        CachedProduct product = cache.get(id, key -> CachedProduct.of(loader.apply(key)));
+        return product == null ? null : product.toProduct();
+    }
+
+    /**
+     * Returns the products found for the given ids. Ids missing from the cache are handed to the loader in a single
+     * call; ids it does not return are left out of the result and not cached.
+     */
+    public Map<Long, Product> getAll(Collection<Long> ids, Function<Set<Long>, Map<Long, Product>> loader) {
+        Map<Long, CachedProduct> cached = cache.getAll(ids, missing -> {
+            Set<Long> keys = new HashSet<>();
+            missing.forEach(keys::add);
+            Map<Long, CachedProduct> loaded = new HashMap<>();
+            loader.apply(keys).forEach((id, product) -> loaded.put(id, CachedProduct.of(product)));
+            return loaded;
+        });
+        Map<Long, Product> products = new HashMap<>();
+        cached.forEach((id, product) -> products.put(id, product.toProduct()));
+        return products;
+    }
+
+    public void evict(Long id) {
+        cache.invalidate(id);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private record CachedProduct(Long id, String name, String description, Double price, Integer stock) {
+
+        private static CachedProduct of(Product product) {
+            return product == null ? null : new CachedProduct(product.getId(), product.getName(), product.getDescription(), product.getPrice(), product.getStock());
+        }
+
+        private Product toProduct() {
+            return new Product(id, name, description, price, stock);
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.shoppy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Short lived cache of listing totals. Entries are not invalidated on writes, so a total may lag behind the
+ * catalog by up to the expiry and must only be presented as an approximation. Statistics are published under
+ * the "product-counts" cache name.
+ */
+@Component
+public class ProductCountCache {
+
+    public static final String CACHE_NAME = "product-counts";
+
+    private final Cache<Object, Long> cache;
+
+    public ProductCountCache(
+            @Value("${shoppy.cache.product-counts.maximum-size:1000}") long maximumSize,
+            @Value("${shoppy.cache.product-counts.expire-after-write:1m}") Duration expireAfterWrite,
+            MeterRegistry meterRegistry
+    ) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached total for the key, counting it with the given function when absent or expired.
+     */
+    public long get(Object key, Supplier<Long> counter) {
+        return cache.get(key, ignored -> counter.get());
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.shoppy.cache;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+import com.shoppy.service.ProductChangeListener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded cache of the serialized JSON of the most read products, kept both plain and gzip compressed so
+ * repeated detail reads skip the repository, Jackson and the compressor. An entry is dropped as soon as its
+ * product is written. Statistics are published under the "product-responses" cache name.
+ */
+@Component
+public class ProductResponseCache implements ProductChangeListener {
+
+    public static final String CACHE_NAME = "product-responses";
+
+    private static final ObjectWriter jsonWriter = new JsonMapper().writer();
+
+    private final Cache<Long, SerializedProduct> cache;
+
+    public ProductResponseCache(
+            @Value("${shoppy.cache.product-responses.maximum-size:1000}") long maximumSize,
+            @Value("${shoppy.cache.product-responses.expire-after-write:5m}") Duration expireAfterWrite,
+            MeterRegistry meterRegistry
+    ) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the serialized product, serializing the one handed by the loader on a miss. Missing products (null)
+     * are not cached.
+     */
+    public SerializedProduct get(Long id, Function<Long, Product> loader) {
+        return cache.get(id, key -> {
+            Product product = loader.apply(key);
+            return product == null ? null : serialize(product);
+        });
+    }
+
+    public void evict(Long id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        evict(product.getId());
+    }
+
+    @Override
+    public void productDeleted(Long id) {
+        evict(id);
+    }
+
+    private static SerializedProduct serialize(Product product) {
+        try {
+            byte[] json = jsonWriter.writeValueAsBytes(product);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 2 + 32);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            return new SerializedProduct(json, compressed.toByteArray(), DigestUtils.md5DigestAsHex(json));
+        }
+        catch (IOException exception) {
+            throw new APIException(exception.getMessage());
+        }
+    }
+
+    /**
+     * @param hash hex digest of the plain JSON, usable as entity tag
+     */
+    public record SerializedProduct(byte[] json, byte[] gzip, String hash) {
+
+    }
+
+}
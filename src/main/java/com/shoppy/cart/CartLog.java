@@ -0,0 +1,333 @@
+package com.shoppy.cart;
+
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Item;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only binary log of cart changes. A record holds its type, the key of the cart and the changed values; only
+ * ids are logged, never the contents of products, addresses or payment methods. A record cut short by a crash ends
+ * the replay. Records are held in memory until {@link #commit} appends them in one write, which is cut back off the
+ * file when it fails, so the records of one change are logged all together or not at all; {@link #discard} drops
+ * them instead. {@link #rewrite} replaces the log with the records that rebuild the given carts; a rewrite that fails
+ * leaves the log as it was.
+ */
+final class CartLog implements Closeable {
+
+    private static final int CREATED = 1;
+    private static final int LINE = 2;
+    private static final int ADDRESS = 3;
+    private static final int PAYMENT_METHOD = 4;
+    private static final int DELETED = 5;
+
+    private final Path path;
+    private final boolean force;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream output = new DataOutputStream(pending);
+    private FileOutputStream file;
+    private ByteArrayOutputStream carried;
+    private long records;
+    private long committed;
+
+    CartLog(Path path, boolean force) {
+        this.path = path;
+        this.force = force;
+    }
+
+    Map<String, Cart> replay() throws IOException {
+        Map<String, Cart> carts = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return carts;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int type;
+            while ((type = input.read()) != -1) {
+                String key = input.readUTF();
+                switch (type) {
+                    case CREATED -> {
+                        UUID id = readId(input);
+                        carts.put(key, new Cart(id, LocalDateTime.parse(input.readUTF())));
+                    }
+                    case LINE -> {
+                        long productId = input.readLong();
+                        int quantity = input.readInt();
+                        Cart cart = carts.get(key);
+                        if (cart != null && quantity == 0) {
+                            cart.lines.remove(productId);
+                        }
+                        else if (cart != null) {
+                            cart.lines.put(productId, quantity);
+                        }
+                    }
+                    case ADDRESS -> {
+                        UUID id = input.readBoolean() ? readId(input) : null;
+                        carts.computeIfPresent(key, (ignored, cart) -> cart.address(id));
+                    }
+                    case PAYMENT_METHOD -> {
+                        UUID id = input.readBoolean() ? readId(input) : null;
+                        carts.computeIfPresent(key, (ignored, cart) -> cart.paymentMethod(id));
+                    }
+                    case DELETED -> carts.remove(key);
+                    default -> throw new IOException("Unknown cart log record type " + type);
+                }
+            }
+        }
+        catch (EOFException exception) {
+            // The last record was cut short, the change it held was never applied
+        }
+        return carts;
+    }
+
+    void created(String key, Checkout cart) throws IOException {
+        start(CREATED, key);
+        writeId(cart.getId());
+        output.writeUTF(cart.getCreatedDate().toString());
+    }
+
+    /**
+     * Sets the quantity of a line; zero removes it.
+     */
+    void line(String key, Long productId, int quantity) throws IOException {
+        start(LINE, key);
+        output.writeLong(productId);
+        output.writeInt(quantity);
+    }
+
+    void address(String key, UUID id) throws IOException {
+        start(ADDRESS, key);
+        writeOptionalId(id);
+    }
+
+    void paymentMethod(String key, UUID id) throws IOException {
+        start(PAYMENT_METHOD, key);
+        writeOptionalId(id);
+    }
+
+    void deleted(String key) throws IOException {
+        start(DELETED, key);
+    }
+
+    /**
+     * Appends the records written since the last commit to the file and, when forced, waits until they are on disk.
+     * When that fails the file is truncated back to where it ended and the records are discarded.
+     */
+    void commit() throws IOException {
+        if (pending.size() > 0) {
+            long end = file.getChannel().size();
+            try {
+                pending.writeTo(file);
+                if (carried != null) {
+                    pending.writeTo(carried);
+                }
+                if (force) {
+                    file.getChannel().force(false);
+                }
+            }
+            catch (IOException exception) {
+                discard();
+                file.getChannel().truncate(end);
+                throw exception;
+            }
+            pending.reset();
+        }
+        committed = records;
+    }
+
+    /**
+     * Drops the records written since the last commit.
+     */
+    void discard() {
+        pending.reset();
+        records = committed;
+    }
+
+    /**
+     * Replaces the log with the records that rebuild the given carts.
+     */
+    void rewrite(Map<String, Checkout> carts) throws IOException {
+        Rewrite rewrite = rewrite();
+        try {
+            rewrite.write(carts);
+            rewrite.finish();
+        }
+        catch (IOException | RuntimeException exception) {
+            rewrite.abandon(exception);
+            throw exception;
+        }
+    }
+
+    /**
+     * Starts replacing the log with a copy of the carts as they are now. The copy is written to a temporary file by
+     * {@link Rewrite#write}, which may run on another thread while this log keeps appending; the records committed in
+     * the meantime are kept aside and appended to the copy by {@link Rewrite#finish}.
+     */
+    Rewrite rewrite() {
+        discard();
+        carried = new ByteArrayOutputStream();
+        return new Rewrite(path.resolveSibling(path.getFileName() + ".tmp"), committed);
+    }
+
+    /**
+     * Records written since the log was last rewritten, counting the ones the rewrite wrote.
+     */
+    long records() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    private void open(Path target, boolean append) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        file = new FileOutputStream(target.toFile(), append);
+    }
+
+    private void start(int type, String key) throws IOException {
+        output.writeByte(type);
+        output.writeUTF(key);
+        records++;
+    }
+
+    private void writeOptionalId(UUID id) throws IOException {
+        output.writeBoolean(id != null);
+        if (id != null) {
+            writeId(id);
+        }
+    }
+
+    private void writeId(UUID id) throws IOException {
+        output.writeLong(id.getMostSignificantBits());
+        output.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readId(DataInputStream input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    /**
+     * A rewrite of the log into a temporary file. {@link #write} only touches that file; {@link #finish} and
+     * {@link #abandon} must not run concurrently with the changes of the log.
+     */
+    final class Rewrite {
+
+        private final Path target;
+        private final CartLog copy;
+        private final long since;
+
+        private Rewrite(Path target, long since) {
+            this.target = target;
+            this.copy = new CartLog(target, false);
+            this.since = since;
+        }
+
+        void write(Map<String, Checkout> carts) throws IOException {
+            copy.open(target, false);
+            for (Map.Entry<String, Checkout> entry : carts.entrySet()) {
+                Checkout cart = entry.getValue();
+                copy.created(entry.getKey(), cart);
+                for (Item item : cart.getItems()) {
+                    copy.line(entry.getKey(), item.getProduct().getId(), item.getQuantity());
+                }
+                if (cart.getAddress() != null) {
+                    copy.address(entry.getKey(), cart.getAddress().getId());
+                }
+                if (cart.getPaymentMethod() != null) {
+                    copy.paymentMethod(entry.getKey(), cart.getPaymentMethod().getId());
+                }
+                copy.commit();
+            }
+        }
+
+        /**
+         * Appends the records committed since the rewrite started, forces the copy to disk and moves it over the log.
+         * Returns the number of records that rebuilt the carts.
+         */
+        long finish() throws IOException {
+            carried.writeTo(copy.file);
+            copy.file.getChannel().force(false);
+            copy.close();
+            close();
+            Files.move(target, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open(path, true);
+            records = copy.records + committed - since;
+            committed = records;
+            carried = null;
+            return copy.records;
+        }
+
+        /**
+         * Deletes the copy and appends to the log again, as if the rewrite never started. What fails while cleaning
+         * up is added to the given exception.
+         */
+        void abandon(Exception exception) {
+            carried = null;
+            try {
+                copy.close();
+                Files.deleteIfExists(target);
+            }
+            catch (IOException cleanup) {
+                exception.addSuppressed(cleanup);
+            }
+            try {
+                if (file == null) {
+                    open(path, true);
+                }
+            }
+            catch (IOException reopen) {
+                exception.addSuppressed(reopen);
+            }
+        }
+
+    }
+
+    /**
+     * A cart as rebuilt from the log, holding ids only.
+     */
+    static final class Cart {
+
+        final UUID id;
+        final LocalDateTime createdDate;
+        final Map<Long, Integer> lines = new LinkedHashMap<>();
+        UUID addressId;
+        UUID paymentMethodId;
+
+        private Cart(UUID id, LocalDateTime createdDate) {
+            this.id = id;
+            this.createdDate = createdDate;
+        }
+
+        private Cart address(UUID id) {
+            addressId = id;
+            return this;
+        }
+
+        private Cart paymentMethod(UUID id) {
+            paymentMethodId = id;
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.shoppy.cart;
+
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+
+import java.security.Principal;
+
+/**
+ * Storage of the customers' carts, chosen with {@code shoppy.cart.store}. Carts handed out by a store belong to the
+ * caller: changes are only kept once they are passed back to {@link #save}.
+ */
+public interface CartStore {
+
+    /**
+     * The cart of the customer, or null when there is none.
+     */
+    Checkout find(Principal principal);
+
+    /**
+     * The cart of the customer for display, with everything it references loaded, or null when there is none.
+     */
+    default Checkout read(Principal principal) {
+        return find(principal);
+    }
+
+    Checkout findOrCreate(Principal principal);
+
+    void save(Principal principal, Checkout checkout);
+
+    void delete(Principal principal, Checkout checkout);
+
+    /**
+     * The cart of the customer as entities of the current persistence context, ready for placing the order, or null
+     * when there is none.
+     */
+    Checkout materialize(Principal principal, Customer customer);
+
+    /**
+     * Drops the cart returned by {@link #materialize} once it was turned into an order.
+     */
+    default void checkedOut(Principal principal, Customer customer, Checkout checkout) {
+        delete(principal, checkout);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.shoppy.cart;
+
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+import com.shoppy.repository.CheckoutRepository;
+import com.shoppy.service.CustomerService;
+
+import lombok.AllArgsConstructor;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.Principal;
+
+/**
+ * Keeps the cart in the checkout tables, as the current checkout of the customer.
+ */
+@Component
+@ConditionalOnProperty(name = "shoppy.cart.store", havingValue = "jpa", matchIfMissing = true)
+@AllArgsConstructor
+public class JpaCartStore implements CartStore {
+
+    private final CustomerService customerService;
+    private final CheckoutRepository checkoutRepository;
+
+    @Override
+    public Checkout find(Principal principal) {
+        return customerService.getCustomerByUsernameOrCreate(principal).getCurrentCheckout();
+    }
+
+    /**
+     * Fetches the checkout by the username alone, leaving the customer and its orders unloaded. Runs in a read-write
+     * transaction so that it reads from the primary, the replica may not have the last change to the cart yet.
+     */
+    @Override
+    @Transactional
+    public Checkout read(Principal principal) {
+        return checkoutRepository.findCurrentCheckoutByUsername(customerService.getUsername(principal)).orElse(null);
+    }
+
+    @Override
+    public Checkout findOrCreate(Principal principal) {
+        Customer customer = customerService.getCustomerByUsernameOrCreate(principal);
+        if (customer.getCurrentCheckout() == null) {
+            customer.setCurrentCheckout(checkoutRepository.save(new Checkout()));
+        }
+        return customer.getCurrentCheckout();
+    }
+
+    @Override
+    public void save(Principal principal, Checkout checkout) {
+        checkoutRepository.save(checkout);
+    }
+
+    @Override
+    public void delete(Principal principal, Checkout checkout) {
+        Customer customer = customerService.getCustomerByUsernameOrCreate(principal);
+        customer.setCurrentCheckout(null);
+        checkoutRepository.delete(checkout);
+    }
+
+    @Override
+    public Checkout materialize(Principal principal, Customer customer) {
+        return customer.getCurrentCheckout();
+    }
+
+    /**
+     * Detaches the checkout from the customer already loaded for the order, so the removal is left to the flush.
+     */
+    @Override
+    public void checkedOut(Principal principal, Customer customer, Checkout checkout) {
+        customer.setCurrentCheckout(null);
+        checkoutRepository.delete(checkout);
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.shoppy.cart;
+
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Address;
+import com.shoppy.model.CardPaymentMethod;
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+import com.shoppy.repository.AddressRepository;
+import com.shoppy.repository.CardPaymentMethodRepository;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.utils.TransactionUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the carts in memory and appends each change to a {@link CartLog} before applying it. The log is replayed on
+ * startup and compacted in the background once it grew past the threshold. Products, addresses and payment methods
+ * are read again from the database when the order is placed.
+ */
+@Component
+@ConditionalOnProperty(name = "shoppy.cart.store", havingValue = "memory")
+@Slf4j
+public class MemoryCartStore implements CartStore {
+
+    private final Map<String, Checkout> carts = new ConcurrentHashMap<>();
+    private final ProductRepository productRepository;
+    private final AddressRepository addressRepository;
+    private final CardPaymentMethodRepository paymentMethodRepository;
+    private final Path path;
+    private final CartLog cartLog;
+    private final long compactAfter;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cart-log-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long compacted;
+    private boolean compacting;
+
+    public MemoryCartStore(
+            @Value("${shoppy.cart.log.path:data/carts.log}") Path path,
+            @Value("${shoppy.cart.log.force:false}") boolean force,
+            @Value("${shoppy.cart.log.compact-after:100000}") long compactAfter,
+            ProductRepository productRepository,
+            AddressRepository addressRepository,
+            CardPaymentMethodRepository paymentMethodRepository
+    ) {
+        this.path = path;
+        this.cartLog = new CartLog(path, force);
+        this.compactAfter = compactAfter;
+        this.productRepository = productRepository;
+        this.addressRepository = addressRepository;
+        this.paymentMethodRepository = paymentMethodRepository;
+    }
+
+    @PostConstruct
+    public synchronized void open() {
+        try {
+            restore(cartLog.replay());
+            compact();
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException("Could not open the cart log " + path, exception);
+        }
+        log.info("Restored {} carts from {}", carts.size(), path);
+    }
+
+    /**
+     * Waits for a running compaction before closing the log.
+     */
+    @PreDestroy
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                cartLog.close();
+            }
+            catch (IOException exception) {
+                log.warn("Could not close the cart log {}", path, exception);
+            }
+        }
+    }
+
+    @Override
+    public Checkout find(Principal principal) {
+        Checkout cart = carts.get(principal.getName());
+        return cart == null ? null : copy(cart);
+    }
+
+    @Override
+    public synchronized Checkout findOrCreate(Principal principal) {
+        Checkout cart = find(principal);
+        if (cart != null) {
+            return cart;
+        }
+        Checkout created = new Checkout();
+        created.setCreationDate();
+        write(() -> cartLog.created(principal.getName(), created));
+        carts.put(principal.getName(), created);
+        return copy(created);
+    }
+
+    /**
+     * Logs only what changed since the stored version of the cart.
+     */
+    @Override
+    public synchronized void save(Principal principal, Checkout checkout) {
+        String key = principal.getName();
+        Checkout saved = copy(checkout);
+        saved.getItems().stream().filter(item -> item.getId() == null).forEach(item -> item.setId(UUID.randomUUID()));
+        Checkout previous = carts.get(key);
+        write(() -> {
+            Map<Long, Integer> removed = new HashMap<>();
+            if (previous == null || !previous.getId().equals(saved.getId())) {
+                cartLog.created(key, saved);
+            }
+            else {
+                previous.getItems().forEach(item -> removed.put(item.getProduct().getId(), item.getQuantity()));
+            }
+            for (Item item : saved.getItems()) {
+                Integer quantity = removed.remove(item.getProduct().getId());
+                if (!item.getQuantity().equals(quantity)) {
+                    cartLog.line(key, item.getProduct().getId(), item.getQuantity());
+                }
+            }
+            for (Long productId : removed.keySet()) {
+                cartLog.line(key, productId, 0);
+            }
+            UUID addressId = saved.getAddress() == null ? null : saved.getAddress().getId();
+            if (previous == null || !Objects.equals(previous.getAddress() == null ? null : previous.getAddress().getId(), addressId)) {
+                cartLog.address(key, addressId);
+            }
+            UUID paymentMethodId = saved.getPaymentMethod() == null ? null : saved.getPaymentMethod().getId();
+            if (previous == null || !Objects.equals(previous.getPaymentMethod() == null ? null : previous.getPaymentMethod().getId(), paymentMethodId)) {
+                cartLog.paymentMethod(key, paymentMethodId);
+            }
+        });
+        carts.put(key, saved);
+        if (!compacting && cartLog.records() - compacted > Math.max(compactAfter, compacted)) {
+            compactLater();
+        }
+    }
+
+    @Override
+    public synchronized void delete(Principal principal, Checkout checkout) {
+        if (carts.containsKey(principal.getName())) {
+            write(() -> cartLog.deleted(principal.getName()));
+            carts.remove(principal.getName());
+        }
+    }
+
+    /**
+     * A rolled back order leaves the cart in place.
+     */
+    @Override
+    public void checkedOut(Principal principal, Customer customer, Checkout checkout) {
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                Checkout cart = carts.get(principal.getName());
+                if (cart != null && cart.getId().equals(checkout.getId())) {
+                    delete(principal, checkout);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Checkout materialize(Principal principal, Customer customer) {
+        Checkout cart = find(principal);
+        if (cart == null) {
+            return null;
+        }
+        Map<Long, Product> products = byId(productRepository.findAllById(cart.getItems().stream().map(item -> item.getProduct().getId()).toList()), Product::getId);
+        for (Item item : cart.getItems()) {
+            Product product = products.get(item.getProduct().getId());
+            if (product == null) {
+                throw new APIException("product not found", HttpStatus.NOT_FOUND);
+            }
+            item.setProduct(product);
+        }
+        if (cart.getAddress() != null) {
+            cart.setAddress(customer.findAddress(cart.getAddress().getId()));
+        }
+        if (cart.getPaymentMethod() != null) {
+            cart.setPaymentMethod(customer.findPaymentMethod(cart.getPaymentMethod().getId()));
+        }
+        return cart;
+    }
+
+    /**
+     * Lines of products that were deleted in the meantime are dropped.
+     */
+    private void restore(Map<String, CartLog.Cart> replayed) {
+        Set<Long> productIds = new HashSet<>();
+        Set<UUID> addressIds = new HashSet<>();
+        Set<UUID> paymentMethodIds = new HashSet<>();
+        replayed.values().forEach(cart -> {
+            productIds.addAll(cart.lines.keySet());
+            if (cart.addressId != null) {
+                addressIds.add(cart.addressId);
+            }
+            if (cart.paymentMethodId != null) {
+                paymentMethodIds.add(cart.paymentMethodId);
+            }
+        });
+        Map<Long, Product> products = byId(productRepository.findAllById(productIds), Product::getId);
+        Map<UUID, Address> addresses = byId(addressRepository.findAllById(addressIds), Address::getId);
+        Map<UUID, CardPaymentMethod> paymentMethods = byId(paymentMethodRepository.findAllById(paymentMethodIds), CardPaymentMethod::getId);
+        replayed.forEach((key, state) -> {
+            List<Item> items = new ArrayList<>(state.lines.size());
+            state.lines.forEach((productId, quantity) -> {
+                Product product = products.get(productId);
+                if (product != null) {
+                    items.add(new Item(UUID.randomUUID(), product, quantity));
+                }
+            });
+            carts.put(key, new Checkout(state.id, addresses.get(state.addressId), paymentMethods.get(state.paymentMethodId), items, state.createdDate));
+        });
+    }
+
+    private void compact() throws IOException {
+        cartLog.rewrite(carts);
+        compacted = cartLog.records();
+    }
+
+    /**
+     * Stored carts are replaced rather than changed, so copying the map is enough. A failed rewrite is retried by the
+     * next save past the threshold.
+     */
+    private void compactLater() {
+        compacting = true;
+        Map<String, Checkout> snapshot = new LinkedHashMap<>(carts);
+        CartLog.Rewrite rewrite = cartLog.rewrite();
+        compactor.execute(() -> {
+            try {
+                rewrite.write(snapshot);
+                synchronized (this) {
+                    compacted = rewrite.finish();
+                }
+            }
+            catch (IOException | RuntimeException exception) {
+                synchronized (this) {
+                    rewrite.abandon(exception);
+                }
+                log.warn("Could not compact the cart log {}", path, exception);
+            }
+            finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * When any record of the change fails none is kept.
+     */
+    private void write(LogWrite write) {
+        boolean written = false;
+        try {
+            write.run();
+            cartLog.commit();
+            written = true;
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException("Could not write to the cart log " + path, exception);
+        }
+        finally {
+            if (!written) {
+                cartLog.discard();
+            }
+        }
+    }
+
+    private static Checkout copy(Checkout cart) {
+        List<Item> items = new ArrayList<>(cart.getItems().size());
+        cart.getItems().forEach(item -> items.add(new Item(item.getId(), item.getProduct(), item.getQuantity())));
+        return new Checkout(cart.getId(), cart.getAddress(), cart.getPaymentMethod(), items, cart.getCreatedDate());
+    }
+
+    private static <K, V> Map<K, V> byId(List<V> values, Function<V, K> id) {
+        return values.stream().collect(Collectors.toMap(id, Function.identity()));
+    }
+
+    @FunctionalInterface
+    private interface LogWrite {
+
+        void run() throws IOException;
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.shoppy.config;
+
+import com.shoppy.datasource.PrimaryPinFilter;
+import com.shoppy.datasource.ReplicaRoutingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Connection pools of the primary database and, when {@code shoppy.datasource.replica.jdbc-url} is set, of a read
+ * replica, behind a {@link ReplicaRoutingDataSource}. Both pools are beans of their own, so their metrics are
+ * published separately, tagged with the pool name.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+    private static final String REPLICA_PREFIX = "shoppy.datasource.replica";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = REPLICA_PREFIX, name = "jdbc-url")
+    @ConfigurationProperties(REPLICA_PREFIX)
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Connections are only taken from a pool when the first statement runs, which is when the routing decision can
+     * be made. Transactions that are answered from memory never touch a pool at all.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource
+    ) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource.getIfAvailable()));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = REPLICA_PREFIX, name = "jdbc-url")
+    public PrimaryPinFilter primaryPinFilter() {
+        return new PrimaryPinFilter();
+    }
+
+    /**
+     * An entity manager spans the whole request, so it must give its connection back after each transaction for the
+     * next one to be routed again.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = REPLICA_PREFIX, name = "jdbc-url")
+    public HibernatePropertiesCustomizer replicaConnectionHandling() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING, PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+}
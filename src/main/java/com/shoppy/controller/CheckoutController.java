@@ -1,7 +1,10 @@
 package com.shoppy.controller;
 
+import com.shoppy.cache.IdempotencyCache;
+import com.shoppy.controller.dto.CartOperationsDTO;
 import com.shoppy.controller.dto.ItemDTO;
 import com.shoppy.controller.mapper.EntityMapper;
+import com.shoppy.exception.APIException;
 import com.shoppy.model.Item;
 import com.shoppy.service.AddressService;
 import com.shoppy.service.CardPaymentMethodService;
@@ -17,15 +20,18 @@ import org.springframework.validation.BindingResult;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.security.Principal;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -33,20 +39,25 @@ import java.util.UUID;
 @AllArgsConstructor
 public class CheckoutController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final CheckoutService checkoutService;
     private final CardPaymentMethodService paymentService;
     private final ProductService productService;
     private final AddressService addressService;
     private final EntityMapper entityMapper;
+    private final IdempotencyCache idempotencyCache;
 
     @GetMapping
     public ResponseEntity<Object> getCheckout(Principal principal) {
-        return ResponseEntity.ok(checkoutService.getCheckout(principal));
+        return ResponseEntity.ok(checkoutService.readCheckout(principal));
     }
 
     @GetMapping("products")
     public ResponseEntity<Object> getItems(Principal principal) {
-        return ResponseEntity.ok(checkoutService.getCheckout(principal).getItems());
+        return ResponseEntity.ok(checkoutService.readCheckout(principal).getItems());
     }
 
     @PostMapping("products/{productId}")
@@ -69,9 +80,21 @@ public class CheckoutController {
         checkoutService.removeProductFromCheckout(principal, productId);
     }
 
+    /**
+     * Applies a list of add, update and remove operations to the cart and answers with the outcome of each one.
+     */
+    @PatchMapping("products")
+    public ResponseEntity<Object> updateItems(@Validated @RequestBody CartOperationsDTO dto, BindingResult errors, Principal principal) {
+        ControllerUtils.checkForErrors(errors);
+        List<CheckoutService.CartOperation> operations = dto.getOperations().stream()
+                .map(operation -> new CheckoutService.CartOperation(operation.getOperation(), operation.getProductId(), operation.getQuantity()))
+                .toList();
+        return ResponseEntity.ok(checkoutService.updateItems(principal, operations));
+    }
+
     @GetMapping("address")
     public ResponseEntity<Object> getAddress(Principal principal) {
-        return ResponseEntity.ok(checkoutService.getCheckout(principal).getAddress());
+        return ResponseEntity.ok(checkoutService.readCheckout(principal).getAddress());
     }
 
     @PostMapping("address/{id}")
@@ -88,7 +111,7 @@ public class CheckoutController {
 
     @GetMapping("billing")
     public ResponseEntity<Object> getPaymentMethod(Principal principal) {
-        return ResponseEntity.ok(checkoutService.getCheckout(principal).getPaymentMethod());
+        return ResponseEntity.ok(checkoutService.readCheckout(principal).getPaymentMethod());
     }
 
     @PostMapping("billing/{id}")
@@ -103,10 +126,21 @@ public class CheckoutController {
         checkoutService.assignPaymentMethod(principal, null);
     }
 
+    /**
+     * Places the order. A retry carrying the same Idempotency-Key as an earlier request of the customer gets that
+     * request's outcome back, flagged with Idempotent-Replayed, instead of placing the order again.
+     */
     @PostMapping("order")
-    @ResponseStatus(HttpStatus.CREATED)
-    public void createOrder(Principal principal) {
-        checkoutService.processOrder(principal);
+    public ResponseEntity<Object> createOrder(@RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey, Principal principal) {
+        if (idempotencyKey == null) {
+            checkoutService.processOrder(principal);
+            return ResponseEntity.status(HttpStatus.CREATED).build();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new APIException(IDEMPOTENCY_KEY + " must have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters", HttpStatus.BAD_REQUEST);
+        }
+        boolean replayed = idempotencyCache.execute(principal.getName() + ':' + idempotencyKey, () -> checkoutService.processOrder(principal));
+        return ResponseEntity.status(HttpStatus.CREATED).header(IDEMPOTENT_REPLAYED, String.valueOf(replayed)).build();
     }
 
     private Item getItem(Long productId, ItemDTO dto) {
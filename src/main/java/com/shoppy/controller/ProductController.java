@@ -1,11 +1,25 @@
 package com.shoppy.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import com.shoppy.cache.CatalogVersion;
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.controller.dto.InventoryMovementDTO;
 import com.shoppy.controller.dto.ProductDTO;
 import com.shoppy.controller.mapper.EntityMapper;
-import com.shoppy.enumeration.SortMethod;
 import com.shoppy.enumeration.SortProperty;
 import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.FacetedPage;
+import com.shoppy.pagination.KeysetPage;
+import com.shoppy.pagination.ProductSort;
 import com.shoppy.roles.Roles;
+import com.shoppy.search.ProductFacets;
+import com.shoppy.search.ProductFilter;
+import com.shoppy.service.ProductBatch;
 import com.shoppy.service.ProductService;
 import com.shoppy.utils.ControllerUtils;
 
@@ -13,8 +27,11 @@ import lombok.AllArgsConstructor;
 
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.annotation.Validated;
@@ -24,32 +41,223 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.annotation.security.RolesAllowed;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
 @RestController
 @RequestMapping("api/v1/products")
 @AllArgsConstructor
 public class ProductController {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final ObjectWriter jsonWriter = new JsonMapper().writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private final ProductService productService;
     private final EntityMapper entityMapper;
+    private final CatalogVersion catalogVersion;
 
+    /**
+     * Paged listing and search. Like the other catalog reads, the response is tagged with the catalog version and a
+     * request whose If-None-Match still matches it is answered with 304 before anything is queried. While stock is
+     * reserved, stock is reported net of the reservations and the tag also covers what the response reports, so the
+     * check happens once it is read.
+     * <p>
+     * Pages are read without counting the matches; a Link header points to the next page when there is one. Clients
+     * that need a total ask for it with {@code count=true} and get an approximate, briefly cached value in the
+     * X-Total-Count header.
+     */
     @GetMapping
     public ResponseEntity<Object> getProducts(
             @RequestParam(value = "query", required = false) String query,
             @RequestParam(value = "pageNum", required = false) Integer pageNum,
             @RequestParam(value = "pageSize", required = false) Integer pageSize,
             @RequestParam(value = "sort", required = false) String sortBy,
-            @RequestParam(value = "sortBy", required = false) String sortProperty
+            @RequestParam(value = "sortBy", required = false) String sortProperty,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "fuzzy", required = false, defaultValue = "false") boolean fuzzy,
+            @RequestParam(value = "minPrice", required = false) Double minPrice,
+            @RequestParam(value = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(value = "inStock", required = false, defaultValue = "false") boolean inStock,
+            @RequestParam(value = "facets", required = false, defaultValue = "false") boolean facets,
+            @RequestParam(value = "count", required = false, defaultValue = "false") boolean count,
+            WebRequest request
     ) {
         Sort sort = getSort(sortBy, sortProperty);
+        checkFuzzy(query, fuzzy);
+        ProductFilter filter = getFilter(minPrice, maxPrice, inStock);
+        if (cursor != null && facets) {
+            throw new APIException("'cursor' can not be combined with 'facets'", HttpStatus.BAD_REQUEST);
+        }
+        if (cursor != null && count) {
+            throw new APIException("'cursor' can not be combined with 'count'", HttpStatus.BAD_REQUEST);
+        }
+        boolean reserved = productService.hasReservations();
+        if (!reserved && request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        if (reserved) {
+            filter = productService.withReservations(filter);
+        }
+        if (cursor != null) {
+            KeysetPage<Product> page = productService.getProductsAfter(sort, filter, cursor, getCursorPageSize(query, pageNum, pageSize));
+            if (!reserved) {
+                return ResponseEntity.ok(page);
+            }
+            List<Product> content = productService.withReservations(page.getContent());
+            if (request.checkNotModified(reservedEtag(content, page.getNext()))) {
+                return null;
+            }
+            return ResponseEntity.ok(new KeysetPage<>(content, page.getNext()));
+        }
         Pageable pageable = getPageable(pageNum, pageSize, sort);
-        return ResponseEntity.ok(productService.getProducts(query, sort, pageable));
+        Slice<Product> products = productService.getProducts(query, fuzzy, filter, pageable);
+        List<Product> content = reserved ? productService.withReservations(products.getContent()) : products.getContent();
+        Long total = count ? productService.getProductCount(query, fuzzy, filter) : null;
+        ProductFacets counts = facets ? productService.getFacets(query, fuzzy, filter) : null;
+        if (reserved && request.checkNotModified(reservedEtag(content, products.hasNext(), total, counts))) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (products.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("pageNum", products.nextPageable().getPageNumber())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        if (total != null) {
+            response.header(TOTAL_COUNT_HEADER, String.valueOf(total));
+        }
+        if (counts != null) {
+            return response.body(new FacetedPage<>(content, counts));
+        }
+        return response.body(content);
+    }
+
+    /**
+     * Unpaged listing. Products are written as they are read from the database, either as a chunked JSON array
+     * or as newline delimited JSON when the client accepts application/x-ndjson. While stock is reserved the
+     * response carries no tag, since it is only known once everything was written.
+     */
+    @GetMapping(params = {"!pageNum", "!cursor", "!ids"})
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "sort", required = false) String sortBy,
+            @RequestParam(value = "sortBy", required = false) String sortProperty,
+            @RequestParam(value = "fuzzy", required = false, defaultValue = "false") boolean fuzzy,
+            @RequestParam(value = "minPrice", required = false) Double minPrice,
+            @RequestParam(value = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(value = "inStock", required = false, defaultValue = "false") boolean inStock,
+            @RequestParam(value = "facets", required = false, defaultValue = "false") boolean facets,
+            @RequestParam(value = "count", required = false, defaultValue = "false") boolean count,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest request
+    ) {
+        Sort sort = getSort(sortBy, sortProperty);
+        if (pageSize != null || facets || count) {
+            throw new APIException("'pageNum' field is missing in query", HttpStatus.NOT_FOUND);
+        }
+        checkFuzzy(query, fuzzy);
+        boolean ndjson = accept != null && MediaType.parseMediaTypes(accept).stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        boolean reserved = productService.hasReservations();
+        if (!reserved && request.checkNotModified(catalogVersion.etag(ndjson ? "ndjson" : ""))) {
+            return null;
+        }
+        ProductFilter filter = reserved ? productService.withReservations(getFilter(minPrice, maxPrice, inStock)) : getFilter(minPrice, maxPrice, inStock);
+        StreamingResponseBody body = output -> {
+            try (SequenceWriter writer = ndjson ? jsonWriter.withRootValueSeparator("\n").writeValues(output) : jsonWriter.writeValuesAsArray(output)) {
+                productService.exportProducts(query, fuzzy, filter, sort, product -> {
+                    try {
+                        writer.write(reserved ? productService.withReservations(product) : product);
+                    }
+                    catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
+
+    /**
+     * Products for a comma separated list of ids, in request order, plus the ids that do not exist.
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<Object> getProductsByIds(@RequestParam("ids") List<Long> ids, WebRequest request) {
+        boolean reserved = productService.hasReservations();
+        if (!reserved && request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        ProductBatch batch = productService.getProductsByIds(ids);
+        if (!reserved) {
+            return ResponseEntity.ok(batch);
+        }
+        List<Product> products = productService.withReservations(batch.getProducts());
+        if (request.checkNotModified(reservedEtag(products, batch.getMissing()))) {
+            return null;
+        }
+        return ResponseEntity.ok(new ProductBatch(products, batch.getMissing()));
+    }
+
+    /**
+     * Product detail, written straight from the cached JSON bytes; gzip compressed when the client accepts it.
+     */
+    @GetMapping("{id}")
+    public ResponseEntity<byte[]> getProduct(
+            @PathVariable("id") Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest request
+    ) {
+        ProductResponseCache.SerializedProduct product = productService.getSerializedProduct(id);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        if (request.checkNotModified('"' + product.hash() + (gzip ? "-gzip" : "") + '"')) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(product.gzip());
+        }
+        return response.body(product.json());
+    }
+
+    /**
+     * Product writes after the given version, oldest first, with deleted products as tombstones. Consumers pass the
+     * returned {@code next} version as {@code since} on their following call.
+     */
+    @GetMapping("changes")
+    public ResponseEntity<Object> getChanges(
+            @RequestParam(value = "since", required = false, defaultValue = "0") Long since,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") Integer limit
+    ) {
+        return ResponseEntity.ok(productService.getChanges(since, limit));
+    }
+
+    @GetMapping("suggest")
+    public ResponseEntity<Object> getSuggestions(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", required = false, defaultValue = "10") Integer limit
+    ) {
+        return ResponseEntity.ok(productService.getSuggestions(prefix, limit));
     }
 
     @PostMapping
@@ -68,6 +276,46 @@ public class ProductController {
         productService.updateProduct(id, entityMapper.dtoToProduct(dto));
     }
 
+    /**
+     * Splits the product's stock over several rows so concurrent orders for it do not queue on one row lock; a
+     * count of one undoes the split.
+     */
+    @PutMapping("{id}/stock-stripes")
+    @RolesAllowed(Roles.ROLE_ADMIN)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void stripeStock(@PathVariable("id") Long id, @RequestParam("count") Integer count) {
+        productService.stripeStock(id, count);
+    }
+
+    /**
+     * Stock of the product according to the inventory ledger: its last snapshot plus the movements recorded since.
+     */
+    @GetMapping("{id}/inventory")
+    @RolesAllowed(Roles.ROLE_ADMIN)
+    public ResponseEntity<Object> getInventoryLevel(@PathVariable("id") Long id) {
+        return ResponseEntity.ok(productService.getInventoryLevel(id));
+    }
+
+    /**
+     * Records a receipt or a signed adjustment of the product's stock.
+     */
+    @PostMapping("{id}/inventory")
+    @RolesAllowed(Roles.ROLE_ADMIN)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void recordMovement(@PathVariable("id") Long id, @RequestBody @Validated InventoryMovementDTO movement, BindingResult errors) {
+        ControllerUtils.checkForErrors(errors);
+        productService.recordMovement(id, movement.getType(), movement.getQuantity());
+    }
+
+    /**
+     * Replays the whole inventory ledger into fresh snapshots.
+     */
+    @PostMapping("inventory/rebuild")
+    @RolesAllowed(Roles.ROLE_ADMIN)
+    public ResponseEntity<Object> rebuildInventory() {
+        return ResponseEntity.ok(productService.rebuildInventory());
+    }
+
     @DeleteMapping("{id}")
     @RolesAllowed(Roles.ROLE_ADMIN)
     @ResponseStatus(HttpStatus.NO_CONTENT)
@@ -82,44 +330,95 @@ public class ProductController {
             }
             return Sort.unsorted();
         }
-        else {
-            if (property == null) {
-                property = SortProperty.NAME.name();
-            }
-            try {
-                SortProperty.valueOf(property.toUpperCase());
-            }
-            catch (IllegalArgumentException exception) {
-                throw new APIException("Unknown sorting property: " + property, HttpStatus.NOT_FOUND);
-            }
-            try {
-                return switch (SortMethod.valueOf(sort.toUpperCase())) {
-                    case ASC  -> Sort.by(Sort.Order.asc(property.toLowerCase()));
-                    case DESC -> Sort.by(Sort.Order.desc(property.toLowerCase()));
-                };
+        else if (ProductSort.isMultiKey(sort)) {
+            if (property != null) {
+                throw new APIException("'sortBy' can not be combined with a multi-key 'sort'", HttpStatus.BAD_REQUEST);
             }
-            catch (IllegalArgumentException exception) {
-                throw new APIException("Unknown sorting method: " + sort, HttpStatus.NOT_FOUND);
+            return ProductSort.parse(sort);
+        }
+        else {
+            SortProperty sortProperty = ProductSort.parseProperty(property == null ? SortProperty.NAME.name() : property);
+            return switch (ProductSort.parseMethod(sort)) {
+                case ASC  -> Sort.by(Sort.Order.asc(sortProperty.getProperty()));
+                case DESC -> Sort.by(Sort.Order.desc(sortProperty.getProperty()));
+            };
+        }
+    }
+
+    /**
+     * Tag of a response reporting stock net of reservations: the catalog version plus a digest of the products and
+     * whatever else the response holds, so it changes when a listed product's reservations do and not otherwise.
+     */
+    private String reservedEtag(List<Product> products, Object... rest) {
+        long digest = Arrays.hashCode(rest);
+        for (Product product : products) {
+            digest = 31 * digest + product.getId();
+            digest = 31 * digest + product.getStock();
+        }
+        return catalogVersion.etag("r" + Long.toUnsignedString(digest, Character.MAX_RADIX));
+    }
+
+    private void checkFuzzy(String query, boolean fuzzy) {
+        if (fuzzy && query == null) {
+            throw new APIException("'fuzzy' requires a 'query'", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
             }
         }
+        return false;
+    }
+
+    private ProductFilter getFilter(Double minPrice, Double maxPrice, boolean inStock) {
+        if ((minPrice != null && minPrice < 0) || (maxPrice != null && maxPrice < 0)) {
+            throw new APIException("Price bounds must not be negative", HttpStatus.BAD_REQUEST);
+        }
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new APIException("'minPrice' must not be greater than 'maxPrice'", HttpStatus.BAD_REQUEST);
+        }
+        return new ProductFilter(minPrice, maxPrice, inStock);
+    }
+
+    private int getCursorPageSize(String query, Integer pageNum, Integer pageSize) {
+        if (query != null) {
+            throw new APIException("'cursor' can not be combined with 'query'", HttpStatus.BAD_REQUEST);
+        }
+        if (pageNum != null) {
+            throw new APIException("'cursor' can not be combined with 'pageNum'", HttpStatus.BAD_REQUEST);
+        }
+        int size = getPageSize(pageSize);
+        if (size < 1) {
+            throw new APIException("Page size must not be less than one", HttpStatus.BAD_REQUEST);
+        }
+        return size;
+    }
+
+    private static int getPageSize(Integer pageSize) {
+        if (pageSize == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (pageSize > MAX_PAGE_SIZE) {
+            throw new APIException("Page size must not be greater than " + MAX_PAGE_SIZE, HttpStatus.BAD_REQUEST);
+        }
+        return pageSize;
     }
 
     private Pageable getPageable(Integer pageNum, Integer pageSize, Sort sort) {
-        if (pageNum == null) {
-            if (pageSize != null) {
-                throw new APIException("'pageNum' field is missing in query", HttpStatus.NOT_FOUND);
-            }
-            return null;
+        try {
+            return PageRequest.of(pageNum, getPageSize(pageSize), sort);
         }
-        else {
-            try {
-                return PageRequest.of(pageNum, pageSize, sort);
-            }
-            catch (IllegalArgumentException exception) {
-                // 1. Thrown when page's index is less than 0
-                // 2. Thrown when page's size  is less than 0
-                throw new APIException(exception.getMessage(), HttpStatus.BAD_REQUEST);
-            }
+        catch (IllegalArgumentException exception) {
+            // 1. Thrown when page's index is less than 0
+            // 2. Thrown when page's size  is less than 0
+            throw new APIException(exception.getMessage(), HttpStatus.BAD_REQUEST);
         }
     }
 
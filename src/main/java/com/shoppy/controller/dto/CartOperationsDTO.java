@@ -0,0 +1,36 @@
+package com.shoppy.controller.dto;
+
+import com.shoppy.enumeration.CartOperationType;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class CartOperationsDTO {
+
+    @NotNull(message = "operations must not be null")
+    private List<@Valid Operation> operations;
+
+    @Data
+    @NoArgsConstructor
+    public static class Operation {
+
+        @NotNull(message = "operation must not be null")
+        private CartOperationType operation;
+
+        @NotNull(message = "productId must not be null")
+        private Long productId;
+
+        @Min(value = 1, message = "quantity must be greater or equal to 1")
+        private Integer quantity;
+
+    }
+
+}
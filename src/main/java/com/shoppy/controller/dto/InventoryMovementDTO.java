@@ -0,0 +1,20 @@
+package com.shoppy.controller.dto;
+
+import com.shoppy.enumeration.MovementType;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+@NoArgsConstructor
+public class InventoryMovementDTO {
+
+    @NotNull(message = "type must not be null")
+    private MovementType type;
+
+    @NotNull(message = "quantity must not be null")
+    private Integer quantity;
+
+}
@@ -0,0 +1,29 @@
+package com.shoppy.datasource;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Scopes the primary pin of {@link ReplicaRoutingDataSource} to a request: once the request wrote, its reads go to
+ * the primary, and the next request starts on the replica again.
+ */
+public class PrimaryPinFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        ReplicaRoutingDataSource.startRequest();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            ReplicaRoutingDataSource.endRequest();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.shoppy.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends the connections of read-only transactions to the replica and every other connection to the primary.
+ * <p>
+ * Inside a request a read-write transaction pins the rest of the request to the primary, so the request reads its
+ * own writes whatever the replication lag. Work that has to see everything committed so far, such as loading an
+ * in-memory index, runs through {@link #onPrimary}. The target is resolved when a connection is first used, so this
+ * data source must sit behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: by then
+ * the transaction has been marked read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Boolean> REQUEST_WROTE = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final boolean replicated;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Target.PRIMARY, primary);
+        if (replica != null) {
+            targets.put(Target.REPLICA, replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        this.replicated = replica != null;
+    }
+
+    /**
+     * Starts tracking the writes of the request handled by the current thread.
+     */
+    public static void startRequest() {
+        REQUEST_WROTE.set(Boolean.FALSE);
+    }
+
+    public static void endRequest() {
+        REQUEST_WROTE.remove();
+    }
+
+    /**
+     * Runs the work with every connection, read-only or not, taken from the primary.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return work.get();
+        }
+        finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive() && REQUEST_WROTE.get() != null) {
+                REQUEST_WROTE.set(Boolean.TRUE);
+            }
+            return Target.PRIMARY;
+        }
+        if (!replicated || PRIMARY_ONLY.get() != null || Boolean.TRUE.equals(REQUEST_WROTE.get())) {
+            return Target.PRIMARY;
+        }
+        return Target.REPLICA;
+    }
+
+    public enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+}
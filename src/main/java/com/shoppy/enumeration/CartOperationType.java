@@ -0,0 +1,10 @@
+package com.shoppy.enumeration;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import com.shoppy.enumeration.converter.StringToCartOperationTypeConverter;
+
+@JsonDeserialize(converter = StringToCartOperationTypeConverter.class)
+public enum CartOperationType {
+    ADD, UPDATE, REMOVE
+}
@@ -0,0 +1,10 @@
+package com.shoppy.enumeration;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import com.shoppy.enumeration.converter.StringToMovementTypeConverter;
+
+@JsonDeserialize(converter = StringToMovementTypeConverter.class)
+public enum MovementType {
+    RECEIPT, SALE, ADJUSTMENT, CLOSING
+}
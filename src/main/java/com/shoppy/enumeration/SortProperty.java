@@ -1,10 +1,20 @@
 package com.shoppy.enumeration;
 
+import com.shoppy.model.Product;
+
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.util.function.Function;
+
 @Getter
 @AllArgsConstructor
 public enum SortProperty {
-    NAME, PRICE
+    NAME("name", Product::getName),
+    PRICE("price", Product::getPrice),
+    STOCK("stock", Product::getStock);
+
+    private final String property;
+    private final Function<Product, Object> accessor;
+
 }
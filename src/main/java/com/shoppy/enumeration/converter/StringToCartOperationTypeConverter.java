@@ -0,0 +1,22 @@
+package com.shoppy.enumeration.converter;
+
+import com.fasterxml.jackson.databind.util.StdConverter;
+
+import com.shoppy.enumeration.CartOperationType;
+import com.shoppy.exception.APIException;
+
+import org.springframework.http.HttpStatus;
+
+public class StringToCartOperationTypeConverter extends StdConverter<String, CartOperationType> {
+
+    @Override
+    public CartOperationType convert(String source) {
+        try {
+            return CartOperationType.valueOf(StringToCountryConverter.getEnumName(source));
+        }
+        catch (IllegalArgumentException exception) {
+            throw new APIException("Unknown cart operation", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.shoppy.enumeration.converter;
+
+import com.fasterxml.jackson.databind.util.StdConverter;
+
+import com.shoppy.enumeration.MovementType;
+import com.shoppy.exception.APIException;
+
+import org.springframework.http.HttpStatus;
+
+public class StringToMovementTypeConverter extends StdConverter<String, MovementType> {
+
+    @Override
+    public MovementType convert(String source) {
+        try {
+            return MovementType.valueOf(StringToCountryConverter.getEnumName(source));
+        }
+        catch (IllegalArgumentException exception) {
+            throw new APIException("Unknown movement type", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+}
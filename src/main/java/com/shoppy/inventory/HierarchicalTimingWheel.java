@@ -0,0 +1,193 @@
+package com.shoppy.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. Level 0 has one bucket per tick and every higher level has buckets as wide as a whole
+ * turn of the level below. A timeout is filed in the lowest level whose span covers it and moves down a level each
+ * time the wheel reaches its bucket, so scheduling and cancelling take constant time and advancing costs one step
+ * per tick plus the timeouts that expire or move. Levels are added as longer timeouts are scheduled.
+ * <p>
+ * Not thread safe; callers synchronize.
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Bucket<T>[]> levels = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("Tick must be positive and the wheel must have at least two buckets");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Files the value to expire on the first tick at or after the deadline, and never before the next tick.
+     */
+    public Timeout<T> schedule(T value, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(value, Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1));
+        place(timeout, null);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes a pending timeout. Returns false when it has already expired or been cancelled.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel up to the given time and returns the values of every timeout that expired on the way.
+     */
+    public List<T> advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                break;
+            }
+            currentTick++;
+            int top = 0;
+            for (long span = wheelSize; top + 1 < levels.size() && currentTick % span == 0; span *= wheelSize) {
+                top++;
+            }
+            // Higher levels first, so timeouts moving down are filed before the buckets below them are emptied
+            for (int level = top; level >= 1; level--) {
+                long span = pow(level);
+                Bucket<T> bucket = levels.get(level)[(int) ((currentTick / span) % wheelSize)];
+                if (bucket != null) {
+                    bucket.drain(timeout -> place(timeout, expired));
+                }
+            }
+            Bucket<T> bucket = levels.isEmpty() ? null : levels.get(0)[(int) (currentTick % wheelSize)];
+            if (bucket != null) {
+                bucket.drain(timeout -> {
+                    expired.add(timeout.value);
+                    size--;
+                });
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void place(Timeout<T> timeout, List<T> expired) {
+        long delta = timeout.tick - currentTick;
+        if (delta <= 0) {
+            expired.add(timeout.value);
+            size--;
+            return;
+        }
+        int level = 0;
+        long span = 1;
+        while (delta >= span * wheelSize) {
+            level++;
+            span *= wheelSize;
+        }
+        while (levels.size() <= level) {
+            @SuppressWarnings("unchecked")
+            Bucket<T>[] buckets = new Bucket[wheelSize];
+            levels.add(buckets);
+        }
+        Bucket<T>[] buckets = levels.get(level);
+        int index = (int) ((timeout.tick / span) % wheelSize);
+        if (buckets[index] == null) {
+            buckets[index] = new Bucket<>();
+        }
+        buckets[index].add(timeout);
+    }
+
+    private long pow(int level) {
+        long span = 1;
+        for (int i = 0; i < level; i++) {
+            span *= wheelSize;
+        }
+        return span;
+    }
+
+    public static final class Timeout<T> {
+
+        private final T value;
+        private final long tick;
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+
+        public T value() {
+            return value;
+        }
+
+    }
+
+    /**
+     * Intrusive doubly linked list of the timeouts sharing one bucket.
+     */
+    private static final class Bucket<T> {
+
+        private Timeout<T> head;
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = null;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            }
+            else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        private void drain(Consumer<Timeout<T>> consumer) {
+            Timeout<T> timeout = head;
+            head = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.bucket = null;
+                timeout.previous = null;
+                timeout.next = null;
+                consumer.accept(timeout);
+                timeout = next;
+            }
+        }
+
+    }
+
+}
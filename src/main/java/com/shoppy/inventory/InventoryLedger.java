@@ -0,0 +1,307 @@
+package com.shoppy.inventory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import com.shoppy.datasource.ReplicaRoutingDataSource;
+import com.shoppy.enumeration.MovementType;
+import com.shoppy.model.InventoryMovement;
+import com.shoppy.model.InventorySnapshot;
+import com.shoppy.repository.InventoryMovementRepository;
+import com.shoppy.repository.InventorySnapshotRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only record of every change to the stock: receipts, sales and adjustments, and a closing movement taking the
+ * stock to zero when a product is deleted. Movements recorded inside a transaction are held back and written in a
+ * single batch just before it commits.
+ * <p>
+ * Once per interval the movements older than the settle delay are folded into per product snapshots, and the stock
+ * according to the ledger is the cached snapshot plus the movements recorded after it. The settle delay must exceed
+ * the longest transaction, otherwise a movement committed late could be skipped by the fold. {@link #rebuild()}
+ * throws the snapshots away and replays the whole ledger, split by product over several threads. Closed products get
+ * no snapshot from either.
+ */
+@Component
+@Slf4j
+public class InventoryLedger {
+
+    public static final String CACHE_NAME = "inventory-snapshots";
+
+    private final InventoryMovementRepository movementRepository;
+    private final InventorySnapshotRepository snapshotRepository;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration snapshotInterval;
+    private final Duration settle;
+    private final int parallelism;
+    private final Cache<Long, InventorySnapshot> snapshots;
+    private ScheduledExecutorService snapshotter;
+
+    public InventoryLedger(
+            @Value("${shoppy.inventory.snapshot-interval:5m}") Duration snapshotInterval,
+            @Value("${shoppy.inventory.snapshot-settle:1m}") Duration settle,
+            @Value("${shoppy.inventory.rebuild-parallelism:4}") int parallelism,
+            @Value("${shoppy.cache.inventory-snapshots.maximum-size:10000}") long maximumSize,
+            InventoryMovementRepository movementRepository,
+            InventorySnapshotRepository snapshotRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.snapshotInterval = snapshotInterval;
+        this.settle = settle;
+        this.parallelism = parallelism;
+        this.movementRepository = movementRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, CACHE_NAME);
+    }
+
+    @PostConstruct
+    public void start() {
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            }
+            catch (RuntimeException exception) {
+                log.warn("Could not snapshot the inventory ledger", exception);
+            }
+        }, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        snapshotter.shutdownNow();
+    }
+
+    /**
+     * Products created before the ledger existed get their current stock recorded as an opening adjustment.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void openBalances() {
+        Integer opened = transaction.execute(status -> movementRepository.insertOpeningBalances());
+        if (opened != null && opened > 0) {
+            log.info("Recorded opening balances of {} products in the inventory ledger", opened);
+        }
+    }
+
+    /**
+     * Appends a signed stock change of the product. Inside a transaction the movement is written when it commits.
+     */
+    public void record(MovementType type, Long productId, int quantity) {
+        if (quantity == 0) {
+            return;
+        }
+        append(new InventoryMovement(null, productId, type, quantity, LocalDateTime.now()));
+    }
+
+    /**
+     * Records the stock the product was deleted with as a closing movement, so its movements sum to zero. Unlike the
+     * other movements it is recorded even when the stock is zero already.
+     */
+    public void close(Long productId, int stock) {
+        append(new InventoryMovement(null, productId, MovementType.CLOSING, -stock, LocalDateTime.now()));
+    }
+
+    public InventoryLevel level(Long productId) {
+        InventorySnapshot snapshot = snapshots.get(productId, id -> snapshotRepository.findById(id)
+                .orElseGet(() -> new InventorySnapshot(id, 0L, 0L, null, null)));
+        long stock = snapshot.getStock() + movementRepository.sumQuantityAfter(productId, snapshot.getLastMovementId());
+        return new InventoryLevel(productId, stock, snapshot.getStock(), snapshot.getLastMovementId());
+    }
+
+    /**
+     * Folds the settled movements recorded since the last snapshot into the snapshots of their products.
+     *
+     * @return the number of snapshots written or dropped
+     */
+    public synchronized int snapshot() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> productIds = transaction.execute(status -> {
+            long from = snapshotRepository.findLastMovementId();
+            long to = movementRepository.findLastIdCreatedBy(now.minus(settle));
+            if (to <= from) {
+                return List.of();
+            }
+            Map<Long, Long> quantities = movementRepository.sumQuantityByProduct(from, to).stream()
+                    .collect(Collectors.toMap(InventoryMovementRepository.ProductQuantity::getProductId, InventoryMovementRepository.ProductQuantity::getQuantity));
+            List<Long> closed = movementRepository.findClosedProductIds(from, to);
+            snapshotRepository.deleteAllByIdInBatch(closed);
+            quantities.keySet().removeAll(closed);
+            Map<Long, InventorySnapshot> current = snapshotRepository.findAllById(quantities.keySet()).stream()
+                    .collect(Collectors.toMap(InventorySnapshot::getProductId, Function.identity()));
+            List<InventorySnapshot> changed = new ArrayList<>(quantities.size());
+            quantities.forEach((productId, quantity) -> {
+                InventorySnapshot snapshot = current.getOrDefault(productId, new InventorySnapshot(productId, 0L, 0L, null, null));
+                snapshot.setStock(snapshot.getStock() + quantity);
+                snapshot.setLastMovementId(to);
+                snapshot.setCreatedDate(now);
+                changed.add(snapshot);
+            });
+            snapshotRepository.saveAll(changed);
+            List<Long> folded = new ArrayList<>(closed);
+            changed.forEach(snapshot -> folded.add(snapshot.getProductId()));
+            return folded;
+        });
+        snapshots.invalidateAll(productIds);
+        return productIds.size();
+    }
+
+    /**
+     * Replaces every snapshot with the result of replaying the settled part of the ledger from the start. Products
+     * are split into one partition per thread by id, and each thread streams and sums its partition on its own
+     * connection.
+     */
+    public synchronized RebuildResult rebuild() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        long to = movementRepository.findLastIdCreatedBy(now.minus(settle));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "inventory-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Replay>> replays = new ArrayList<>(parallelism);
+            for (int partition = 0; partition < parallelism; partition++) {
+                int current = partition;
+                replays.add(executor.submit(() -> replay(current, to)));
+            }
+            Map<Long, Long> stock = new HashMap<>();
+            long movements = 0;
+            for (Future<Replay> replay : replays) {
+                stock.putAll(replay.get().stock());
+                movements += replay.get().movements();
+            }
+            stock.keySet().removeAll(ReplicaRoutingDataSource.onPrimary(() -> movementRepository.findClosedProductIds(0, to)));
+            transaction.executeWithoutResult(status -> {
+                snapshotRepository.deleteAllInBatch();
+                snapshotRepository.saveAll(stock.entrySet().stream()
+                        .map(entry -> new InventorySnapshot(entry.getKey(), entry.getValue(), to, now, null))
+                        .toList());
+            });
+            snapshots.invalidateAll();
+            return new RebuildResult(stock.size(), movements, to, System.currentTimeMillis() - start);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying the inventory ledger", exception);
+        }
+        catch (ExecutionException exception) {
+            throw new IllegalStateException("Could not replay the inventory ledger", exception.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads from the primary, as the replica may still lack movements up to {@code to}.
+     */
+    private Replay replay(int partition, long to) {
+        return ReplicaRoutingDataSource.onPrimary(() -> readOnlyTransaction.execute(status -> {
+            Map<Long, Long> stock = new HashMap<>();
+            long count = 0;
+            try (Stream<InventoryMovementRepository.ProductQuantity> movements = movementRepository.streamPartition(parallelism, partition, to)) {
+                Iterator<InventoryMovementRepository.ProductQuantity> iterator = movements.iterator();
+                while (iterator.hasNext()) {
+                    InventoryMovementRepository.ProductQuantity movement = iterator.next();
+                    stock.merge(movement.getProductId(), movement.getQuantity(), Long::sum);
+                    count++;
+                }
+            }
+            return new Replay(stock, count);
+        }));
+    }
+
+    private void append(InventoryMovement movement) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            pending().add(movement);
+        }
+        else {
+            movementRepository.append(List.of(movement));
+        }
+    }
+
+    /**
+     * Movements recorded in the current transaction, appended in one batch before it commits.
+     */
+    @SuppressWarnings("unchecked")
+    private List<InventoryMovement> pending() {
+        List<InventoryMovement> pending = (List<InventoryMovement>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<InventoryMovement> movements = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, movements);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    movementRepository.append(movements);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(InventoryLedger.this);
+                }
+            });
+            pending = movements;
+        }
+        return pending;
+    }
+
+    public record InventoryLevel(Long productId, long stock, long snapshotStock, long snapshotMovementId) {
+
+    }
+
+    public record RebuildResult(int products, long movements, long lastMovementId, long millis) {
+
+    }
+
+    private record Replay(Map<Long, Long> stock, long movements) {
+
+    }
+
+}
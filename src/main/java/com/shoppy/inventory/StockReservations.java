@@ -0,0 +1,224 @@
+package com.shoppy.inventory;
+
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quantities held by open checkouts. While enabled, adding or updating a checkout item reserves its quantity for
+ * the configured time and the catalog reports the stock minus every active reservation. Per product totals are
+ * kept in memory, so the available stock is known without querying, and expired reservations are released in batches
+ * by a {@link HierarchicalTimingWheel} advanced once per tick.
+ * <p>
+ * A reservation does not bump the catalog version. It evicts the cached detail of its product, and catalog views
+ * that include reserved products are tagged by the stock they report, so only the views showing a product whose
+ * reservations changed get a new ETag.
+ * <p>
+ * Reservations live in this process only; they are lost on restart and are not shared between instances.
+ */
+@Component
+@Slf4j
+public class StockReservations {
+
+    private static final int WHEEL_SIZE = 64;
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration tick;
+    private final ProductResponseCache responseCache;
+    private final Map<Long, Integer> reserved = new ConcurrentHashMap<>();
+    private final Map<Key, Reservation> reservations = new HashMap<>();
+    private final HierarchicalTimingWheel<Key> wheel;
+    private ScheduledExecutorService expirer;
+
+    public StockReservations(
+            @Value("${shoppy.reservations.enabled:false}") boolean enabled,
+            @Value("${shoppy.reservations.ttl:15m}") Duration ttl,
+            @Value("${shoppy.reservations.tick:1s}") Duration tick,
+            ProductResponseCache responseCache
+    ) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.tick = tick;
+        this.responseCache = responseCache;
+        this.wheel = new HierarchicalTimingWheel<>(tick.toMillis(), WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            expirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stock-reservations");
+                thread.setDaemon(true);
+                return thread;
+            });
+            expirer.scheduleAtFixedRate(() -> expire(System.currentTimeMillis()), tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (expirer != null) {
+            expirer.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Holds the quantity of the product for the checkout, replacing and renewing what the checkout already held.
+     * Fails with 409 when the stock left after the other checkouts' reservations is not enough.
+     */
+    public synchronized void reserve(UUID checkoutId, Product product, int quantity) {
+        Key key = new Key(checkoutId, product.getId());
+        Reservation previous = reservations.get(key);
+        int held = previous == null ? 0 : previous.quantity();
+        if (quantity > product.getStock() - reserved(product.getId()) + held) {
+            throw new APIException("not enough products in stock", HttpStatus.CONFLICT);
+        }
+        if (previous != null) {
+            wheel.cancel(previous.timeout());
+        }
+        reservations.put(key, new Reservation(quantity, wheel.schedule(key, System.currentTimeMillis() + ttl.toMillis())));
+        adjust(product.getId(), quantity - held);
+        changed(List.of(product.getId()));
+    }
+
+    /**
+     * Drops whatever the checkout holds of the given products.
+     */
+    public synchronized void release(UUID checkoutId, Collection<Long> productIds) {
+        Set<Long> changed = new HashSet<>();
+        for (Long productId : productIds) {
+            Reservation reservation = reservations.remove(new Key(checkoutId, productId));
+            if (reservation != null) {
+                wheel.cancel(reservation.timeout());
+                adjust(productId, -reservation.quantity());
+                changed.add(productId);
+            }
+        }
+        changed(changed);
+    }
+
+    /**
+     * What the checkout holds of each of the given products. Products it holds nothing of are left out.
+     */
+    public synchronized Map<Long, Integer> held(UUID checkoutId, Collection<Long> productIds) {
+        Map<Long, Integer> held = new HashMap<>();
+        for (Long productId : productIds) {
+            Reservation reservation = reservations.get(new Key(checkoutId, productId));
+            if (reservation != null) {
+                held.put(productId, reservation.quantity());
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Puts the checkout's holds of the given products back to what {@link #held} returned, renewing them. Stock is
+     * not checked, since the quantities were already held.
+     */
+    public synchronized void restore(UUID checkoutId, Collection<Long> productIds, Map<Long, Integer> held) {
+        for (Long productId : productIds) {
+            Key key = new Key(checkoutId, productId);
+            Reservation current = reservations.remove(key);
+            if (current != null) {
+                wheel.cancel(current.timeout());
+                adjust(productId, -current.quantity());
+            }
+            Integer quantity = held.get(productId);
+            if (quantity != null) {
+                reservations.put(key, new Reservation(quantity, wheel.schedule(key, System.currentTimeMillis() + ttl.toMillis())));
+                adjust(productId, quantity);
+            }
+        }
+        changed(productIds);
+    }
+
+    /**
+     * Releases every reservation whose time is up. Called once per tick.
+     */
+    public synchronized void expire(long now) {
+        List<Key> expired = wheel.advance(now);
+        if (expired.isEmpty()) {
+            return;
+        }
+        Set<Long> changed = new HashSet<>();
+        for (Key key : expired) {
+            Reservation reservation = reservations.remove(key);
+            if (reservation != null) {
+                adjust(key.productId(), -reservation.quantity());
+                changed.add(key.productId());
+            }
+        }
+        changed(changed);
+        log.debug("Released {} expired stock reservations", expired.size());
+    }
+
+    /**
+     * Products of which some stock is held.
+     */
+    public Set<Long> reservedProducts() {
+        return Set.copyOf(reserved.keySet());
+    }
+
+    public int reserved(Long productId) {
+        return reserved.getOrDefault(productId, 0);
+    }
+
+    /**
+     * The product as the catalog reports it: a copy carrying the stock left after reservations, or the product itself
+     * when nothing of it is reserved.
+     */
+    public Product available(Product product) {
+        int held = reserved(product.getId());
+        if (held == 0) {
+            return product;
+        }
+        return new Product(product.getId(), product.getName(), product.getDescription(), product.getPrice(), Math.max(0, product.getStock() - held));
+    }
+
+    private void adjust(Long productId, int delta) {
+        reserved.compute(productId, (id, total) -> {
+            int updated = (total == null ? 0 : total) + delta;
+            return updated == 0 ? null : updated;
+        });
+    }
+
+    private void changed(Collection<Long> productIds) {
+        productIds.forEach(responseCache::evict);
+    }
+
+    private record Key(UUID checkoutId, Long productId) {
+
+    }
+
+    private record Reservation(int quantity, HierarchicalTimingWheel.Timeout<Key> timeout) {
+
+    }
+
+}
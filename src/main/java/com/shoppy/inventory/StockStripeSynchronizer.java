@@ -0,0 +1,80 @@
+package com.shoppy.inventory;
+
+import com.shoppy.service.ProductService;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind of striped stock. Once per interval the products decremented since the last run get the sum of
+ * their stripes written to the product row, in one statement, and are recorded in the change feed in the same
+ * transaction; the caches and indexes get them once it committed.
+ */
+@Component
+@Slf4j
+public class StockStripeSynchronizer {
+
+    private final Duration interval;
+    private final StockStripes stockStripes;
+    private final ProductService productService;
+    private final TransactionTemplate transaction;
+    private ScheduledExecutorService executor;
+
+    public StockStripeSynchronizer(
+            @Value("${shoppy.stock.stripes.sync-interval:1s}") Duration interval,
+            StockStripes stockStripes,
+            ProductService productService,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.interval = interval;
+        this.stockStripes = stockStripes;
+        this.productService = productService;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-stripes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::synchronize, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public void synchronize() {
+        Set<Long> productIds = stockStripes.drainChanged();
+        if (productIds.isEmpty()) {
+            return;
+        }
+        try {
+            transaction.executeWithoutResult(status -> {
+                stockStripes.updateProductStock(productIds);
+                productService.stockChanged(productIds);
+            });
+        }
+        catch (RuntimeException exception) {
+            log.warn("Could not synchronize the stock of {} striped products", productIds.size(), exception);
+            stockStripes.markChanged(productIds);
+        }
+    }
+
+}
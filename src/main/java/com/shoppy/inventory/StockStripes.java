@@ -0,0 +1,152 @@
+package com.shoppy.inventory;
+
+import com.shoppy.model.Product;
+import com.shoppy.model.StockStripe;
+import com.shoppy.repository.StockStripeRepository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stock of hot products split across several rows. A decrement picks a random stripe holding enough stock and
+ * falls back to the others when it runs dry; only when no single stripe can serve the quantity are all stripes
+ * locked and drained together. Products without stripes keep their stock on the product row.
+ * <p>
+ * The product row of a striped product carries the sum of its stripes, refreshed in the background: decrements only
+ * record which products changed and {@link StockStripeSynchronizer} writes the new sums in batches.
+ */
+@Component
+public class StockStripes {
+
+    public static final int MAX_STRIPES = 64;
+
+    private final StockStripeRepository stripeRepository;
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    public StockStripes(StockStripeRepository stripeRepository) {
+        this.stripeRepository = stripeRepository;
+    }
+
+    /**
+     * Takes the quantity off the product's stripes. Failed attempts on single stripes do not keep them locked, so a
+     * decrement never holds one stripe of a product while waiting for another.
+     */
+    public Outcome decrement(Long productId, int quantity) {
+        List<StockStripeRepository.StripeStock> stripes = stripeRepository.findStockByProductId(productId);
+        if (stripes.isEmpty()) {
+            return Outcome.NOT_STRIPED;
+        }
+        List<Long> candidates = new ArrayList<>(stripes.size());
+        for (StockStripeRepository.StripeStock stripe : stripes) {
+            if (stripe.getStock() >= quantity) {
+                candidates.add(stripe.getId());
+            }
+        }
+        int start = candidates.isEmpty() ? 0 : ThreadLocalRandom.current().nextInt(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (stripeRepository.tryDecrementStock(candidates.get((start + i) % candidates.size()), quantity)) {
+                return Outcome.DECREMENTED;
+            }
+        }
+        return drain(productId, quantity);
+    }
+
+    /**
+     * Spreads the product's stock evenly over the given number of stripes, replacing the current ones. A single
+     * stripe removes the striping and leaves the stock on the product row. The product row must be locked.
+     */
+    public void stripe(Product product, int count) {
+        List<StockStripe> current = stripeRepository.findByProductIdForUpdate(product.getId());
+        stripeRepository.deleteAllInBatch(current);
+        if (count < 2) {
+            return;
+        }
+        List<StockStripe> stripes = new ArrayList<>(count);
+        for (int stripe = 0; stripe < count; stripe++) {
+            int stock = product.getStock() / count + (stripe < product.getStock() % count ? 1 : 0);
+            stripes.add(new StockStripe(null, product.getId(), stripe, stock));
+        }
+        stripeRepository.saveAll(stripes);
+    }
+
+    /**
+     * Removes the stripes of a product that is being deleted.
+     */
+    public void remove(Long productId) {
+        stripeRepository.deleteAllInBatch(stripeRepository.findByProductIdForUpdate(productId));
+    }
+
+    /**
+     * Number of stripes of the product, zero when it is not striped.
+     */
+    public int count(Long productId) {
+        return stripeRepository.findStockByProductId(productId).size();
+    }
+
+    /**
+     * Current stock of the product summed over its stripes, locking them until the transaction ends. Empty when the
+     * product is not striped.
+     */
+    public Integer lockTotal(Long productId) {
+        List<StockStripe> stripes = stripeRepository.findByProductIdForUpdate(productId);
+        return stripes.isEmpty() ? null : stripes.stream().mapToInt(StockStripe::getStock).sum();
+    }
+
+    public void markChanged(Collection<Long> productIds) {
+        changed.addAll(productIds);
+    }
+
+    /**
+     * Takes the products decremented since the last call.
+     */
+    public Set<Long> drainChanged() {
+        Set<Long> drained = new HashSet<>();
+        for (Long productId : changed) {
+            if (changed.remove(productId)) {
+                drained.add(productId);
+            }
+        }
+        return drained;
+    }
+
+    public void updateProductStock(Collection<Long> productIds) {
+        stripeRepository.updateProductStock(productIds);
+    }
+
+    private Outcome drain(Long productId, int quantity) {
+        List<StockStripe> stripes = stripeRepository.findByProductIdForUpdate(productId);
+        if (stripes.isEmpty()) {
+            return Outcome.NOT_STRIPED;
+        }
+        if (stripes.stream().mapToInt(StockStripe::getStock).sum() < quantity) {
+            return Outcome.SHORT;
+        }
+        int left = quantity;
+        for (StockStripe stripe : stripes.stream().sorted(Comparator.comparing(StockStripe::getStock).reversed()).toList()) {
+            int taken = Math.min(left, stripe.getStock());
+            stripe.setStock(stripe.getStock() - taken);
+            left -= taken;
+            if (left == 0) {
+                break;
+            }
+        }
+        return Outcome.DECREMENTED;
+    }
+
+    public enum Outcome {
+
+        NOT_STRIPED,
+        DECREMENTED,
+        SHORT
+
+    }
+
+}
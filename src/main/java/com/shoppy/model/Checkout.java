@@ -2,6 +2,7 @@ package com.shoppy.model;
 
 import com.shoppy.exception.APIException;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -51,6 +52,9 @@ public class Checkout {
     @Column(name = "created_date", nullable = false, updatable = false)
     private LocalDateTime createdDate;
 
+    @Getter(AccessLevel.NONE)
+    private final transient ItemIndex index = new ItemIndex();
+
     @PrePersist
     public void setCreationDate() {
         if (id == null) {
@@ -61,11 +65,25 @@ public class Checkout {
         }
     }
 
+    /**
+     * The items of the checkout. Changes made to the returned list, or to the product of an item, are seen by the
+     * lookups by product id.
+     */
+    public List<Item> getItems() {
+        return index.view(items);
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+        index.invalidate();
+    }
+
     public void addItem(Item item) {
         if (findItemByProductId(item.getProduct().getId()) != null) {
             throw new APIException("product already existing", HttpStatus.CONFLICT);
         }
         items.add(item);
+        index.added(item);
     }
 
     public Item findItem(UUID id) {
@@ -81,7 +99,7 @@ public class Checkout {
     }
 
     public Item findItemByProductId(Long id) {
-        return items.stream().filter(item -> item.getProduct().getId().equals(id)).findFirst().orElse(null);
+        return index.of(items).get(id);
     }
 
     public boolean containsProduct(Long id) {
@@ -89,11 +107,22 @@ public class Checkout {
     }
 
     public boolean deleteItem(UUID id) {
-        return items.removeIf(item -> item.getId().equals(id));
+        boolean deleted = items.removeIf(item -> item.getId().equals(id));
+        if (deleted) {
+            index.invalidate();
+        }
+        return deleted;
     }
 
     public boolean deleteItemByProductId(Long id) {
-        return items.removeIf(item -> id.equals(item.getProduct().getId()));
+        ItemIndex current = index.of(items);
+        Item item = current.get(id);
+        if (item == null) {
+            return false;
+        }
+        items.remove(item);
+        current.removed(item);
+        return true;
     }
 
 }
@@ -0,0 +1,45 @@
+package com.shoppy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock of a product once every ledger movement up to {@code lastMovementId} is applied. The current stock is the
+ * snapshot plus the product's movements after it. The version keeps two instances from folding the same movements
+ * into a snapshot twice.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "inventory_snapshots")
+public class InventorySnapshot {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(nullable = false)
+    private Long stock;
+
+    @Column(name = "last_movement_id", nullable = false)
+    private Long lastMovementId;
+
+    @Column(name = "created_date", nullable = false)
+    private LocalDateTime createdDate;
+
+    @Version
+    private Long version;
+
+}
@@ -1,6 +1,6 @@
 package com.shoppy.model;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -14,11 +14,11 @@ import javax.persistence.OneToOne;
 import javax.persistence.PrePersist;
 import javax.persistence.Table;
 
+import java.util.Objects;
 import java.util.UUID;
 
 @Getter
 @Setter
-@AllArgsConstructor
 @NoArgsConstructor
 @Entity
 @Table(name = "checkout_items")
@@ -35,6 +35,27 @@ public class Item {
     @Column(nullable = false)
     private Integer quantity;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient ItemIndex index;
+
+    public Item(UUID id, Product product, Integer quantity) {
+        this.id = id;
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Replaces the product, invalidating the index of the checkout holding the item when the product id changes.
+     */
+    public void setProduct(Product product) {
+        Long previous = this.product == null ? null : this.product.getId();
+        this.product = product;
+        if (index != null && !Objects.equals(previous, product == null ? null : product.getId())) {
+            index.invalidate();
+        }
+    }
+
     @PrePersist
     public void prePersist() {
         if (id == null) {
@@ -42,4 +63,8 @@ public class Item {
         }
     }
 
+    void indexedBy(ItemIndex index) {
+        this.index = index;
+    }
+
 }
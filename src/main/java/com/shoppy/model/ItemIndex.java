@@ -0,0 +1,229 @@
+package com.shoppy.model;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Items of a checkout by the id of their product, in an open addressing table keyed by primitive longs. The index
+ * belongs to one list of items and is rebuilt on the next lookup after it was invalidated: by a change made through
+ * {@link #view}, by an indexed item moving to another product, or by the checkout replacing the list. Changes it can
+ * not be told about, like Hibernate replacing or refilling the collection, are noticed by the list's identity or
+ * size. Items whose product has no id yet are not indexed, and when a product is found twice the first item wins.
+ */
+final class ItemIndex {
+
+    private static final int MINIMUM_CAPACITY = 8;
+    private static final long EMPTY = 0;
+
+    private List<Item> source;
+    private int sourceSize;
+    private long[] keys = new long[MINIMUM_CAPACITY];
+    private Item[] values = new Item[MINIMUM_CAPACITY];
+    private boolean hasZeroKey;
+    private Item zeroValue;
+    private int size;
+    private boolean duplicates;
+
+    /**
+     * Returns the index, brought up to date with the given items first.
+     */
+    ItemIndex of(List<Item> items) {
+        if (items != source || items.size() != sourceSize) {
+            rebuild(items);
+        }
+        return this;
+    }
+
+    /**
+     * The items as callers see them: changing the list through this view invalidates the index.
+     */
+    List<Item> view(List<Item> items) {
+        return new AbstractList<>() {
+            @Override
+            public Item get(int position) {
+                return items.get(position);
+            }
+
+            @Override
+            public int size() {
+                return items.size();
+            }
+
+            @Override
+            public Item set(int position, Item item) {
+                invalidate();
+                return items.set(position, item);
+            }
+
+            @Override
+            public void add(int position, Item item) {
+                invalidate();
+                items.add(position, item);
+            }
+
+            @Override
+            public Item remove(int position) {
+                invalidate();
+                return items.remove(position);
+            }
+        };
+    }
+
+    void invalidate() {
+        source = null;
+    }
+
+    Item get(Long productId) {
+        if (productId == null) {
+            return null;
+        }
+        long key = productId;
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records an item appended to the indexed list.
+     */
+    void added(Item item) {
+        item.indexedBy(this);
+        put(item);
+        sourceSize++;
+    }
+
+    /**
+     * Records an item removed from the indexed list.
+     */
+    void removed(Item item) {
+        remove(item.getProduct().getId());
+        sourceSize--;
+        if (duplicates) {
+            source = null;
+        }
+    }
+
+    private void rebuild(List<Item> items) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity * 3 / 4 < items.size()) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Item[capacity];
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+        duplicates = false;
+        for (Item item : items) {
+            item.indexedBy(this);
+            if (get(item.getProduct().getId()) == null) {
+                put(item);
+            }
+            else {
+                duplicates = true;
+            }
+        }
+        source = items;
+        sourceSize = items.size();
+    }
+
+    private void put(Item item) {
+        Long productId = item.getProduct().getId();
+        if (productId == null) {
+            return;
+        }
+        long key = productId;
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = item;
+            return;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = item;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = item;
+        size++;
+    }
+
+    /**
+     * Removes the key and shifts the following entries of its probe sequence back, so no tombstones are needed.
+     */
+    private void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        long key = productId;
+        if (key == EMPTY) {
+            if (hasZeroKey) {
+                size--;
+            }
+            hasZeroKey = false;
+            zeroValue = null;
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        size--;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Item[] oldValues = values;
+        keys = new long[capacity];
+        values = new Item[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+}
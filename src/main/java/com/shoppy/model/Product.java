@@ -10,15 +10,31 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
+/**
+ * The indexes back the sorts of the product listing that can use them (one or two keys, always followed by the id).
+ * InnoDB appends the primary key to secondary indexes, so sorts whose keys share one direction are served, forwards or
+ * backwards, by the plain column indexes; sorts with mixed directions need the id spelled out in the index. Stock is
+ * written on every sale, so it is only indexed on its own: two key sorts involving stock fall back to a filesort
+ * rather than every stock decrement maintaining more indexes.
+ */
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
 @ToString
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_name", columnList = "name"),
+        @Index(name = "idx_products_price", columnList = "price"),
+        @Index(name = "idx_products_stock", columnList = "stock"),
+        @Index(name = "idx_products_name_price", columnList = "name, price"),
+        @Index(name = "idx_products_price_name", columnList = "price, name"),
+        @Index(name = "idx_products_name_price_desc", columnList = "name ASC, price DESC, id DESC"),
+        @Index(name = "idx_products_price_name_desc", columnList = "price ASC, name DESC, id DESC")
+})
 public class Product {
 
     @Id
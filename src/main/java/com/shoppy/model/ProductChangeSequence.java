@@ -0,0 +1,31 @@
+package com.shoppy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The last version handed out by the product change feed, kept in a single row. Only the relay locks it, so relays
+ * of several instances take turns and versions become visible in the order they were taken.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "product_change_sequence")
+public class ProductChangeSequence {
+
+    @Id
+    private Integer id;
+
+    @Column(name = "last_version", nullable = false)
+    private Long lastVersion;
+
+}
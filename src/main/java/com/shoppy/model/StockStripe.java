@@ -0,0 +1,40 @@
+package com.shoppy.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * One share of a striped product's stock. Orders for the product decrement a single stripe, so buyers of the same
+ * product lock different rows instead of queueing on the product row.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "product_stock_stripes", uniqueConstraints = @UniqueConstraint(columnNames = {"product_id", "stripe"}))
+public class StockStripe {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private Integer stripe;
+
+    @Column(nullable = false)
+    private Integer stock;
+
+}
@@ -0,0 +1,18 @@
+package com.shoppy.pagination;
+
+import com.shoppy.search.ProductFacets;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class FacetedPage<T> {
+
+    private final List<T> content;
+
+    private final ProductFacets facets;
+
+}
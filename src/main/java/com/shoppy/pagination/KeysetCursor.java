@@ -0,0 +1,140 @@
+package com.shoppy.pagination;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import com.shoppy.enumeration.SortProperty;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque position in a product listing: the sort it was produced for plus the sort key values
+ * (always ending with the product id) of the last product returned.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class KeysetCursor {
+
+    private static final JsonMapper jsonMapper = new JsonMapper();
+    private static final String ID = "id";
+
+    private final Sort sort;
+    private final List<Object> keys;
+
+    /**
+     * Appends the product id to the given sort so every position in the listing is unique.
+     */
+    public static Sort withTiebreaker(Sort sort) {
+        if (sort.getOrderFor(ID) != null) {
+            return sort;
+        }
+        Sort.Direction direction = sort.stream()
+                .reduce((first, second) -> second)
+                .map(Sort.Order::getDirection)
+                .orElse(Sort.Direction.ASC);
+        return sort.and(Sort.by(direction, ID));
+    }
+
+    public static KeysetCursor of(Sort sort, Product last) {
+        return new KeysetCursor(sort, sort.stream().map(order -> valueOf(last, order.getProperty())).toList());
+    }
+
+    public static KeysetCursor decode(String cursor, Sort sort) {
+        Payload payload;
+        try {
+            payload = jsonMapper.readValue(Base64.getUrlDecoder().decode(cursor), Payload.class);
+        }
+        catch (IllegalArgumentException | IOException exception) {
+            throw new APIException("Invalid cursor", HttpStatus.BAD_REQUEST);
+        }
+        if (!describe(sort).equals(payload.sort()) || payload.keys() == null || payload.keys().size() != sort.toList().size()) {
+            throw new APIException("Cursor does not match the requested sort", HttpStatus.BAD_REQUEST);
+        }
+        List<Object> keys = new ArrayList<>();
+        List<Sort.Order> orders = sort.toList();
+        try {
+            for (int i = 0; i < orders.size(); i++) {
+                keys.add(coerce(orders.get(i).getProperty(), payload.keys().get(i)));
+            }
+        }
+        catch (ClassCastException | NullPointerException exception) {
+            throw new APIException("Invalid cursor", HttpStatus.BAD_REQUEST);
+        }
+        return new KeysetCursor(sort, keys);
+    }
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(jsonMapper.writeValueAsBytes(new Payload(describe(sort), keys)));
+        }
+        catch (IOException exception) {
+            throw new APIException(exception.getMessage());
+        }
+    }
+
+    /**
+     * Matches the products positioned strictly after this cursor, i.e. the row-value comparison
+     * (k1, k2, ..., id) > (v1, v2, ..., vn) honoring the direction of every key.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Specification<Product> seek() {
+        return (root, query, builder) -> {
+            List<Sort.Order> orders = sort.toList();
+            List<Predicate> alternatives = new ArrayList<>();
+            for (int i = 0; i < orders.size(); i++) {
+                List<Predicate> conjunction = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    conjunction.add(builder.equal(root.get(orders.get(j).getProperty()), keys.get(j)));
+                }
+                Expression<Comparable> path = root.get(orders.get(i).getProperty());
+                Comparable key = (Comparable) keys.get(i);
+                conjunction.add(orders.get(i).isAscending() ? builder.greaterThan(path, key) : builder.lessThan(path, key));
+                alternatives.add(builder.and(conjunction.toArray(Predicate[]::new)));
+            }
+            return builder.or(alternatives.toArray(Predicate[]::new));
+        };
+    }
+
+    private static String describe(Sort sort) {
+        return sort.stream().map(order -> order.getProperty() + ':' + order.getDirection()).collect(Collectors.joining(","));
+    }
+
+    private static Object valueOf(Product product, String property) {
+        if (ID.equals(property)) {
+            return product.getId();
+        }
+        return SortProperty.valueOf(property.toUpperCase()).getAccessor().apply(product);
+    }
+
+    private static Object coerce(String property, Object value) {
+        if (ID.equals(property)) {
+            return ((Number) value).longValue();
+        }
+        return switch (SortProperty.valueOf(property.toUpperCase())) {
+            case NAME  -> (String) value;
+            case PRICE -> ((Number) value).doubleValue();
+            case STOCK -> ((Number) value).intValue();
+        };
+    }
+
+    record Payload(String sort, List<Object> keys) {
+
+    }
+
+}
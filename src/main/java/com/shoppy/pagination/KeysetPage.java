@@ -0,0 +1,19 @@
+package com.shoppy.pagination;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> {
+
+    private final List<T> content;
+
+    /**
+     * Cursor of the following page, null when this is the last one.
+     */
+    private final String next;
+
+}
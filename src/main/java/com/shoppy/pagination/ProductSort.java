@@ -0,0 +1,75 @@
+package com.shoppy.pagination;
+
+import com.shoppy.enumeration.SortMethod;
+import com.shoppy.enumeration.SortProperty;
+import com.shoppy.exception.APIException;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parser of multi-key product sorts written as {@code property:direction[,property:direction]}, e.g.
+ * {@code price:asc,name:desc}. The number of keys is limited to what the indexes on the products table can serve (see
+ * {@link com.shoppy.model.Product}): every combination of name and price has a matching index, while two key sorts
+ * involving stock do not and are sorted by the database after filtering.
+ */
+public final class ProductSort {
+
+    public static final int MAX_KEYS = 2;
+
+    public static boolean isMultiKey(String sort) {
+        return sort.indexOf(':') >= 0;
+    }
+
+    public static Sort parse(String sort) {
+        String[] keys = sort.split(",");
+        if (keys.length > MAX_KEYS) {
+            throw new APIException("At most " + MAX_KEYS + " sorting properties are allowed", HttpStatus.BAD_REQUEST);
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        Set<SortProperty> properties = new HashSet<>();
+        for (String key : keys) {
+            String[] parts = key.trim().split(":", -1);
+            if (parts.length != 2) {
+                throw new APIException("Invalid sorting key: " + key, HttpStatus.BAD_REQUEST);
+            }
+            SortProperty property = parseProperty(parts[0]);
+            if (!properties.add(property)) {
+                throw new APIException("Duplicated sorting property: " + parts[0], HttpStatus.BAD_REQUEST);
+            }
+            orders.add(switch (parseMethod(parts[1])) {
+                case ASC  -> Sort.Order.asc(property.getProperty());
+                case DESC -> Sort.Order.desc(property.getProperty());
+            });
+        }
+        return Sort.by(orders);
+    }
+
+    public static SortProperty parseProperty(String property) {
+        try {
+            return SortProperty.valueOf(property.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException exception) {
+            throw new APIException("Unknown sorting property: " + property, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    public static SortMethod parseMethod(String method) {
+        try {
+            return SortMethod.valueOf(method.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException exception) {
+            throw new APIException("Unknown sorting method: " + method, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    private ProductSort() {
+        // ...
+    }
+
+}
@@ -3,11 +3,24 @@ package com.shoppy.repository;
 import com.shoppy.model.Checkout;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface CheckoutRepository extends JpaRepository<Checkout, UUID> {
 
-}
\ No newline at end of file
+    /**
+     * The current checkout of the customer with its items, their products, the address and the payment method,
+     * fetched in one query without loading the customer.
+     */
+    @Query("select distinct checkout from Customer customer join customer.currentCheckout checkout " +
+            "left join fetch checkout.items item left join fetch item.product " +
+            "left join fetch checkout.address left join fetch checkout.paymentMethod " +
+            "where customer.username = :username")
+    Optional<Checkout> findCurrentCheckoutByUsername(@Param("username") String username);
+
+}
@@ -0,0 +1,63 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.InventoryMovement;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface InventoryMovementRepository extends JpaRepository<InventoryMovement, Long>, InventoryMovementRepositoryCustom {
+
+    @Query("SELECT COALESCE(SUM(m.quantity), 0) FROM InventoryMovement m WHERE m.productId = :productId AND m.id > :after")
+    long sumQuantityAfter(@Param("productId") Long productId, @Param("after") long after);
+
+    /**
+     * Id of the last movement created up to the given time, zero when there is none.
+     */
+    @Query("SELECT COALESCE(MAX(m.id), 0) FROM InventoryMovement m WHERE m.createdDate <= :time")
+    long findLastIdCreatedBy(@Param("time") LocalDateTime time);
+
+    @Query("SELECT m.productId AS productId, SUM(m.quantity) AS quantity FROM InventoryMovement m WHERE m.id > :from AND m.id <= :to GROUP BY m.productId")
+    List<ProductQuantity> sumQuantityByProduct(@Param("from") long from, @Param("to") long to);
+
+    /**
+     * Products whose closing movement has an id within the given range, that is products deleted meanwhile.
+     */
+    @Query("SELECT m.productId FROM InventoryMovement m WHERE m.type = com.shoppy.enumeration.MovementType.CLOSING AND m.id > :from AND m.id <= :to")
+    List<Long> findClosedProductIds(@Param("from") long from, @Param("to") long to);
+
+    /**
+     * Movements up to the given id of the products whose id falls into one of several partitions, in ledger order.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT m.productId AS productId, m.quantity AS quantity FROM InventoryMovement m WHERE MOD(m.productId, :partitions) = :partition AND m.id <= :to ORDER BY m.id")
+    Stream<ProductQuantity> streamPartition(@Param("partitions") int partitions, @Param("partition") int partition, @Param("to") long to);
+
+    /**
+     * Records the current stock of every product that has none in the ledger yet as an opening adjustment.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO inventory_movements (product_id, type, quantity, created_date) "
+            + "SELECT p.id, 'ADJUSTMENT', p.stock, CURRENT_TIMESTAMP FROM products p "
+            + "WHERE p.stock <> 0 AND NOT EXISTS (SELECT 1 FROM inventory_movements m WHERE m.product_id = p.id)", nativeQuery = true)
+    int insertOpeningBalances();
+
+    interface ProductQuantity {
+
+        Long getProductId();
+
+        Long getQuantity();
+
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.InventoryMovement;
+
+import java.util.List;
+
+public interface InventoryMovementRepositoryCustom {
+
+    /**
+     * Inserts the movements with a single JDBC batch. Identity ids rule out Hibernate's own insert batching, so the
+     * rows are written directly and the ids are not read back.
+     */
+    void append(List<InventoryMovement> movements);
+
+}
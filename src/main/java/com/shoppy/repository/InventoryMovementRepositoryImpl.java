@@ -0,0 +1,43 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.InventoryMovement;
+
+import org.hibernate.Session;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.List;
+
+public class InventoryMovementRepositoryImpl implements InventoryMovementRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO inventory_movements (product_id, type, quantity, created_date) VALUES (?, ?, ?, ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void append(List<InventoryMovement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (InventoryMovement movement : movements) {
+                    statement.setLong(1, movement.getProductId());
+                    statement.setString(2, movement.getType().name());
+                    statement.setInt(3, movement.getQuantity());
+                    statement.setTimestamp(4, Timestamp.valueOf(movement.getCreatedDate()));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+}
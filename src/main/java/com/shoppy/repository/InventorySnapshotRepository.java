@@ -0,0 +1,18 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.InventorySnapshot;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface InventorySnapshotRepository extends JpaRepository<InventorySnapshot, Long> {
+
+    /**
+     * The ledger position every snapshot is up to date with, zero before the first snapshot.
+     */
+    @Query("SELECT COALESCE(MAX(s.lastMovementId), 0) FROM InventorySnapshot s")
+    long findLastMovementId();
+
+}
@@ -0,0 +1,19 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.ProductChange;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ProductChangeRepository extends JpaRepository<ProductChange, Long>, ProductChangeRepositoryCustom {
+
+    @Query("SELECT c FROM ProductChange c WHERE c.version > :since ORDER BY c.version")
+    List<ProductChange> findChanges(@Param("since") long since, Pageable pageable);
+
+}
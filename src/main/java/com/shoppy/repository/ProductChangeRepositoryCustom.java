@@ -0,0 +1,20 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.ProductChange;
+
+import java.util.List;
+
+public interface ProductChangeRepositoryCustom {
+
+    /**
+     * Inserts the changes without a version with a single JDBC batch.
+     */
+    void append(List<ProductChange> changes);
+
+    /**
+     * Gives the next versions to committed entries without one, oldest first, and returns how many it versioned.
+     * The row of product_change_sequence stays locked until the transaction ends.
+     */
+    int assignVersions(int limit);
+
+}
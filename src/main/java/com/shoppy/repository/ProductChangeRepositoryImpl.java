@@ -0,0 +1,110 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.ProductChange;
+
+import org.hibernate.Session;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductChangeRepositoryImpl implements ProductChangeRepositoryCustom {
+
+    private static final String LOCK = "SELECT last_version FROM product_change_sequence WHERE id = 1 FOR UPDATE";
+    private static final String SEED = "INSERT INTO product_change_sequence (id, last_version) SELECT 1, COALESCE(MAX(version), 0) FROM product_changes";
+    private static final String ADVANCE = "UPDATE product_change_sequence SET last_version = ? WHERE id = 1";
+    private static final String INSERT = "INSERT INTO product_changes (product_id, deleted, created_date) VALUES (?, ?, ?)";
+    private static final String UNVERSIONED = "SELECT id FROM product_changes WHERE version IS NULL ORDER BY id LIMIT ?";
+    private static final String VERSION = "UPDATE product_changes SET version = ? WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void append(List<ProductChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (ProductChange change : changes) {
+                    statement.setLong(1, change.getProductId());
+                    statement.setBoolean(2, change.isDeleted());
+                    statement.setTimestamp(3, Timestamp.valueOf(change.getCreatedDate()));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public int assignVersions(int limit) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            long version = lockLastVersion(connection);
+            List<Long> ids = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(UNVERSIONED)) {
+                statement.setInt(1, limit);
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(VERSION)) {
+                for (Long id : ids) {
+                    statement.setLong(1, ++version);
+                    statement.setLong(2, id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(ADVANCE)) {
+                statement.setLong(1, version);
+                statement.executeUpdate();
+            }
+            return ids.size();
+        });
+    }
+
+    /**
+     * Locks the sequence row and reads the last version, creating the row on first use so it continues after the
+     * entries already in the feed. When another transaction creates it at the same time the insert fails on its key
+     * and the row it created is locked instead.
+     */
+    private static long lockLastVersion(Connection connection) throws SQLException {
+        Long version = readLastVersion(connection);
+        if (version != null) {
+            return version;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(SEED)) {
+            statement.executeUpdate();
+        }
+        catch (SQLIntegrityConstraintViolationException exception) {
+            // Created by a concurrent writer
+        }
+        return readLastVersion(connection);
+    }
+
+    private static Long readLastVersion(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(LOCK); ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getLong(1) : null;
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.Product;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Returns at most {@code limit} products matching the specification, without issuing a count query.
+     */
+    List<Product> findAll(Specification<Product> specification, Sort sort, int limit);
+
+    /**
+     * Returns the requested page of matching products. One row more than the page size is fetched to tell whether
+     * a next page exists, instead of counting every match.
+     */
+    Slice<Product> findSlice(Specification<Product> specification, Pageable pageable);
+
+    /**
+     * Takes the quantity off the product's stock with a single conditional update, so concurrent decrements can
+     * never take the stock below zero. On success a product managed by the current persistence context is refreshed
+     * to reflect the new stock; any other instance is left untouched, as it may be shared. When less than the
+     * quantity is left nothing changes and false is returned.
+     */
+    boolean decrementStock(Product product, int quantity);
+
+    /**
+     * Streams the matching products through a forward-only cursor with a fixed fetch size. Every product is
+     * detached once it has been read, so the persistence context does not grow with the result.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    Stream<Product> stream(Specification<Product> specification, Sort sort);
+
+}
@@ -0,0 +1,65 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.Product;
+import com.shoppy.search.ProductFilter;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+
+import javax.persistence.criteria.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public final class ProductSpecifications {
+
+    public static Specification<Product> nameContainsIgnoreCase(String query) {
+        if (query == null) {
+            return null;
+        }
+        String pattern = "%" + EscapeCharacter.DEFAULT.escape(query.toLowerCase()) + "%";
+        return (root, criteria, builder) -> builder.like(builder.lower(root.get("name")), pattern, EscapeCharacter.DEFAULT.getEscapeCharacter());
+    }
+
+    public static Specification<Product> idIn(Collection<Long> ids) {
+        return (root, criteria, builder) -> root.get("id").in(ids);
+    }
+
+    public static Specification<Product> matching(ProductFilter filter) {
+        if (filter.isEmpty()) {
+            return null;
+        }
+        return (root, criteria, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.minPrice() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("price"), filter.minPrice()));
+            }
+            if (filter.maxPrice() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("price"), filter.maxPrice()));
+            }
+            if (filter.inStock()) {
+                predicates.add(builder.greaterThan(root.get("stock"), 0));
+            }
+            if (filter.inStock() && !filter.soldOut().isEmpty()) {
+                predicates.add(builder.not(root.get("id").in(filter.soldOut())));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Conjunction of both specifications where a null one matches everything; null when both are.
+     */
+    public static Specification<Product> and(Specification<Product> first, Specification<Product> second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null ? first : first.and(second);
+    }
+
+    private ProductSpecifications() {
+        // ...
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.shoppy.repository;
+
+import com.shoppy.model.StockStripe;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockStripeRepository extends JpaRepository<StockStripe, Long>, StockStripeRepositoryCustom {
+
+    /**
+     * Current stock of every stripe of the product, read without locking and without loading the entities.
+     */
+    @Query("SELECT s.id AS id, s.stock AS stock FROM StockStripe s WHERE s.productId = :productId")
+    List<StripeStock> findStockByProductId(@Param("productId") Long productId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM StockStripe s WHERE s.productId = :productId ORDER BY s.stripe")
+    List<StockStripe> findByProductIdForUpdate(@Param("productId") Long productId);
+
+    /**
+     * Copies the sum of the stripes onto the stock column of each product.
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = (SELECT COALESCE(SUM(s.stock), 0) FROM StockStripe s WHERE s.productId = p.id) WHERE p.id IN :productIds")
+    int updateProductStock(@Param("productIds") Collection<Long> productIds);
+
+    interface StripeStock {
+
+        Long getId();
+
+        Integer getStock();
+
+    }
+
+}
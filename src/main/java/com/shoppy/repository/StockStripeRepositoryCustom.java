@@ -0,0 +1,12 @@
+package com.shoppy.repository;
+
+public interface StockStripeRepositoryCustom {
+
+    /**
+     * Takes the quantity off the stripe if it holds enough stock. The update runs behind a savepoint that is rolled
+     * back when nothing was updated: H2 keeps rows a conditional update waited for but did not match locked until
+     * then, while MySQL releases them by itself at read committed isolation.
+     */
+    boolean tryDecrementStock(Long id, int quantity);
+
+}
@@ -0,0 +1,35 @@
+package com.shoppy.repository;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+
+public class StockStripeRepositoryImpl implements StockStripeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean tryDecrementStock(Long id, int quantity) {
+        Session session = entityManager.unwrap(Session.class);
+        Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+        int updated = entityManager.createQuery("UPDATE StockStripe s SET s.stock = s.stock - :quantity WHERE s.id = :id AND s.stock >= :quantity")
+                .setParameter("quantity", quantity)
+                .setParameter("id", id)
+                .executeUpdate();
+        session.doWork(connection -> {
+            if (updated == 1) {
+                connection.releaseSavepoint(savepoint);
+            }
+            else {
+                connection.rollback(savepoint);
+            }
+        });
+        return updated == 1;
+    }
+
+}
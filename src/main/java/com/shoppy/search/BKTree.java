@@ -0,0 +1,132 @@
+package com.shoppy.search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree of terms under the Levenshtein distance. A lookup for the terms within distance d of a
+ * query only descends into children whose edge distance lies in [dist - d, dist + d], which prunes most of the
+ * vocabulary for small d. Terms can not be removed; callers filter out stale terms and rebuild the tree.
+ */
+public class BKTree {
+
+    private Node root;
+    private int size;
+
+    public void add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term, Integer.MAX_VALUE);
+            if (distance == 0) {
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(term));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Returns every term within the given distance of the query, mapped to its distance.
+     */
+    public Map<String, Integer> search(String query, int maxDistance) {
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(query, node.term, maxDistance + node.maxEdge());
+            if (distance <= maxDistance) {
+                matches.put(node.term, distance);
+            }
+            int low = distance - maxDistance;
+            int high = distance + maxDistance;
+            for (int edge = Math.max(1, low); edge <= high && edge < node.children.length; edge++) {
+                if (node.children[edge] != null) {
+                    pending.push(node.children[edge]);
+                }
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Levenshtein distance between both strings. Once every cell of a row exceeds {@code limit} the computation
+     * stops and {@code limit + 1} is returned, which is enough for pruning.
+     */
+    static int distance(String first, String second, int limit) {
+        if (Math.abs(first.length() - second.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            current[0] = i;
+            int best = current[0];
+            for (int j = 1; j <= second.length(); j++) {
+                int cost = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                best = Math.min(best, current[j]);
+            }
+            if (best > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[second.length()];
+    }
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String term;
+        private Node[] children = NO_CHILDREN;
+
+        private Node(String term) {
+            this.term = term;
+        }
+
+        private Node child(int distance) {
+            return distance < children.length ? children[distance] : null;
+        }
+
+        private void addChild(int distance, Node child) {
+            if (distance >= children.length) {
+                Node[] resized = new Node[distance + 1];
+                System.arraycopy(children, 0, resized, 0, children.length);
+                children = resized;
+            }
+            children[distance] = child;
+        }
+
+        private int maxEdge() {
+            return Math.max(0, children.length - 1);
+        }
+
+    }
+
+}
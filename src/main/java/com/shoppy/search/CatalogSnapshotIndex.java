@@ -0,0 +1,226 @@
+package com.shoppy.search;
+
+import com.shoppy.enumeration.SortProperty;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetCursor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The whole catalog held in memory as an immutable snapshot, used to serve unfiltered browsing without a query.
+ * <p>
+ * A snapshot keeps the products ordered by id plus one array per {@link SortProperty} ordered by that property and
+ * then by id, so a page of any single-key sort is a slice of an array (read backwards for descending sorts, which
+ * matches the id tiebreaker taking the direction of the sort). Readers only dereference the current snapshot and
+ * never lock. Writers copy the arrays with the product removed and re-inserted and publish the new snapshot with a
+ * single volatile write. While the catalog is being loaded products are only collected and the first snapshot is
+ * built once loading completes.
+ * <p>
+ * Disabled with {@code shoppy.catalog.snapshot.enabled=false}, in which case it never becomes ready and listings
+ * keep going through JPA.
+ */
+@Component
+public class CatalogSnapshotIndex implements ProductIndex {
+
+    private static final String ID = "id";
+    private static final Comparator<Product> BY_ID = Comparator.comparing(Product::getId);
+    private static final Map<SortProperty, Comparator<Product>> ORDERINGS = new EnumMap<>(Map.of(
+            SortProperty.NAME, Comparator.comparing(Product::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(BY_ID),
+            SortProperty.PRICE, Comparator.comparing(Product::getPrice).thenComparing(BY_ID),
+            SortProperty.STOCK, Comparator.comparing(Product::getStock).thenComparing(BY_ID)
+    ));
+
+    private final boolean enabled;
+    private final Map<Long, Product> loading = new HashMap<>();
+    private volatile Snapshot snapshot;
+
+    public CatalogSnapshotIndex(@Value("${shoppy.catalog.snapshot.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized void productSaved(Product product) {
+        if (!enabled) {
+            return;
+        }
+        Product copy = new Product(product.getId(), product.getName(), product.getDescription(), product.getPrice(), product.getStock());
+        if (snapshot == null) {
+            loading.put(copy.getId(), copy);
+        }
+        else {
+            snapshot = snapshot.without(copy.getId()).with(copy);
+        }
+    }
+
+    @Override
+    public synchronized void productDeleted(Long id) {
+        if (!enabled) {
+            return;
+        }
+        if (snapshot == null) {
+            loading.remove(id);
+        }
+        else {
+            snapshot = snapshot.without(id);
+        }
+    }
+
+    @Override
+    public synchronized void markReady() {
+        if (enabled && snapshot == null) {
+            snapshot = Snapshot.of(loading.values().toArray(Product[]::new));
+            loading.clear();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Whether pages of the given sort can be served: unsorted, by id or by a single sort property.
+     */
+    public boolean supports(Sort sort) {
+        List<Sort.Order> orders = sort.toList();
+        if (orders.size() == 2 && orders.get(1).getProperty().equals(ID) && orders.get(0).getDirection() == orders.get(1).getDirection()) {
+            return supports(Sort.by(orders.get(0)));
+        }
+        return orders.isEmpty() || (orders.size() == 1 && (orders.get(0).getProperty().equals(ID) || property(orders.get(0)) != null));
+    }
+
+    public List<Product> page(Sort sort, long offset, int size) {
+        Ordering ordering = snapshot.ordering(sort);
+        int from = (int) Math.min(offset, ordering.products().length);
+        return ordering.slice(from, (int) Math.min((long) from + size, ordering.products().length));
+    }
+
+    /**
+     * Up to {@code size} products positioned after the cursor, which must belong to {@code sort} with its tiebreaker.
+     */
+    public List<Product> after(Sort sort, KeysetCursor cursor, int size) {
+        Ordering ordering = snapshot.ordering(sort);
+        int from = 0;
+        if (cursor != null) {
+            Product last = new Product();
+            List<Object> keys = cursor.getKeys();
+            last.setId((Long) keys.get(keys.size() - 1));
+            Sort.Order order = sort.iterator().next();
+            if (!order.getProperty().equals(ID)) {
+                switch (property(order)) {
+                    case NAME  -> last.setName((String) keys.get(0));
+                    case PRICE -> last.setPrice((Double) keys.get(0));
+                    case STOCK -> last.setStock((Integer) keys.get(0));
+                }
+            }
+            from = ordering.positionAfter(last);
+        }
+        return ordering.slice(from, (int) Math.min((long) from + size, ordering.products().length));
+    }
+
+    public void forEach(Sort sort, Consumer<Product> consumer) {
+        Ordering ordering = snapshot.ordering(sort);
+        ordering.slice(0, ordering.products().length).forEach(consumer);
+    }
+
+    private static SortProperty property(Sort.Order order) {
+        return Arrays.stream(SortProperty.values()).filter(property -> property.getProperty().equals(order.getProperty())).findFirst().orElse(null);
+    }
+
+    /**
+     * Products in one order, read forwards or backwards.
+     */
+    private record Ordering(Product[] products, Comparator<Product> comparator, boolean ascending) {
+
+        private List<Product> slice(int from, int to) {
+            List<Product> page = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                page.add(products[ascending ? i : products.length - 1 - i]);
+            }
+            return page;
+        }
+
+        /**
+         * Number of products, in reading order, up to and including the given one.
+         */
+        private int positionAfter(Product last) {
+            int index = Arrays.binarySearch(products, last, comparator);
+            if (ascending) {
+                return index >= 0 ? index + 1 : -index - 1;
+            }
+            return products.length - (index >= 0 ? index : -index - 1);
+        }
+
+    }
+
+    private record Snapshot(Product[] byId, Map<SortProperty, Product[]> sorted) {
+
+        private static Snapshot of(Product[] products) {
+            Arrays.sort(products, BY_ID);
+            Map<SortProperty, Product[]> sorted = new EnumMap<>(SortProperty.class);
+            ORDERINGS.forEach((property, comparator) -> {
+                Product[] copy = products.clone();
+                Arrays.sort(copy, comparator);
+                sorted.put(property, copy);
+            });
+            return new Snapshot(products, sorted);
+        }
+
+        private Ordering ordering(Sort sort) {
+            Sort.Order order = sort.isSorted() ? sort.iterator().next() : Sort.Order.asc(ID);
+            if (order.getProperty().equals(ID)) {
+                return new Ordering(byId, BY_ID, order.isAscending());
+            }
+            SortProperty property = property(order);
+            return new Ordering(sorted.get(property), ORDERINGS.get(property), order.isAscending());
+        }
+
+        private Snapshot with(Product product) {
+            Map<SortProperty, Product[]> next = new EnumMap<>(SortProperty.class);
+            sorted.forEach((property, products) -> next.put(property, insert(products, product, ORDERINGS.get(property))));
+            return new Snapshot(insert(byId, product, BY_ID), next);
+        }
+
+        private Snapshot without(Long id) {
+            Product probe = new Product();
+            probe.setId(id);
+            int index = Arrays.binarySearch(byId, probe, BY_ID);
+            if (index < 0) {
+                return this;
+            }
+            Product product = byId[index];
+            Map<SortProperty, Product[]> next = new EnumMap<>(SortProperty.class);
+            sorted.forEach((property, products) -> next.put(property, remove(products, Arrays.binarySearch(products, product, ORDERINGS.get(property)))));
+            return new Snapshot(remove(byId, index), next);
+        }
+
+        private static Product[] insert(Product[] products, Product product, Comparator<Product> comparator) {
+            int index = -Arrays.binarySearch(products, product, comparator) - 1;
+            Product[] copy = new Product[products.length + 1];
+            System.arraycopy(products, 0, copy, 0, index);
+            copy[index] = product;
+            System.arraycopy(products, index, copy, index + 1, products.length - index);
+            return copy;
+        }
+
+        private static Product[] remove(Product[] products, int index) {
+            Product[] copy = new Product[products.length - 1];
+            System.arraycopy(products, 0, copy, 0, index);
+            System.arraycopy(products, index + 1, copy, index, products.length - index - 1);
+            return copy;
+        }
+
+    }
+
+}
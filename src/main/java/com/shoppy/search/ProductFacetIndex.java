@@ -0,0 +1,167 @@
+package com.shoppy.search;
+
+import com.shoppy.model.Product;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed bitmaps of the products in every price bucket and stock state, used to count facets.
+ * <p>
+ * Products are numbered with dense ordinals (reused after deletes) so the bitmaps stay compact. A count is the
+ * cardinality of the intersection of the candidate set with the bitmaps of the active filters; a price range that
+ * cuts through a bucket is resolved by checking the price of every product in that bucket.
+ */
+@Component
+public class ProductFacetIndex implements ProductIndex {
+
+    static final double[] PRICE_BOUNDARIES = {0, 10, 25, 50, 100, 250, 500, 1000};
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final RoaringBitmap free = new RoaringBitmap();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final RoaringBitmap inStock = new RoaringBitmap();
+    private final RoaringBitmap[] priceBuckets = new RoaringBitmap[PRICE_BOUNDARIES.length];
+    private double[] prices = new double[1024];
+    private volatile boolean ready;
+
+    public ProductFacetIndex() {
+        Arrays.setAll(priceBuckets, bucket -> new RoaringBitmap());
+    }
+
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            remove(product.getId());
+            int ordinal = free.isEmpty() ? ordinals.size() : free.first();
+            free.remove(ordinal);
+            ordinals.put(product.getId(), ordinal);
+            if (ordinal >= prices.length) {
+                prices = Arrays.copyOf(prices, prices.length * 2);
+            }
+            prices[ordinal] = product.getPrice();
+            all.add(ordinal);
+            priceBuckets[bucketOf(product.getPrice())].add(ordinal);
+            if (product.getStock() > 0) {
+                inStock.add(ordinal);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Long id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Counts the facets of the given products, or of the whole catalog when {@code ids} is null, under the filter.
+     */
+    public ProductFacets count(Collection<Long> ids, ProductFilter filter) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidates = ids == null ? all : ordinalsOf(ids);
+            RoaringBitmap stocked = filter.soldOut().isEmpty() ? inStock : RoaringBitmap.andNot(inStock, ordinalsOf(filter.soldOut()));
+            RoaringBitmap priced = filter.hasPriceRange() ? RoaringBitmap.and(candidates, priceRange(filter)) : candidates;
+            RoaringBitmap filtered = filter.inStock() ? RoaringBitmap.and(candidates, stocked) : candidates;
+
+            List<ProductFacets.PriceFacet> price = new ArrayList<>(priceBuckets.length);
+            for (int bucket = 0; bucket < priceBuckets.length; bucket++) {
+                Double to = bucket + 1 < PRICE_BOUNDARIES.length ? PRICE_BOUNDARIES[bucket + 1] : null;
+                price.add(new ProductFacets.PriceFacet(PRICE_BOUNDARIES[bucket], to, RoaringBitmap.andCardinality(filtered, priceBuckets[bucket])));
+            }
+            long available = RoaringBitmap.andCardinality(priced, stocked);
+            ProductFacets.StockFacet stock = new ProductFacets.StockFacet(available, priced.getLongCardinality() - available);
+            long total = filter.inStock() ? available : priced.getLongCardinality();
+            return new ProductFacets(total, price, stock);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap ordinalsOf(Collection<Long> ids) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (Long id : ids) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal != null) {
+                bitmap.add(ordinal);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Products priced within the filter bounds: whole buckets inside the range plus the matching products of the
+     * buckets the bounds fall into.
+     */
+    private RoaringBitmap priceRange(ProductFilter filter) {
+        RoaringBitmap range = new RoaringBitmap();
+        for (int bucket = 0; bucket < priceBuckets.length; bucket++) {
+            double from = PRICE_BOUNDARIES[bucket];
+            double to = bucket + 1 < PRICE_BOUNDARIES.length ? PRICE_BOUNDARIES[bucket + 1] : Double.POSITIVE_INFINITY;
+            if ((filter.maxPrice() != null && from > filter.maxPrice()) || (filter.minPrice() != null && to <= filter.minPrice())) {
+                continue;
+            }
+            if ((filter.minPrice() == null || from >= filter.minPrice()) && (filter.maxPrice() == null || to <= filter.maxPrice())) {
+                range.or(priceBuckets[bucket]);
+            }
+            else {
+                priceBuckets[bucket].forEach((int ordinal) -> {
+                    if (filter.matchesPrice(prices[ordinal])) {
+                        range.add(ordinal);
+                    }
+                });
+            }
+        }
+        return range;
+    }
+
+    private void remove(Long id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        all.remove(ordinal);
+        inStock.remove(ordinal);
+        priceBuckets[bucketOf(prices[ordinal])].remove(ordinal);
+        free.add(ordinal);
+    }
+
+    static int bucketOf(double price) {
+        int index = Arrays.binarySearch(PRICE_BOUNDARIES, price);
+        int bucket = index >= 0 ? index : -index - 2;
+        return Math.max(0, bucket);
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.shoppy.search;
+
+import java.util.List;
+
+/**
+ * Product counts of a listing. Every facet is counted with all filters applied except its own, so the
+ * counts tell how many products each alternative value would return.
+ */
+public record ProductFacets(long total, List<PriceFacet> price, StockFacet stock) {
+
+    /**
+     * Products priced in [from, to); {@code to} is null for the last bucket.
+     */
+    public record PriceFacet(double from, Double to, long count) {
+
+    }
+
+    public record StockFacet(long inStock, long outOfStock) {
+
+    }
+
+}
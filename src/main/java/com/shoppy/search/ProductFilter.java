@@ -0,0 +1,37 @@
+package com.shoppy.search;
+
+import java.util.Set;
+
+/**
+ * Restrictions applied on top of a product listing. Price bounds are inclusive and optional. Products in
+ * {@code soldOut} count as out of stock whatever their stock column says, as when reservations hold all of it.
+ */
+public record ProductFilter(Double minPrice, Double maxPrice, boolean inStock, Set<Long> soldOut) {
+
+    public static final ProductFilter NONE = new ProductFilter(null, null, false);
+
+    public ProductFilter(Double minPrice, Double maxPrice, boolean inStock) {
+        this(minPrice, maxPrice, inStock, Set.of());
+    }
+
+    public ProductFilter withSoldOut(Set<Long> ids) {
+        return new ProductFilter(minPrice, maxPrice, inStock, Set.copyOf(ids));
+    }
+
+    public boolean isEmpty() {
+        return !hasPriceRange() && !inStock;
+    }
+
+    public boolean hasPriceRange() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    public boolean matchesPrice(double price) {
+        return (minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice);
+    }
+
+    public boolean matches(Long id, double price, int stock) {
+        return matchesPrice(price) && (!inStock || (stock > 0 && !soldOut.contains(id)));
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.shoppy.search;
+
+import com.shoppy.service.ProductChangeListener;
+
+/**
+ * In-memory structure derived from the products table. It is filled once at startup by
+ * {@link ProductIndexLoader} and kept up to date through the {@link ProductChangeListener} callbacks.
+ */
+public interface ProductIndex extends ProductChangeListener {
+
+    /**
+     * Called once every existing product has been indexed.
+     */
+    void markReady();
+
+    boolean isReady();
+
+}
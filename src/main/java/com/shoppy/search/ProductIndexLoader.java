@@ -0,0 +1,63 @@
+package com.shoppy.search;
+
+import com.shoppy.datasource.ReplicaRoutingDataSource;
+import com.shoppy.model.Product;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.service.ProductService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Feeds every product to all {@link ProductIndex} beans in a single pass over the products table. Products published
+ * by {@link ProductService} while the pass runs are left as published, since the pass may have read an older state.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductIndexLoader {
+
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final PlatformTransactionManager transactionManager;
+    private final List<ProductIndex> indexes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        long start = System.currentTimeMillis();
+        productService.indexLoadStarted();
+        long count;
+        try {
+            // Changes are applied to the indexes as they commit, so the load must not miss any that did not replicate yet
+            count = ReplicaRoutingDataSource.onPrimary(() -> transaction.execute(status -> {
+                AtomicLong indexed = new AtomicLong();
+                try (Stream<Product> products = productRepository.stream(null, Sort.unsorted())) {
+                    products.forEach(product -> productService.indexLoaded(product, loaded -> {
+                        indexes.forEach(index -> index.productSaved(loaded));
+                        indexed.incrementAndGet();
+                    }));
+                }
+                return indexed.get();
+            }));
+        }
+        finally {
+            productService.indexLoadFinished();
+        }
+        indexes.forEach(ProductIndex::markReady);
+        log.info("Indexed {} products in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+}
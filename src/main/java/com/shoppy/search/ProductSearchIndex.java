@@ -0,0 +1,584 @@
+package com.shoppy.search;
+
+import com.shoppy.enumeration.SortProperty;
+import com.shoppy.model.Product;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over product names and descriptions ranked with BM25.
+ * <p>
+ * A query matches a product when every query token is found, as a whole term or as part of one, in its name or
+ * description. Partial matches are resolved through a trigram index over the term dictionary and score less than
+ * whole term matches. Name matches weigh more than description matches.
+ * <p>
+ * In fuzzy mode query tokens are instead expanded to the name terms within a small edit distance, looked up in a
+ * {@link BKTree} over the name vocabulary, and weighted down by their distance.
+ * <p>
+ * Documents are numbered with dense ordinals (reused after deletes) and posting lists are kept sorted by ordinal, so
+ * combining the fields, expansions and tokens of a query are linear merges of arrays.
+ */
+@Component
+public class ProductSearchIndex implements ProductIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double NAME_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double PARTIAL_MATCH_WEIGHT = 0.5;
+    private static final int GRAM = 3;
+    private static final int VOCABULARY_SLACK = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final RoaringBitmap free = new RoaringBitmap();
+    private Document[] ordinals = new Document[1024];
+    private final Field name = new Field(NAME_WEIGHT);
+    private final Field description = new Field(DESCRIPTION_WEIGHT);
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Map<String, Set<String>> grams = new HashMap<>();
+    private BKTree vocabulary = new BKTree();
+    private volatile boolean ready;
+
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            remove(product.getId());
+            int ordinal = free.isEmpty() ? documents.size() : free.first();
+            free.remove(ordinal);
+            Document document = new Document(
+                    product.getId(),
+                    ordinal,
+                    product.getName(),
+                    product.getPrice(),
+                    product.getStock(),
+                    frequencies(TextAnalyzer.tokenize(product.getName())),
+                    frequencies(TextAnalyzer.tokenize(product.getDescription()))
+            );
+            documents.put(document.id(), document);
+            if (ordinal >= ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, ordinals.length * 2);
+            }
+            ordinals[ordinal] = document;
+            name.add(document, document.nameTerms());
+            description.add(document, document.descriptionTerms());
+            terms(document).forEach(this::addTerm);
+            document.nameTerms().keySet().forEach(vocabulary::add);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Long id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    public SearchResult search(String query, Pageable pageable) {
+        return search(query, false, pageable);
+    }
+
+    public SearchResult search(String query, boolean fuzzy, Pageable pageable) {
+        return search(query, fuzzy, ProductFilter.NONE, pageable);
+    }
+
+    public SearchResult search(String query, boolean fuzzy, ProductFilter filter, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return search(query, fuzzy, filter, pageable.getSort());
+        }
+        return search(query, fuzzy, filter, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+    }
+
+    public SearchResult search(String query, boolean fuzzy, ProductFilter filter, Sort sort) {
+        return search(query, fuzzy, filter, sort, 0, Integer.MAX_VALUE);
+    }
+
+    private SearchResult search(String query, boolean fuzzy, ProductFilter filter, Sort sort, long offset, int size) {
+        lock.readLock().lock();
+        try {
+            Scores scores = match(new LinkedHashSet<>(TextAnalyzer.tokenize(query)), fuzzy);
+            Comparator<Match> comparator = comparator(sort);
+            int count = (int) Math.min(offset + size, scores.size());
+            Ranking ranking = count < scores.size() / 2 ? new Ranking(comparator, sort.isUnsorted(), count) : null;
+            List<Match> matches = new ArrayList<>(ranking == null ? scores.size() : 0);
+            int total = 0;
+            for (int i = 0; i < scores.size(); i++) {
+                Document document = ordinals[scores.ordinal(i)];
+                if (!filter.isEmpty() && !filter.matches(document.id(), document.price(), document.stock())) {
+                    continue;
+                }
+                total++;
+                if (ranking != null) {
+                    ranking.offer(document, scores.score(i));
+                }
+                else {
+                    matches.add(new Match(document, scores.score(i)));
+                }
+            }
+            if (ranking == null) {
+                matches.sort(comparator);
+            }
+            List<Match> top = ranking != null ? ranking.top() : matches;
+            int from = (int) Math.min(offset, total);
+            int to = (int) Math.min((long) from + size, total);
+            return new SearchResult(top.subList(from, to).stream().map(match -> match.document().id()).toList(), total);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Scores match(Collection<String> tokens, boolean fuzzy) {
+        Scores scores = null;
+        for (String token : tokens) {
+            Scores tokenScores = Scores.EMPTY;
+            for (Map.Entry<String, Double> expansion : (fuzzy ? expandFuzzy(token) : expand(token)).entrySet()) {
+                tokenScores = Scores.max(tokenScores, termScores(expansion.getKey(), expansion.getValue(), scores));
+            }
+            scores = scores == null ? tokenScores : Scores.intersect(scores, tokenScores);
+            if (scores.size() == 0) {
+                break;
+            }
+        }
+        return scores == null ? Scores.EMPTY : scores;
+    }
+
+    /**
+     * Scores of the documents containing the term in any field, multiplied by the weight of the expansion. Only
+     * the candidates are scored when there are any, since later tokens can not add documents.
+     */
+    private Scores termScores(String term, double weight, Scores candidates) {
+        return Scores.sum(name.score(term, documents.size(), weight, candidates), description.score(term, documents.size(), weight, candidates));
+    }
+
+    /**
+     * Dictionary terms containing the token, mapped to the weight of their matches.
+     */
+    private Map<String, Double> expand(String token) {
+        Map<String, Double> expansions = new HashMap<>();
+        Collection<String> candidates = token.length() < GRAM ? dictionary.keySet() : gramCandidates(token);
+        for (String term : candidates) {
+            if (term.contains(token)) {
+                expansions.put(term, term.equals(token) ? 1.0 : PARTIAL_MATCH_WEIGHT);
+            }
+        }
+        return expansions;
+    }
+
+    private Collection<String> gramCandidates(String token) {
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM <= token.length(); i++) {
+            Set<String> terms = grams.get(token.substring(i, i + GRAM));
+            if (terms == null) {
+                return List.of();
+            }
+            if (candidates == null || terms.size() < candidates.size()) {
+                candidates = terms;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Name terms within the allowed edit distance of the token, weighted 1 / (1 + distance).
+     */
+    private Map<String, Double> expandFuzzy(String token) {
+        Map<String, Double> expansions = new HashMap<>();
+        vocabulary.search(token, maxEditDistance(token)).forEach((term, distance) -> {
+            if (name.contains(term)) {
+                expansions.put(term, 1.0 / (1 + distance));
+            }
+        });
+        return expansions;
+    }
+
+    static int maxEditDistance(String token) {
+        if (token.length() < 3) {
+            return 0;
+        }
+        return token.length() < 6 ? 1 : 2;
+    }
+
+    private Comparator<Match> comparator(Sort sort) {
+        Comparator<Match> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Match> next = switch (order.getProperty()) {
+                case "id" -> Comparator.comparing(match -> match.document().id());
+                default -> switch (SortProperty.valueOf(order.getProperty().toUpperCase())) {
+                    case NAME  -> Comparator.comparing(match -> match.document().name(), String.CASE_INSENSITIVE_ORDER);
+                    case PRICE -> Comparator.comparing(match -> match.document().price());
+                    case STOCK -> Comparator.comparing(match -> match.document().stock());
+                };
+            };
+            comparator = comparator.thenComparing(order.isAscending() ? next : next.reversed());
+        }
+        return comparator
+                .thenComparing(Comparator.comparingDouble(Match::score).reversed())
+                .thenComparing(match -> match.document().id());
+    }
+
+    private void remove(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        ordinals[document.ordinal()] = null;
+        free.add(document.ordinal());
+        name.remove(document, document.nameTerms());
+        description.remove(document, document.descriptionTerms());
+        terms(document).forEach(this::removeTerm);
+        if (vocabulary.size() > 2 * name.termCount() + VOCABULARY_SLACK) {
+            BKTree rebuilt = new BKTree();
+            name.terms().forEach(rebuilt::add);
+            vocabulary = rebuilt;
+        }
+    }
+
+    private void addTerm(String term) {
+        if (dictionary.merge(term, 1, Integer::sum) == 1) {
+            for (int i = 0; i + GRAM <= term.length(); i++) {
+                grams.computeIfAbsent(term.substring(i, i + GRAM), gram -> new HashSet<>()).add(term);
+            }
+        }
+    }
+
+    private void removeTerm(String term) {
+        if (dictionary.merge(term, -1, Integer::sum) == 0) {
+            dictionary.remove(term);
+            for (int i = 0; i + GRAM <= term.length(); i++) {
+                String gram = term.substring(i, i + GRAM);
+                // A gram occurring twice in the term is gone after its first occurrence
+                Set<String> terms = grams.get(gram);
+                if (terms != null && terms.remove(term) && terms.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> terms(Document document) {
+        Set<String> terms = new HashSet<>(document.nameTerms().keySet());
+        terms.addAll(document.descriptionTerms().keySet());
+        return terms;
+    }
+
+    private static Map<String, Integer> frequencies(List<String> tokens) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+        return frequencies;
+    }
+
+    private record Document(Long id, int ordinal, String name, Double price, Integer stock, Map<String, Integer> nameTerms, Map<String, Integer> descriptionTerms) {
+
+    }
+
+    private record Match(Document document, double score) {
+
+    }
+
+    /**
+     * The first matches of a page near the top of a large result set, kept in a bounded heap instead of sorting
+     * every match. Matches are only created for candidates that make it into the heap; when ranking by score alone
+     * they are compared with the weakest kept match without creating one.
+     */
+    private static final class Ranking {
+
+        private final Comparator<Match> comparator;
+        private final boolean byScore;
+        private final int count;
+        private final PriorityQueue<Match> heap;
+
+        private Ranking(Comparator<Match> comparator, boolean byScore, int count) {
+            this.comparator = comparator;
+            this.byScore = byScore;
+            this.count = count;
+            this.heap = new PriorityQueue<>(count + 1, comparator.reversed());
+        }
+
+        private void offer(Document document, double score) {
+            if (heap.size() < count) {
+                heap.add(new Match(document, score));
+                return;
+            }
+            Match weakest = heap.peek();
+            if (weakest == null) {
+                return;
+            }
+            boolean better = byScore
+                    ? score > weakest.score() || score == weakest.score() && document.id() < weakest.document().id()
+                    : comparator.compare(new Match(document, score), weakest) < 0;
+            if (better) {
+                heap.poll();
+                heap.add(new Match(document, score));
+            }
+        }
+
+        private List<Match> top() {
+            List<Match> top = new ArrayList<>(heap);
+            top.sort(comparator);
+            return top;
+        }
+
+    }
+
+    /**
+     * Postings and length statistics of one indexed text field.
+     */
+    private static final class Field {
+
+        private final double weight;
+        private final Map<String, Postings> postings = new HashMap<>();
+        private final Map<Long, Integer> lengths = new HashMap<>();
+        private long totalLength;
+
+        private Field(double weight) {
+            this.weight = weight;
+        }
+
+        private void add(Document document, Map<String, Integer> terms) {
+            int length = terms.values().stream().mapToInt(Integer::intValue).sum();
+            lengths.put(document.id(), length);
+            totalLength += length;
+            terms.forEach((term, frequency) -> postings.computeIfAbsent(term, key -> new Postings()).add(document.ordinal(), frequency, length));
+        }
+
+        private void remove(Document document, Map<String, Integer> terms) {
+            Integer length = lengths.remove(document.id());
+            if (length != null) {
+                totalLength -= length;
+            }
+            terms.keySet().forEach(term -> {
+                Postings documents = postings.get(term);
+                documents.remove(document.ordinal());
+                if (documents.size == 0) {
+                    postings.remove(term);
+                }
+            });
+        }
+
+        private boolean contains(String term) {
+            return postings.containsKey(term);
+        }
+
+        private int termCount() {
+            return postings.size();
+        }
+
+        private Set<String> terms() {
+            return postings.keySet();
+        }
+
+        private int documentCount(String term) {
+            Postings documents = postings.get(term);
+            return documents == null ? 0 : documents.size;
+        }
+
+        private Scores score(String term, int documentCount, double multiplier, Scores candidates) {
+            Postings documents = postings.get(term);
+            if (documents == null) {
+                return Scores.EMPTY;
+            }
+            double idf = Math.log(1 + (documentCount - documents.size + 0.5) / (documents.size + 0.5));
+            double averageLength = lengths.isEmpty() ? 1 : Math.max(1, (double) totalLength / lengths.size());
+            double factor = multiplier * weight * idf * (K1 + 1);
+            double perLength = K1 * B / averageLength;
+            Scores scores = new Scores(candidates == null ? documents.size : Math.min(documents.size, candidates.size));
+            int candidate = 0;
+            for (int i = 0; i < documents.size; i++) {
+                if (candidates != null) {
+                    while (candidate < candidates.size && candidates.ordinals[candidate] < documents.ordinals[i]) {
+                        candidate++;
+                    }
+                    if (candidate == candidates.size) {
+                        break;
+                    }
+                    if (candidates.ordinals[candidate] != documents.ordinals[i]) {
+                        continue;
+                    }
+                }
+                int frequency = documents.frequencies[i];
+                scores.append(documents.ordinals[i], factor * frequency / (frequency + K1 * (1 - B) + perLength * documents.lengths[i]));
+            }
+            return scores;
+        }
+
+    }
+
+    /**
+     * Documents containing one term of a field in parallel arrays sorted by ordinal, so scoring reads them in
+     * sequence: their ordinals, the occurrences of the term and the length of the field.
+     */
+    private static final class Postings {
+
+        private int[] ordinals = new int[2];
+        private int[] frequencies = new int[2];
+        private int[] lengths = new int[2];
+        private int size;
+
+        private void add(int ordinal, int frequency, int length) {
+            int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position < 0) {
+                position = -position - 1;
+                if (size == ordinals.length) {
+                    ordinals = Arrays.copyOf(ordinals, size * 2);
+                    frequencies = Arrays.copyOf(frequencies, size * 2);
+                    lengths = Arrays.copyOf(lengths, size * 2);
+                }
+                System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+                System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+                System.arraycopy(lengths, position, lengths, position + 1, size - position);
+                size++;
+            }
+            ordinals[position] = ordinal;
+            frequencies[position] = frequency;
+            lengths[position] = length;
+        }
+
+        private void remove(int ordinal) {
+            int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position < 0) {
+                return;
+            }
+            size--;
+            System.arraycopy(ordinals, position + 1, ordinals, position, size - position);
+            System.arraycopy(frequencies, position + 1, frequencies, position, size - position);
+            System.arraycopy(lengths, position + 1, lengths, position, size - position);
+        }
+
+    }
+
+    /**
+     * Scores of documents in parallel arrays sorted by ordinal. Lists are combined by merging them.
+     */
+    private static final class Scores {
+
+        private static final Scores EMPTY = new Scores(0);
+
+        private final int[] ordinals;
+        private final double[] values;
+        private int size;
+
+        private Scores(int capacity) {
+            ordinals = new int[capacity];
+            values = new double[capacity];
+        }
+
+        /**
+         * Documents in either list, with their scores added up.
+         */
+        private static Scores sum(Scores first, Scores second) {
+            return union(first, second, false);
+        }
+
+        /**
+         * Documents in either list, with the higher of their scores.
+         */
+        private static Scores max(Scores first, Scores second) {
+            return union(first, second, true);
+        }
+
+        /**
+         * Documents in both lists, with their scores added up.
+         */
+        private static Scores intersect(Scores first, Scores second) {
+            Scores scores = new Scores(Math.min(first.size, second.size));
+            int i = 0;
+            int j = 0;
+            while (i < first.size && j < second.size) {
+                int compared = Integer.compare(first.ordinals[i], second.ordinals[j]);
+                if (compared == 0) {
+                    scores.append(first.ordinals[i], first.values[i++] + second.values[j++]);
+                }
+                else if (compared < 0) {
+                    i++;
+                }
+                else {
+                    j++;
+                }
+            }
+            return scores;
+        }
+
+        private static Scores union(Scores first, Scores second, boolean max) {
+            if (second.size == 0) {
+                return first;
+            }
+            if (first.size == 0) {
+                return second;
+            }
+            Scores scores = new Scores(first.size + second.size);
+            int i = 0;
+            int j = 0;
+            while (i < first.size || j < second.size) {
+                int compared = i == first.size ? 1 : j == second.size ? -1 : Integer.compare(first.ordinals[i], second.ordinals[j]);
+                if (compared == 0) {
+                    double score = max ? Math.max(first.values[i], second.values[j]) : first.values[i] + second.values[j];
+                    scores.append(first.ordinals[i++], score);
+                    j++;
+                }
+                else if (compared < 0) {
+                    scores.append(first.ordinals[i], first.values[i++]);
+                }
+                else {
+                    scores.append(second.ordinals[j], second.values[j++]);
+                }
+            }
+            return scores;
+        }
+
+        private void append(int ordinal, double score) {
+            ordinals[size] = ordinal;
+            values[size++] = score;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int ordinal(int index) {
+            return ordinals[index];
+        }
+
+        private double score(int index) {
+            return values[index];
+        }
+
+    }
+
+}
@@ -0,0 +1,275 @@
+package com.shoppy.search;
+
+import com.shoppy.model.Product;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix trie over product names used for autocomplete.
+ * <p>
+ * Every name is inserted once per word, starting at that word ("red running shoes", "running shoes", "shoes"),
+ * so typing any word of a name suggests it. Each node keeps the best {@link #TOP_K} products of its subtree,
+ * ordered by stock, which makes a lookup a walk down the prefix followed by a copy of that node's list. Children
+ * live in sorted parallel arrays and paths stop growing after {@link #MAX_DEPTH} characters; longer prefixes are
+ * answered by filtering the products stored at that depth.
+ */
+@Component
+public class ProductSuggestionIndex implements ProductIndex {
+
+    public static final int TOP_K = 10;
+    private static final int MAX_DEPTH = 24;
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingInt(Entry::stock).reversed()
+            .thenComparing(Entry::name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(Entry::id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Indexed> products = new HashMap<>();
+    private final Node root = new Node();
+    private volatile boolean ready;
+
+    @Override
+    public void productSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            remove(product.getId());
+            Indexed indexed = new Indexed(new Entry(product.getId(), product.getName(), product.getStock()), keys(product.getName()));
+            products.put(product.getId(), indexed);
+            indexed.keys().forEach(key -> insert(key, indexed.entry()));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productDeleted(Long id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int depth = Math.min(key.length(), MAX_DEPTH);
+            for (int i = 0; i < depth && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            if (key.length() <= MAX_DEPTH) {
+                return Arrays.stream(node.top).limit(limit).map(Entry::toSuggestion).toList();
+            }
+            return node.terminals.stream()
+                    .filter(terminal -> terminal.key().startsWith(key))
+                    .map(Terminal::entry)
+                    .distinct()
+                    .sorted(RANKING)
+                    .limit(limit)
+                    .map(Entry::toSuggestion)
+                    .toList();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String key, Entry entry) {
+        Node node = root;
+        node.offer(entry);
+        for (int i = 0; i < Math.min(key.length(), MAX_DEPTH); i++) {
+            node = node.childOrCreate(key.charAt(i));
+            node.offer(entry);
+        }
+        node.terminals.add(new Terminal(key, entry));
+    }
+
+    private void remove(Long id) {
+        Indexed indexed = products.remove(id);
+        if (indexed != null) {
+            indexed.keys().forEach(key -> remove(key, indexed.entry()));
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        int depth = Math.min(key.length(), MAX_DEPTH);
+        Node[] path = new Node[depth + 1];
+        path[0] = root;
+        for (int i = 0; i < depth; i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+        }
+        path[depth].terminals.removeIf(terminal -> terminal.entry().equals(entry) && terminal.key().equals(key));
+        for (int i = depth; i >= 0; i--) {
+            Node node = path[i];
+            if (i > 0 && node.isEmpty()) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+            }
+            else if (node.contains(entry)) {
+                node.recompute();
+            }
+        }
+    }
+
+    static List<String> keys(String name) {
+        List<String> tokens = TextAnalyzer.tokenize(name);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            keys.add(String.join(" ", tokens.subList(i, tokens.size())));
+        }
+        return keys;
+    }
+
+    static String normalize(String prefix) {
+        String key = String.join(" ", TextAnalyzer.tokenize(prefix));
+        return !key.isEmpty() && Character.isWhitespace(prefix.charAt(prefix.length() - 1)) ? key + ' ' : key;
+    }
+
+    public record Suggestion(Long id, String name) {
+
+    }
+
+    private record Entry(Long id, String name, int stock) {
+
+        private Suggestion toSuggestion() {
+            return new Suggestion(id, name);
+        }
+
+    }
+
+    private record Terminal(String key, Entry entry) {
+
+    }
+
+    private record Indexed(Entry entry, List<String> keys) {
+
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Entry[] NO_ENTRIES = new Entry[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private Entry[] top = NO_ENTRIES;
+        private final List<Terminal> terminals = new ArrayList<>(0);
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int position = -index - 1;
+            Node child = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            newKeys[position] = key;
+            newChildren[position] = child;
+            System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+            System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        private void removeChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                return;
+            }
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys;
+            children = newChildren;
+            recompute();
+        }
+
+        private boolean isEmpty() {
+            return children.length == 0 && terminals.isEmpty();
+        }
+
+        private boolean contains(Entry entry) {
+            for (Entry candidate : top) {
+                if (candidate.equals(entry)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void offer(Entry entry) {
+            if (contains(entry)) {
+                return;
+            }
+            if (top.length == TOP_K && RANKING.compare(entry, top[TOP_K - 1]) >= 0) {
+                return;
+            }
+            int position = 0;
+            while (position < top.length && RANKING.compare(top[position], entry) < 0) {
+                position++;
+            }
+            Entry[] newTop = new Entry[Math.min(top.length + 1, TOP_K)];
+            System.arraycopy(top, 0, newTop, 0, position);
+            newTop[position] = entry;
+            System.arraycopy(top, position, newTop, position + 1, newTop.length - position - 1);
+            top = newTop;
+        }
+
+        /**
+         * Rebuilds this node's best products from the products ending here and the best products of every child.
+         */
+        private void recompute() {
+            Map<Long, Entry> candidates = new LinkedHashMap<>();
+            terminals.forEach(terminal -> candidates.put(terminal.entry().id(), terminal.entry()));
+            for (Node child : children) {
+                for (Entry entry : child.top) {
+                    candidates.put(entry.id(), entry);
+                }
+            }
+            top = candidates.values().stream().sorted(RANKING).limit(TOP_K).toArray(Entry[]::new);
+        }
+
+    }
+
+}
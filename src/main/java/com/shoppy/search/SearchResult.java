@@ -0,0 +1,10 @@
+package com.shoppy.search;
+
+import java.util.List;
+
+/**
+ * Ids of the requested page of matches, in result order, and the number of matches across all pages.
+ */
+public record SearchResult(List<Long> ids, long total) {
+
+}
@@ -1,67 +1,86 @@
 package com.shoppy.service;
 
+import com.shoppy.cart.CartStore;
+import com.shoppy.enumeration.CartOperationType;
 import com.shoppy.enumeration.DeliveryStatus;
 import com.shoppy.exception.APIException;
+import com.shoppy.inventory.StockReservations;
 import com.shoppy.model.Address;
 import com.shoppy.model.CardPaymentMethod;
 import com.shoppy.model.Checkout;
 import com.shoppy.model.Customer;
 import com.shoppy.model.Item;
 import com.shoppy.model.Order;
-import com.shoppy.repository.CheckoutRepository;
+import com.shoppy.model.Product;
 import com.shoppy.utils.QuickCode;
+import com.shoppy.utils.TransactionUtils;
 
 import lombok.AllArgsConstructor;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
 public class CheckoutService {
 
-    private final CheckoutRepository checkoutRepository;
+    public static final int MAX_CART_OPERATIONS = 100;
+
+    private final CartStore cartStore;
     private final CustomerService customerService;
+    private final ProductService productService;
+    private final StockReservations reservations;
 
     public Checkout getCheckout(Principal principal) {
-        Checkout checkout = customerService.getCustomerByUsernameOrCreate(principal).getCurrentCheckout();
-        return QuickCode.getNotNull(checkout, "checkout is not present", HttpStatus.NOT_FOUND);
+        return QuickCode.getNotNull(cartStore.find(principal), "checkout is not present", HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * The cart for the read endpoints. Unlike {@link #getCheckout} it is not meant to be changed and saved.
+     */
+    public Checkout readCheckout(Principal principal) {
+        return QuickCode.getNotNull(cartStore.read(principal), "checkout is not present", HttpStatus.NOT_FOUND);
     }
 
     public Checkout getCheckoutOrCreate(Principal principal) {
-        Customer customer = customerService.getCustomerByUsernameOrCreate(principal);
-        if (customer.getCurrentCheckout() == null) {
-            customer.setCurrentCheckout(checkoutRepository.save(new Checkout()));
-        }
-        return customer.getCurrentCheckout();
+        return cartStore.findOrCreate(principal);
     }
 
     public void addItemToCheckout(Principal principal, Item item) {
         checkStock(item);
         Checkout checkout = getCheckoutOrCreate(principal);
         checkout.addItem(item);
-        checkoutRepository.save(checkout);
+        reserveStock(checkout, item);
+        cartStore.save(principal, checkout);
     }
 
     public void updateItemInCheckout(Principal principal, Item item) {
         checkStock(item);
         Checkout checkout = getCheckout(principal);
         checkout.updateItem(item);
-        checkoutRepository.save(checkout);
+        reserveStock(checkout, item);
+        cartStore.save(principal, checkout);
     }
 
     public void removeProductFromCheckout(Principal principal, Long productId) {
         Checkout checkout = getCheckout(principal);
         if (checkout.deleteItemByProductId(productId)) {
+            releaseStock(checkout, List.of(productId));
             if (checkout.getItems().isEmpty()) {
-                Customer customer = customerService.getCustomerByUsernameOrCreate(principal);
-                customer.setCurrentCheckout(null);
-                deleteCheckout(checkout);
+                cartStore.delete(principal, checkout);
             }
             else {
-                checkoutRepository.save(checkout);
+                cartStore.save(principal, checkout);
             }
         }
         else {
@@ -69,31 +88,111 @@ public class CheckoutService {
         }
     }
 
+    /**
+     * An operation that fails is reported in its result and leaves the others in place.
+     */
+    @Transactional
+    public List<CartLineResult> updateItems(Principal principal, List<CartOperation> operations) {
+        if (operations.isEmpty()) {
+            throw new APIException("operations must not be empty", HttpStatus.BAD_REQUEST);
+        }
+        if (operations.size() > MAX_CART_OPERATIONS) {
+            throw new APIException("At most " + MAX_CART_OPERATIONS + " operations can be applied at once", HttpStatus.BAD_REQUEST);
+        }
+        Map<Long, Product> products = productService.getProductsById(operations.stream()
+                .filter(operation -> operation.type() != CartOperationType.REMOVE)
+                .map(CartOperation::productId)
+                .collect(Collectors.toSet()));
+        boolean adding = operations.stream().anyMatch(operation -> operation.type() == CartOperationType.ADD);
+        Checkout checkout = adding ? getCheckoutOrCreate(principal) : getCheckout(principal);
+        restoreStockOnRollback(checkout, operations.stream().map(CartOperation::productId).distinct().toList());
+        List<CartLineResult> results = new ArrayList<>(operations.size());
+        List<Long> removed = new ArrayList<>();
+        for (CartOperation operation : operations) {
+            try {
+                HttpStatus status = apply(checkout, operation, products.get(operation.productId()));
+                if (operation.type() == CartOperationType.REMOVE) {
+                    removed.add(operation.productId());
+                }
+                results.add(new CartLineResult(operation.productId(), operation.type(), status.value(), null));
+            }
+            catch (APIException exception) {
+                results.add(new CartLineResult(operation.productId(), operation.type(), exception.getStatus().value(), exception.getMessage()));
+            }
+        }
+        releaseStock(checkout, removed);
+        if (checkout.getItems().isEmpty()) {
+            cartStore.delete(principal, checkout);
+        }
+        else {
+            cartStore.save(principal, checkout);
+        }
+        return results;
+    }
+
+    /**
+     * Read committed lets MySQL release stock stripes whose conditional update failed.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public void processOrder(Principal principal) {
         Customer customer = customerService.getCustomerByUsernameOrCreate(principal);
-        // Add order
-        customer.addOrder(createOrder(getCheckout(principal)));
-        customerService.saveOrUpdate(customer);
+        Checkout checkout = QuickCode.getNotNull(cartStore.materialize(principal, customer), "checkout is not present", HttpStatus.NOT_FOUND);
+        Order order = createOrder(checkout);
+        // Renews the reservations, failing when one of them expired and its stock went to another checkout
+        checkout.getItems().forEach(item -> reserveStock(checkout, item));
+        productService.decrementStock(checkout.getItems());
+        List<Long> productIds = checkout.getItems().stream().map(item -> item.getProduct().getId()).toList();
 
-        // Remove current order
-        customer.setCurrentCheckout(null);
-        customerService.saveOrUpdate(customer);
+        customer.addOrder(order);
+        cartStore.checkedOut(principal, customer, checkout);
+        // The holds stay in place when the order rolls back, so the cart can be ordered again
+        TransactionUtils.afterCommit(() -> releaseStock(checkout, productIds));
     }
 
     public void assignDeliveryAddress(Principal principal, Address address) {
         Checkout checkout = getCheckout(principal);
         checkout.setAddress(address);
-        checkoutRepository.save(checkout);
+        cartStore.save(principal, checkout);
     }
 
     public void assignPaymentMethod(Principal principal, CardPaymentMethod address) {
         Checkout checkout = getCheckout(principal);
         checkout.setPaymentMethod(address);
-        checkoutRepository.save(checkout);
+        cartStore.save(principal, checkout);
     }
 
-    public void deleteCheckout(Checkout checkout) {
-        checkoutRepository.delete(checkout);
+    /**
+     * The quantity is reserved before the cart changes, so a failed reservation leaves the cart as it was.
+     */
+    private HttpStatus apply(Checkout checkout, CartOperation operation, Product product) {
+        if (operation.type() == CartOperationType.REMOVE) {
+            if (!checkout.deleteItemByProductId(operation.productId())) {
+                throw new APIException("product not found", HttpStatus.NOT_FOUND);
+            }
+            return HttpStatus.NO_CONTENT;
+        }
+        if (product == null) {
+            throw new APIException("product not found", HttpStatus.NOT_FOUND);
+        }
+        if (operation.quantity() == null) {
+            throw new APIException("quantity must not be null", HttpStatus.BAD_REQUEST);
+        }
+        boolean present = checkout.containsProduct(product.getId());
+        if (operation.type() == CartOperationType.ADD && present) {
+            throw new APIException("product already existing", HttpStatus.CONFLICT);
+        }
+        if (operation.type() == CartOperationType.UPDATE && !present) {
+            throw new APIException("product not found", HttpStatus.NOT_FOUND);
+        }
+        Item item = new Item(null, product, operation.quantity());
+        checkStock(item);
+        reserveStock(checkout, item);
+        if (present) {
+            checkout.updateItem(item);
+            return HttpStatus.OK;
+        }
+        checkout.addItem(item);
+        return HttpStatus.CREATED;
     }
 
     private void checkStock(Item item) {
@@ -102,6 +201,36 @@ public class CheckoutService {
         }
     }
 
+    private void reserveStock(Checkout checkout, Item item) {
+        if (reservations.isEnabled()) {
+            reservations.reserve(checkout.getId(), item.getProduct(), item.getQuantity());
+        }
+    }
+
+    private void releaseStock(Checkout checkout, List<Long> productIds) {
+        if (reservations.isEnabled()) {
+            reservations.release(checkout.getId(), productIds);
+        }
+    }
+
+    /**
+     * A cart that was not saved must not keep the stock its operations reserved.
+     */
+    private void restoreStockOnRollback(Checkout checkout, List<Long> productIds) {
+        if (!reservations.isEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Map<Long, Integer> held = reservations.held(checkout.getId(), productIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    reservations.restore(checkout.getId(), productIds, held);
+                }
+            }
+        });
+    }
+
     private Order createOrder(Checkout checkout) {
         if (checkout.getAddress() == null) {
             throw new APIException("Address not provided", HttpStatus.BAD_REQUEST);
@@ -137,4 +266,12 @@ public class CheckoutService {
         return order;
     }
 
+    public record CartOperation(CartOperationType type, Long productId, Integer quantity) {
+
+    }
+
+    public record CartLineResult(Long productId, CartOperationType operation, int status, String message) {
+
+    }
+
 }
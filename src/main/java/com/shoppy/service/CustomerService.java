@@ -11,6 +11,7 @@ import org.keycloak.representations.AccessToken;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
 import java.util.Collection;
@@ -22,31 +23,48 @@ public class CustomerService {
 
     private final CustomerRepository customerRepository;
 
+    @Transactional(readOnly = true)
     public Collection<Customer> getAllCustomers() {
         return customerRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
     public Customer getCostumerById(UUID id) {
         return customerRepository.findById(id).orElseThrow(() -> new APIException("Customer not found", HttpStatus.NOT_FOUND));
     }
 
+    @Transactional(readOnly = true)
     public Customer getCustomerByUsername(String username) {
         return customerRepository.findCustomerByUsername(username).orElseThrow(() -> new APIException("Customer not found", HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * Runs in a read-write transaction, so it reads from the primary and finds customers that did not reach the
+     * replica yet instead of creating them twice.
+     */
+    @Transactional
     public Customer getCustomerByUsernameOrCreate(Principal principal) {
-        AccessToken token = ((KeycloakAuthenticationToken) principal).getAccount().getKeycloakSecurityContext().getToken();
+        AccessToken token = getToken(principal);
         return customerRepository.findCustomerByUsername(token.getPreferredUsername()).orElseGet(() -> saveOrUpdate(createCustomer(token)));
     }
 
+    public String getUsername(Principal principal) {
+        return getToken(principal).getPreferredUsername();
+    }
+
     public Customer saveOrUpdate(Customer customer) {
         return customerRepository.save(customer);
     }
 
+    @Transactional
     public void deleteCustomer(String username) {
         customerRepository.delete(getCustomerByUsername(username));
     }
 
+    private AccessToken getToken(Principal principal) {
+        return ((KeycloakAuthenticationToken) principal).getAccount().getKeycloakSecurityContext().getToken();
+    }
+
     private Customer createCustomer(AccessToken accessToken) {
         return Customer.builder()
                 .username(accessToken.getPreferredUsername())
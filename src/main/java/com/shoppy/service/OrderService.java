@@ -7,8 +7,11 @@ import com.shoppy.repository.OrderRepository;
 
 import lombok.AllArgsConstructor;
 
+import org.hibernate.Hibernate;
+
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
 import java.util.List;
@@ -25,16 +28,25 @@ public class OrderService {
         return customerService.getCustomerByUsernameOrCreate(principal).getOrders();
     }
 
+    /**
+     * Order history of the customer, read from the replica when there is one. The orders are loaded before the
+     * transaction ends, as they would otherwise be fetched lazily from the primary while rendering the response.
+     */
+    @Transactional(readOnly = true)
     public List<Order> getOrders(String username) {
-        return customerService.getCustomerByUsername(username).getOrders();
+        List<Order> orders = customerService.getCustomerByUsername(username).getOrders();
+        Hibernate.initialize(orders);
+        return orders;
     }
 
+    @Transactional
     public void updateOrder(UUID id, Order order) {
         Customer customer = customerService.getCostumerById(getCustomerId(id));
         customer.updateOrder(id, order);
         customerService.saveOrUpdate(customer);
     }
 
+    @Transactional
     public void removeOrder(UUID id) {
         Customer customer = customerService.getCostumerById(getCustomerId(id));
         customer.removeOrder(id);
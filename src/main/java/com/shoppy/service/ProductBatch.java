@@ -0,0 +1,21 @@
+package com.shoppy.service;
+
+import com.shoppy.model.Product;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductBatch {
+
+    /**
+     * Products found, in the order their ids were requested.
+     */
+    private final List<Product> products;
+
+    private final List<Long> missing;
+
+}
@@ -0,0 +1,136 @@
+package com.shoppy.service;
+
+import com.shoppy.model.ProductChange;
+import com.shoppy.repository.ProductChangeRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned log of product writes for consumers that keep their own copy of the catalog. Writes inside a
+ * transaction are collected, one entry per product, and inserted without a version just before it commits. Once
+ * per interval a relay gives the committed entries the next versions in a transaction of its own, so versions become
+ * visible in the order they were taken: a reader that has seen a version has seen every lower one, and moving past
+ * it never skips an entry. Only the relay locks the sequence; product writes and orders never wait for each other.
+ */
+@Component
+@Slf4j
+public class ProductChangeFeed {
+
+    private static final int RELAY_BATCH_SIZE = 500;
+
+    private final ProductChangeRepository changeRepository;
+    private final Duration relayInterval;
+    private ScheduledExecutorService relay;
+
+    public ProductChangeFeed(
+            ProductChangeRepository changeRepository,
+            @Value("${shoppy.products.changes.relay-interval:200ms}") Duration relayInterval
+    ) {
+        this.changeRepository = changeRepository;
+        this.relayInterval = relayInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        relay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relay.scheduleWithFixedDelay(this::relay, relayInterval.toMillis(), relayInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        relay.shutdownNow();
+    }
+
+    public void saved(Long productId) {
+        record(productId, false);
+    }
+
+    public void deleted(Long productId) {
+        record(productId, true);
+    }
+
+    /**
+     * Committed entries after the given version, oldest first.
+     */
+    public List<ProductChange> read(long since, int limit) {
+        return changeRepository.findChanges(since, Pageable.ofSize(limit));
+    }
+
+    /**
+     * Versions the entries committed since the last run.
+     */
+    public void relay() {
+        try {
+            while (changeRepository.assignVersions(RELAY_BATCH_SIZE) == RELAY_BATCH_SIZE) {
+                // More entries are waiting
+            }
+        }
+        catch (RuntimeException exception) {
+            log.warn("Could not relay product changes", exception);
+        }
+    }
+
+    private void record(Long productId, boolean deleted) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            pending().put(productId, deleted);
+        }
+        else {
+            write(Map.of(productId, deleted));
+        }
+    }
+
+    private void write(Map<Long, Boolean> changes) {
+        LocalDateTime now = LocalDateTime.now();
+        changeRepository.append(changes.entrySet().stream()
+                .map(change -> new ProductChange(null, null, change.getKey(), change.getValue(), now))
+                .toList());
+    }
+
+    /**
+     * Products written in the current transaction, mapped to whether the last write deleted them.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Boolean> pending() {
+        Map<Long, Boolean> pending = (Map<Long, Boolean>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, Boolean> changes = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(changes);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(ProductChangeFeed.this);
+                }
+            });
+            pending = changes;
+        }
+        return pending;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.shoppy.service;
+
+import com.shoppy.model.Product;
+
+/**
+ * Notified by {@link ProductService} after a product has been written.
+ */
+public interface ProductChangeListener {
+
+    void productSaved(Product product);
+
+    void productDeleted(Long id);
+
+}
@@ -0,0 +1,30 @@
+package com.shoppy.service;
+
+import com.shoppy.model.Product;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductChanges {
+
+    /**
+     * Changes in version order. Products are given in their current state; deleted ones only by id.
+     */
+    private final List<Change> changes;
+
+    /**
+     * Version to ask for changes since next time.
+     */
+    private final long next;
+
+    private final boolean hasMore;
+
+    public record Change(long version, Long productId, boolean deleted, Product product) {
+
+    }
+
+}
@@ -1,62 +1,510 @@
 package com.shoppy.service;
 
+import com.shoppy.cache.CatalogVersion;
+import com.shoppy.cache.ProductCache;
+import com.shoppy.cache.ProductCountCache;
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.datasource.ReplicaRoutingDataSource;
+import com.shoppy.enumeration.MovementType;
 import com.shoppy.exception.APIException;
+import com.shoppy.inventory.InventoryLedger;
+import com.shoppy.inventory.StockReservations;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Item;
 import com.shoppy.model.Product;
+import com.shoppy.model.ProductChange;
+import com.shoppy.pagination.KeysetCursor;
+import com.shoppy.pagination.KeysetPage;
 import com.shoppy.repository.ProductRepository;
-
+import com.shoppy.repository.ProductSpecifications;
+import com.shoppy.search.CatalogSnapshotIndex;
+import com.shoppy.search.ProductFacetIndex;
+import com.shoppy.search.ProductFacets;
+import com.shoppy.search.ProductFilter;
+import com.shoppy.search.ProductSearchIndex;
+import com.shoppy.search.ProductSuggestionIndex;
+import com.shoppy.search.SearchResult;
 import com.shoppy.utils.QuickCode;
+import com.shoppy.utils.TransactionUtils;
+
 import lombok.AllArgsConstructor;
 
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
 public class ProductService {
 
+    public static final int MAX_LOOKUP_SIZE = 100;
+    public static final int MAX_CHANGES_SIZE = 1000;
+    private static final int EXPORT_BATCH_SIZE = 500;
+
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final ProductResponseCache responseCache;
+    private final ProductCountCache countCache;
+    private final CatalogVersion catalogVersion;
+    private final ProductSearchIndex searchIndex;
+    private final ProductSuggestionIndex suggestionIndex;
+    private final ProductFacetIndex facetIndex;
+    private final CatalogSnapshotIndex catalogSnapshot;
+    private final StockReservations reservations;
+    private final StockStripes stockStripes;
+    private final InventoryLedger ledger;
+    private final ProductChangeFeed changeFeed;
+    private final List<ProductChangeListener> listeners;
+    private final PlatformTransactionManager transactionManager;
+    private final AtomicBoolean indexLoading = new AtomicBoolean();
+    private final Set<Long> publishedDuringLoad = new HashSet<>();
 
-    public List<Product> getProducts(String query, Sort sort, Pageable pageable) {
-        if (pageable == null) {
-            pageable = PageRequest.of(0, Integer.MAX_VALUE, sort);
-        }
-        if (query != null) {
-            if (query.isBlank()) {
-                throw new APIException("Query value is empty");
+    /**
+     * Until the search index is loaded, queries fall back to a substring match on the name.
+     */
+    @Transactional(readOnly = true)
+    public Slice<Product> getProducts(String query, boolean fuzzy, ProductFilter filter, Pageable pageable) {
+        return findProducts(query, fuzzy, filter, pageable);
+    }
+
+    /**
+     * Totals are cached for a short while, so the value is approximate.
+     */
+    @Transactional(readOnly = true)
+    public long getProductCount(String query, boolean fuzzy, ProductFilter filter) {
+        checkQuery(query);
+        return countCache.get(new CountKey(query, fuzzy, filter), () -> {
+            if (query != null && searchIndex.isReady()) {
+                return searchIndex.search(query, fuzzy, filter, Pageable.ofSize(1)).total();
+            }
+            if (query == null && facetIndex.isReady()) {
+                return facetIndex.count(null, filter).total();
             }
-            return productRepository.findProductsByNameContainingIgnoreCase(query, pageable);
+            return productRepository.count(ProductSpecifications.and(ProductSpecifications.nameContainsIgnoreCase(query), ProductSpecifications.matching(filter)));
+        });
+    }
+
+    public ProductFacets getFacets(String query, boolean fuzzy, ProductFilter filter) {
+        checkQuery(query);
+        if (!facetIndex.isReady() || (query != null && !searchIndex.isReady())) {
+            throw new APIException("Facet counts are not available yet", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        List<Long> ids = query == null ? null : searchIndex.search(query, fuzzy, ProductFilter.NONE, Sort.unsorted()).ids();
+        return facetIndex.count(ids, filter);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportProducts(String query, boolean fuzzy, ProductFilter filter, Sort sort, Consumer<Product> consumer) {
+        streamProducts(query, fuzzy, filter, sort, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public KeysetPage<Product> getProductsAfter(Sort sort, ProductFilter filter, String cursor, int size) {
+        Sort seekSort = KeysetCursor.withTiebreaker(sort);
+        KeysetCursor after = cursor.isEmpty() ? null : KeysetCursor.decode(cursor, seekSort);
+        List<Product> products;
+        if (isSnapshotServed(null, filter, seekSort)) {
+            products = catalogSnapshot.after(seekSort, after, size + 1);
         }
         else {
-            return productRepository.findAll(pageable).getContent();
+            Specification<Product> specification = ProductSpecifications.and(ProductSpecifications.matching(filter), after == null ? null : after.seek());
+            products = productRepository.findAll(specification, seekSort, size + 1);
         }
+        if (products.size() <= size) {
+            return new KeysetPage<>(products, null);
+        }
+        List<Product> content = products.subList(0, size);
+        return new KeysetPage<>(content, KeysetCursor.of(seekSort, content.get(size - 1)).encode());
+    }
+
+    public boolean hasReservations() {
+        return reservations.isEnabled() && !reservations.reservedProducts().isEmpty();
+    }
+
+    /**
+     * The filter with the products whose whole stock is reserved counted as out of stock.
+     */
+    public ProductFilter withReservations(ProductFilter filter) {
+        Set<Long> soldOut = getProductsById(reservations.reservedProducts()).values().stream()
+                .filter(product -> product.getStock() > 0 && reservations.available(product).getStock() == 0)
+                .map(Product::getId)
+                .collect(Collectors.toSet());
+        return filter.withSoldOut(soldOut);
+    }
+
+    public List<Product> withReservations(List<Product> products) {
+        return products.stream().map(reservations::available).toList();
     }
 
+    public Product withReservations(Product product) {
+        return reservations.available(product);
+    }
+
+    public List<ProductSuggestionIndex.Suggestion> getSuggestions(String prefix, int limit) {
+        if (prefix.isBlank()) {
+            throw new APIException("Prefix value is empty", HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > ProductSuggestionIndex.TOP_K) {
+            throw new APIException("Limit must be between 1 and " + ProductSuggestionIndex.TOP_K, HttpStatus.BAD_REQUEST);
+        }
+        return suggestionIndex.suggest(prefix, limit);
+    }
+
+    @Transactional
     public void addProduct(Product product) {
-        productRepository.save(product);
+        Product saved = productRepository.save(product);
+        ledger.record(MovementType.RECEIPT, saved.getId(), saved.getStock());
+        changeFeed.saved(saved.getId());
+        TransactionUtils.afterCommit(() -> publish(List.of(saved.getId())));
+    }
+
+    /**
+     * Products are decremented in id order, so concurrent orders can not deadlock. A product found without stripes is
+     * looked at again once the update holds its row, since stripes are only seeded under that lock.
+     */
+    @Transactional
+    public void decrementStock(List<Item> items) {
+        List<Long> products = new ArrayList<>(items.size());
+        List<Long> striped = new ArrayList<>();
+        for (Item item : items.stream().sorted(Comparator.comparing(item -> item.getProduct().getId())).toList()) {
+            Product product = item.getProduct();
+            StockStripes.Outcome outcome = stockStripes.decrement(product.getId(), item.getQuantity());
+            if (outcome == StockStripes.Outcome.NOT_STRIPED) {
+                boolean decremented = productRepository.decrementStock(product, item.getQuantity());
+                if (stockStripes.lockTotal(product.getId()) != null) {
+                    outcome = stockStripes.decrement(product.getId(), item.getQuantity());
+                }
+                else if (!decremented) {
+                    outcome = StockStripes.Outcome.SHORT;
+                }
+            }
+            if (outcome == StockStripes.Outcome.NOT_STRIPED) {
+                products.add(product.getId());
+            }
+            else if (outcome == StockStripes.Outcome.DECREMENTED) {
+                striped.add(product.getId());
+            }
+            else {
+                throw new APIException("not enough products in stock", HttpStatus.CONFLICT);
+            }
+            ledger.record(MovementType.SALE, product.getId(), -item.getQuantity());
+        }
+        products.forEach(changeFeed::saved);
+        TransactionUtils.afterCommit(() -> {
+            publish(products);
+            stockStripes.markChanged(striped);
+        });
+    }
+
+    /**
+     * For products whose stock was changed behind the service's back.
+     */
+    @Transactional
+    public void stockChanged(Collection<Long> ids) {
+        ids.forEach(changeFeed::saved);
+        TransactionUtils.afterCommit(() -> publish(ids));
+    }
+
+    @Transactional
+    public void stripeStock(Long id, int count) {
+        if (count < 1 || count > StockStripes.MAX_STRIPES) {
+            throw new APIException("Stripe count must be between 1 and " + StockStripes.MAX_STRIPES, HttpStatus.BAD_REQUEST);
+        }
+        Product product = QuickCode.getNotNull(productRepository.findByIdForUpdate(id).orElse(null), "product not found", HttpStatus.NOT_FOUND);
+        Integer total = stockStripes.lockTotal(id);
+        if (total != null) {
+            product.setStock(total);
+        }
+        stockStripes.stripe(product, count);
+        changeFeed.saved(id);
+        TransactionUtils.afterCommit(() -> publish(List.of(id)));
+    }
+
+    @Transactional
+    public void recordMovement(Long id, MovementType type, int quantity) {
+        if (type == MovementType.SALE) {
+            throw new APIException("Sales are recorded by orders", HttpStatus.BAD_REQUEST);
+        }
+        if (type == MovementType.CLOSING) {
+            throw new APIException("Closings are recorded by deleting the product", HttpStatus.BAD_REQUEST);
+        }
+        if (quantity == 0 || (type == MovementType.RECEIPT && quantity < 0)) {
+            throw new APIException("Quantity must be positive for a receipt and not zero for an adjustment", HttpStatus.BAD_REQUEST);
+        }
+        Product product = QuickCode.getNotNull(productRepository.findByIdForUpdate(id).orElse(null), "product not found", HttpStatus.NOT_FOUND);
+        Integer total = stockStripes.lockTotal(id);
+        int stock = (total != null ? total : product.getStock()) + quantity;
+        if (stock < 0) {
+            throw new APIException("not enough products in stock", HttpStatus.CONFLICT);
+        }
+        product.setStock(stock);
+        if (total != null) {
+            stockStripes.stripe(product, stockStripes.count(id));
+        }
+        ledger.record(type, id, quantity);
+        changeFeed.saved(id);
+        TransactionUtils.afterCommit(() -> publish(List.of(id)));
+    }
+
+    public InventoryLedger.InventoryLevel getInventoryLevel(Long id) {
+        checkProductExistence(id);
+        return ledger.level(id);
+    }
+
+    public InventoryLedger.RebuildResult rebuildInventory() {
+        return ledger.rebuild();
+    }
+
+    public ProductChanges getChanges(long since, int limit) {
+        if (since < 0) {
+            throw new APIException("'since' must not be negative", HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > MAX_CHANGES_SIZE) {
+            throw new APIException("Limit must be between 1 and " + MAX_CHANGES_SIZE, HttpStatus.BAD_REQUEST);
+        }
+        List<ProductChange> entries = changeFeed.read(since, limit + 1);
+        boolean hasMore = entries.size() > limit;
+        if (hasMore) {
+            entries = entries.subList(0, limit);
+        }
+        Set<Long> saved = entries.stream().filter(entry -> !entry.isDeleted()).map(ProductChange::getProductId).collect(Collectors.toSet());
+        Map<Long, Product> products = productRepository.findAllById(saved).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<ProductChanges.Change> changes = entries.stream().map(entry -> {
+            Product product = entry.isDeleted() ? null : products.get(entry.getProductId());
+            return new ProductChanges.Change(entry.getVersion(), entry.getProductId(), product == null, product);
+        }).toList();
+        return new ProductChanges(changes, entries.isEmpty() ? since : entries.get(entries.size() - 1).getVersion(), hasMore);
     }
 
+    /**
+     * Cache misses are read from the primary, so a lagging replica can not put back a row a write has just evicted.
+     */
     public Product getProductById(Long id) {
-        return productRepository.findById(id).orElse(null);
+        return productCache.get(id, key -> ReplicaRoutingDataSource.onPrimary(() -> productRepository.findById(key).orElse(null)));
+    }
+
+    @Transactional(readOnly = true)
+    public ProductBatch getProductsByIds(List<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        if (requested.isEmpty()) {
+            throw new APIException("'ids' field is empty", HttpStatus.BAD_REQUEST);
+        }
+        if (requested.size() > MAX_LOOKUP_SIZE) {
+            throw new APIException("At most " + MAX_LOOKUP_SIZE + " products can be requested at once", HttpStatus.BAD_REQUEST);
+        }
+        Map<Long, Product> found = getProductsById(requested);
+        List<Product> products = new ArrayList<>(requested.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+            else {
+                missing.add(id);
+            }
+        }
+        return new ProductBatch(products, missing);
+    }
+
+    /**
+     * Stock is not net of reservations.
+     */
+    public Map<Long, Product> getProductsById(Collection<Long> ids) {
+        return productCache.getAll(ids, missing -> ReplicaRoutingDataSource.onPrimary(() -> productRepository.findAllById(missing)).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity())));
+    }
+
+    /**
+     * Stock is net of reservations.
+     */
+    public ProductResponseCache.SerializedProduct getSerializedProduct(Long id) {
+        return QuickCode.getNotNull(responseCache.get(id, key -> {
+            Product product = getProductById(key);
+            return product == null ? null : reservations.available(product);
+        }), "product not found", HttpStatus.NOT_FOUND);
     }
 
     public Product getProductNotNull(Long id) {
         return QuickCode.getNotNull(getProductById(id), "product not found", HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * The product is locked while the stock difference is recorded as an adjustment, so concurrent sales are not lost
+     * from the ledger.
+     */
+    @Transactional
     public void updateProduct(Long id, Product product) {
-        checkProductExistence(id);
+        Product current = QuickCode.getNotNull(productRepository.findByIdForUpdate(id).orElse(null), "product not found", HttpStatus.NOT_FOUND);
+        Integer total = stockStripes.lockTotal(id);
+        ledger.record(MovementType.ADJUSTMENT, id, product.getStock() - (total != null ? total : current.getStock()));
         product.setId(id);
-        productRepository.save(product);
+        Product saved = productRepository.save(product);
+        changeFeed.saved(id);
+        int stripes = stockStripes.count(id);
+        if (stripes > 0) {
+            stockStripes.stripe(saved, stripes);
+        }
+        TransactionUtils.afterCommit(() -> publish(List.of(id)));
     }
 
+    /**
+     * Closes the product's stock in the ledger, with the product locked so no sale slips in between.
+     */
+    @Transactional
     public void deleteProduct(Long id) {
-        checkProductExistence(id);
-        productRepository.deleteById(id);
+        Product product = QuickCode.getNotNull(productRepository.findByIdForUpdate(id).orElse(null), "product not found", HttpStatus.NOT_FOUND);
+        Integer total = stockStripes.lockTotal(id);
+        ledger.close(id, total != null ? total : product.getStock());
+        stockStripes.remove(id);
+        productRepository.delete(product);
+        changeFeed.deleted(id);
+        TransactionUtils.afterCommit(() -> publishDeleted(id));
+    }
+
+    private Slice<Product> findProducts(String query, boolean fuzzy, ProductFilter filter, Pageable pageable) {
+        checkQuery(query);
+        if (query != null && searchIndex.isReady()) {
+            SearchResult result = searchIndex.search(query, fuzzy, filter, pageable);
+            boolean hasNext = pageable.isPaged() && pageable.getOffset() + pageable.getPageSize() < result.total();
+            return new SliceImpl<>(getProductsInOrder(result.ids()), pageable, hasNext);
+        }
+        if (isSnapshotServed(query, filter, pageable.getSort())) {
+            if (pageable.isUnpaged()) {
+                return new SliceImpl<>(catalogSnapshot.page(pageable.getSort(), 0, Integer.MAX_VALUE), pageable, false);
+            }
+            List<Product> products = catalogSnapshot.page(pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1);
+            boolean hasNext = products.size() > pageable.getPageSize();
+            return new SliceImpl<>(hasNext ? products.subList(0, pageable.getPageSize()) : products, pageable, hasNext);
+        }
+        Specification<Product> specification = ProductSpecifications.and(ProductSpecifications.nameContainsIgnoreCase(query), ProductSpecifications.matching(filter));
+        return productRepository.findSlice(specification, withTiebreaker(pageable));
+    }
+
+    private void streamProducts(String query, boolean fuzzy, ProductFilter filter, Sort sort, Consumer<Product> consumer) {
+        checkQuery(query);
+        if (query != null && searchIndex.isReady()) {
+            List<Long> ids = searchIndex.search(query, fuzzy, filter, sort).ids();
+            for (int from = 0; from < ids.size(); from += EXPORT_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + EXPORT_BATCH_SIZE, ids.size()));
+                try (Stream<Product> products = productRepository.stream(ProductSpecifications.idIn(batch), Sort.unsorted())) {
+                    inOrder(batch, products.toList()).forEach(consumer);
+                }
+            }
+            return;
+        }
+        if (isSnapshotServed(query, filter, sort)) {
+            catalogSnapshot.forEach(sort, consumer);
+            return;
+        }
+        Specification<Product> specification = ProductSpecifications.and(ProductSpecifications.nameContainsIgnoreCase(query), ProductSpecifications.matching(filter));
+        try (Stream<Product> products = productRepository.stream(specification, sort.isSorted() ? KeysetCursor.withTiebreaker(sort) : sort)) {
+            products.forEach(consumer);
+        }
+    }
+
+    /**
+     * Products published from now on are remembered, so the load does not replace them with the older rows it streams.
+     */
+    public synchronized void indexLoadStarted() {
+        indexLoading.set(true);
+    }
+
+    public synchronized void indexLoadFinished() {
+        indexLoading.set(false);
+        publishedDuringLoad.clear();
+    }
+
+    /**
+     * Hands a product streamed by the load to the action, unless it was published since the load started.
+     */
+    public synchronized void indexLoaded(Product product, Consumer<Product> action) {
+        if (!publishedDuringLoad.contains(product.getId())) {
+            action.accept(product);
+        }
+    }
+
+    /**
+     * Reads the rows again from the primary and hands them over under one lock, so when commit hooks run out of order
+     * an older state never replaces a newer one.
+     */
+    private synchronized void publish(Collection<Long> ids) {
+        if (indexLoading.get()) {
+            publishedDuringLoad.addAll(ids);
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.setReadOnly(true);
+        List<Product> products = ReplicaRoutingDataSource.onPrimary(() -> transaction.execute(status -> productRepository.findAllById(ids)));
+        products.forEach(product -> {
+            productCache.evict(product.getId());
+            listeners.forEach(listener -> listener.productSaved(product));
+        });
+        catalogVersion.increment();
+    }
+
+    private synchronized void publishDeleted(Long id) {
+        if (indexLoading.get()) {
+            publishedDuringLoad.add(id);
+        }
+        productCache.evict(id);
+        listeners.forEach(listener -> listener.productDeleted(id));
+        catalogVersion.increment();
+    }
+
+    private boolean isSnapshotServed(String query, ProductFilter filter, Sort sort) {
+        return query == null && filter.isEmpty() && catalogSnapshot.isReady() && catalogSnapshot.supports(sort);
+    }
+
+    /**
+     * Sorted pages also order by id, so products with equal sort keys can not move between pages.
+     */
+    private static Pageable withTiebreaker(Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getSort().isUnsorted()) {
+            return pageable;
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), KeysetCursor.withTiebreaker(pageable.getSort()));
+    }
+
+    private List<Product> getProductsInOrder(List<Long> ids) {
+        return inOrder(ids, productRepository.findAllById(ids));
+    }
+
+    private static List<Product> inOrder(List<Long> ids, List<Product> products) {
+        Map<Long, Product> productsById = products.stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream().map(productsById::get).filter(Objects::nonNull).toList();
+    }
+
+    private void checkQuery(String query) {
+        if (query != null && query.isBlank()) {
+            throw new APIException("Query value is empty");
+        }
     }
 
     private void checkProductExistence(Long id) {
@@ -65,4 +513,8 @@ public class ProductService {
         }
     }
 
+    private record CountKey(String query, boolean fuzzy, ProductFilter filter) {
+
+    }
+
 }
@@ -3,18 +3,43 @@ package com.shoppy.broman.shoppy;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 
+import com.shoppy.cache.CatalogVersion;
+import com.shoppy.cache.ProductCache;
+import com.shoppy.cache.ProductCountCache;
+import com.shoppy.cache.ProductResponseCache;
 import com.shoppy.enumeration.City;
 import com.shoppy.enumeration.Country;
 import com.shoppy.enumeration.State;
+import com.shoppy.inventory.InventoryLedger;
+import com.shoppy.inventory.StockReservations;
+import com.shoppy.inventory.StockStripes;
 import com.shoppy.model.Address;
 import com.shoppy.model.CardPaymentMethod;
 import com.shoppy.model.Checkout;
 import com.shoppy.model.Item;
 import com.shoppy.model.Product;
+import com.shoppy.repository.InventoryMovementRepository;
+import com.shoppy.repository.InventorySnapshotRepository;
+import com.shoppy.repository.ProductChangeRepository;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.StockStripeRepository;
+import com.shoppy.search.CatalogSnapshotIndex;
+import com.shoppy.search.ProductFacetIndex;
+import com.shoppy.search.ProductSearchIndex;
+import com.shoppy.search.ProductSuggestionIndex;
+import com.shoppy.service.ProductChangeFeed;
+import com.shoppy.service.ProductService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.mockito.Mockito;
 
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -82,6 +107,60 @@ public final class TestUtils {
         return checkout;
     }
 
+    public static ProductService createProductService(ProductRepository productRepository) {
+        return createProductService(productRepository, createStockStripes());
+    }
+
+    public static ProductService createProductService(ProductRepository productRepository, StockStripes stockStripes) {
+        return createProductService(productRepository, stockStripes, createInventoryLedger(Mockito.mock(InventoryMovementRepository.class), Mockito.mock(InventorySnapshotRepository.class)));
+    }
+
+    public static ProductService createProductService(ProductRepository productRepository, StockStripes stockStripes, InventoryLedger ledger) {
+        ProductSearchIndex searchIndex = new ProductSearchIndex();
+        ProductSuggestionIndex suggestionIndex = new ProductSuggestionIndex();
+        ProductFacetIndex facetIndex = new ProductFacetIndex();
+        ProductResponseCache responseCache = createProductResponseCache();
+        CatalogVersion catalogVersion = new CatalogVersion();
+        StockReservations reservations = createStockReservations(false, responseCache);
+        return new ProductService(productRepository, createProductCache(), responseCache, createProductCountCache(), catalogVersion, searchIndex, suggestionIndex, facetIndex, new CatalogSnapshotIndex(false), reservations, stockStripes, ledger, createProductChangeFeed(Mockito.mock(ProductChangeRepository.class)), List.of(searchIndex, suggestionIndex, facetIndex, responseCache), Mockito.mock(PlatformTransactionManager.class));
+    }
+
+    public static ProductCache createProductCache() {
+        return new ProductCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    public static ProductResponseCache createProductResponseCache() {
+        return new ProductResponseCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    public static ProductCountCache createProductCountCache() {
+        return new ProductCountCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    public static StockReservations createStockReservations(boolean enabled, ProductResponseCache responseCache) {
+        return new StockReservations(enabled, Duration.ofMinutes(15), Duration.ofSeconds(1), responseCache);
+    }
+
+    public static StockStripes createStockStripes() {
+        return createStockStripes(Mockito.mock(StockStripeRepository.class));
+    }
+
+    public static StockStripes createStockStripes(StockStripeRepository stripeRepository) {
+        return new StockStripes(stripeRepository);
+    }
+
+    public static ProductChangeFeed createProductChangeFeed(ProductChangeRepository changeRepository) {
+        return new ProductChangeFeed(changeRepository, Duration.ofMillis(200));
+    }
+
+    public static InventoryLedger createInventoryLedger(InventoryMovementRepository movementRepository, InventorySnapshotRepository snapshotRepository) {
+        return createInventoryLedger(movementRepository, snapshotRepository, Mockito.mock(PlatformTransactionManager.class));
+    }
+
+    public static InventoryLedger createInventoryLedger(InventoryMovementRepository movementRepository, InventorySnapshotRepository snapshotRepository, PlatformTransactionManager transactionManager) {
+        return new InventoryLedger(Duration.ofMinutes(5), Duration.ZERO, 3, 100, movementRepository, snapshotRepository, transactionManager, new SimpleMeterRegistry());
+    }
+
     public static Principal getPrincipal() {
         return SecurityContextHolder.getContext().getAuthentication();
     }
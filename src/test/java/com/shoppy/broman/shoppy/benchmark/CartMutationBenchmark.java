@@ -0,0 +1,88 @@
+package com.shoppy.broman.shoppy.benchmark;
+
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cart line mutations against carts of growing size: updating the quantity of a random line, and adding a line
+ * then removing a random one, which keeps the size steady. Run with
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main CartMutationBenchmark} after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartMutationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int lines;
+
+    private Checkout checkout;
+    private long[] productIds;
+    private long nextProductId;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        checkout = new Checkout();
+        productIds = new long[lines];
+        for (int line = 0; line < lines; line++) {
+            productIds[line] = line + 1;
+            checkout.addItem(createItem(productIds[line], 1));
+        }
+        nextProductId = lines + 1;
+    }
+
+    @Benchmark
+    public Item updateItem() {
+        Item item = createItem(productIds[random.nextInt(lines)], random.nextInt(1, 10));
+        checkout.updateItem(item);
+        return item;
+    }
+
+    @Benchmark
+    public boolean addAndRemoveItem() {
+        long added = nextProductId++;
+        checkout.addItem(createItem(added, 1));
+        int line = random.nextInt(lines);
+        long removed = productIds[line];
+        productIds[line] = added;
+        return checkout.deleteItemByProductId(removed);
+    }
+
+    private static Item createItem(long productId, int quantity) {
+        Product product = new Product();
+        product.setId(productId);
+        Item item = new Item();
+        item.setProduct(product);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CartMutationBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.shoppy.broman.shoppy.benchmark;
+
+import com.shoppy.model.Product;
+import com.shoppy.search.ProductSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.data.domain.Pageable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First page of a fuzzy search with misspelled queries over a generated catalog, next to the exact search for the
+ * correctly spelled query. Every query matches thousands of products. Run with
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main FuzzySearchBenchmark} after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzySearchBenchmark {
+
+    private static final String[] ADJECTIVES = {"red", "blue", "green", "black", "white", "leather", "wooden", "steel", "cotton", "wireless", "vintage", "compact", "portable", "classic", "modern"};
+    private static final String[] NOUNS = {"chair", "table", "lamp", "shoes", "jacket", "headphones", "keyboard", "backpack", "bottle", "blanket", "speaker", "monitor", "wallet", "sofa", "mirror"};
+
+    @Param("100000")
+    private int products;
+
+    @Param({"keybaord:keyboard", "hedphones wireless:headphones wireless", "blnket:blanket"})
+    private String queries;
+
+    private ProductSearchIndex searchIndex;
+    private String misspelled;
+    private String query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        searchIndex = new ProductSearchIndex();
+        misspelled = queries.substring(0, queries.indexOf(':'));
+        query = queries.substring(queries.indexOf(':') + 1);
+        for (long id = 1; id <= products; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setName(ADJECTIVES[random.nextInt(ADJECTIVES.length)] + ' ' + NOUNS[random.nextInt(NOUNS.length)] + ' ' + "model" + random.nextInt(5000));
+            product.setDescription("A " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + ' ' + NOUNS[random.nextInt(NOUNS.length)]);
+            product.setPrice(1 + random.nextInt(100000) / 100.0);
+            product.setStock(random.nextInt(1000));
+            searchIndex.productSaved(product);
+        }
+    }
+
+    @Benchmark
+    public Object fuzzy() {
+        return searchIndex.search(misspelled, true, Pageable.ofSize(20));
+    }
+
+    @Benchmark
+    public Object exact() {
+        return searchIndex.search(query, false, Pageable.ofSize(20));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FuzzySearchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.shoppy.broman.shoppy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per second for a single hot product, with its stock on one row or split over stripes. Every order is a
+ * transaction taking one unit off the stock with the same conditional update the application issues, then writing
+ * an order row while the stock row stays locked. It only measures the statements against in-memory H2, which holds
+ * the lock for microseconds; how striping scales has to be measured against the production database. Compare thread
+ * counts with {@code java -cp <test classpath> org.openjdk.jmh.Main HotProductStockBenchmark -t 1} and {@code -t 16}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotProductStockBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:hot-product;DB_CLOSE_DELAY=-1";
+
+    @Param({"1", "16"})
+    private int stripes;
+
+    private Connection setupConnection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        setupConnection = DriverManager.getConnection(URL);
+        try (Statement statement = setupConnection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS product_stock_stripes");
+            statement.execute("DROP TABLE IF EXISTS orders");
+            statement.execute("CREATE TABLE product_stock_stripes (id BIGINT PRIMARY KEY, product_id BIGINT NOT NULL, stripe INT NOT NULL, stock INT NOT NULL)");
+            statement.execute("CREATE TABLE orders (id BIGINT AUTO_INCREMENT PRIMARY KEY, product_id BIGINT NOT NULL, quantity INT NOT NULL)");
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                statement.execute("INSERT INTO product_stock_stripes VALUES (" + stripe + ", 1, " + stripe + ", " + Integer.MAX_VALUE / stripes + ")");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        setupConnection.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+
+        private Connection connection;
+        private PreparedStatement decrement;
+        private PreparedStatement order;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            connection = DriverManager.getConnection(URL);
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            decrement = connection.prepareStatement("UPDATE product_stock_stripes SET stock = stock - ? WHERE id = ? AND stock >= ?");
+            order = connection.prepareStatement("INSERT INTO orders (product_id, quantity) VALUES (1, ?)");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+
+    }
+
+    @Benchmark
+    public boolean placeOrder(Session session) throws SQLException {
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+        for (int i = 0; i < stripes; i++) {
+            session.decrement.setInt(1, 1);
+            session.decrement.setLong(2, (start + i) % stripes);
+            session.decrement.setInt(3, 1);
+            if (session.decrement.executeUpdate() == 1) {
+                session.order.setInt(1, 1);
+                session.order.executeUpdate();
+                session.connection.commit();
+                return true;
+            }
+        }
+        session.connection.rollback();
+        return false;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HotProductStockBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.shoppy.broman.shoppy.cache;
+
+import com.shoppy.cache.IdempotencyCache;
+import com.shoppy.exception.APIException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IdempotencyCacheTest {
+
+    private IdempotencyCache idempotencyCache;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyCache = new IdempotencyCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void whenKeyIsUsedTwice_thenActionRunsOnceAndIsReplayed() {
+        AtomicInteger runs = new AtomicInteger();
+
+        Assertions.assertFalse(idempotencyCache.execute("alice:1", runs::incrementAndGet));
+        Assertions.assertTrue(idempotencyCache.execute("alice:1", runs::incrementAndGet));
+        Assertions.assertFalse(idempotencyCache.execute("bob:1", runs::incrementAndGet));
+        Assertions.assertEquals(2, runs.get());
+    }
+
+    @Test
+    void whenActionFailsWithAConflict_thenTheFailureIsReplayed() {
+        AtomicInteger runs = new AtomicInteger();
+        Runnable action = () -> {
+            runs.incrementAndGet();
+            throw new APIException("not enough products in stock", HttpStatus.CONFLICT);
+        };
+
+        Assertions.assertThrows(APIException.class, () -> idempotencyCache.execute("alice:1", action));
+        APIException replayed = Assertions.assertThrows(APIException.class, () -> idempotencyCache.execute("alice:1", action));
+        Assertions.assertEquals(HttpStatus.CONFLICT, replayed.getStatus());
+        Assertions.assertEquals(1, runs.get());
+    }
+
+    @Test
+    void whenActionFailsValidation_thenTheKeyIsForgotten() {
+        AtomicInteger runs = new AtomicInteger();
+
+        Assertions.assertThrows(APIException.class, () -> idempotencyCache.execute("alice:1", () -> {
+            runs.incrementAndGet();
+            throw new APIException("Address not provided", HttpStatus.BAD_REQUEST);
+        }));
+        Assertions.assertFalse(idempotencyCache.execute("alice:1", runs::incrementAndGet));
+        Assertions.assertEquals(2, runs.get());
+    }
+
+    @Test
+    void whenActionFailsUnexpectedly_thenTheKeyIsForgotten() {
+        AtomicInteger runs = new AtomicInteger();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> idempotencyCache.execute("alice:1", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("connection lost");
+        }));
+        Assertions.assertFalse(idempotencyCache.execute("alice:1", runs::incrementAndGet));
+        Assertions.assertEquals(2, runs.get());
+    }
+
+    @Test
+    void whenDuplicatesArriveConcurrently_thenTheyWaitForTheFirstRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Boolean> first = executor.submit(() -> idempotencyCache.execute("alice:1", () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Boolean> second = executor.submit(() -> idempotencyCache.execute("alice:1", runs::incrementAndGet));
+            Future<Boolean> third = executor.submit(() -> idempotencyCache.execute("alice:1", runs::incrementAndGet));
+            Assertions.assertFalse(second.isDone());
+            release.countDown();
+
+            Assertions.assertFalse(first.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(second.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(third.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, runs.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void whenTheFirstRunTakesTooLong_thenDuplicatesAreToldItIsInProgress() throws Exception {
+        idempotencyCache = new IdempotencyCache(100, Duration.ofMinutes(1), Duration.ofMillis(50), new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> first = executor.submit(() -> idempotencyCache.execute("alice:1", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            APIException exception = Assertions.assertThrows(APIException.class, () -> idempotencyCache.execute("alice:1", () -> { }));
+            Assertions.assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+            Assertions.assertEquals("request in progress", exception.getMessage());
+            release.countDown();
+            Assertions.assertFalse(first.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.shoppy.broman.shoppy.cache;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.ProductCache;
+import com.shoppy.model.Product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ProductCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ProductCache productCache;
+
+    @BeforeEach
+    void setUp() {
+        productCache = new ProductCache(2, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    @Test
+    void whenProductIsRequestedTwice_thenLoaderIsCalledOnce() {
+        Product product = TestUtils.createProduct();
+        AtomicInteger loads = new AtomicInteger();
+
+        productCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        assertSameProduct(product, productCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; }));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void whenACachedProductIsChanged_thenTheCacheIsNot() {
+        Product product = TestUtils.createProduct();
+
+        productCache.get(product.getId(), id -> product);
+        product.setStock(0);
+        productCache.get(product.getId(), id -> product).setName("changed");
+
+        Product cached = productCache.get(product.getId(), id -> product);
+        Assertions.assertNotSame(product, cached);
+        Assertions.assertEquals(TestUtils.createProduct().getStock(), cached.getStock());
+        Assertions.assertEquals(TestUtils.createProduct().getName(), cached.getName());
+    }
+
+    @Test
+    void whenProductIsEvicted_thenItIsLoadedAgain() {
+        Product product = TestUtils.createProduct();
+        AtomicInteger loads = new AtomicInteger();
+
+        productCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        productCache.evict(product.getId());
+        productCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void whenProductIsMissing_thenNullIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        Assertions.assertNull(productCache.get(0L, id -> { loads.incrementAndGet(); return null; }));
+        Assertions.assertNull(productCache.get(0L, id -> { loads.incrementAndGet(); return null; }));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void whenSeveralProductsAreRequested_thenOnlyUncachedOnesAreLoadedTogether() {
+        Product cached = TestUtils.createProduct();
+        Product loaded = TestUtils.createProduct();
+        loaded.setId(1L);
+        List<Set<Long>> loads = new ArrayList<>();
+
+        productCache.get(cached.getId(), id -> cached);
+        Map<Long, Product> products = productCache.getAll(List.of(0L, 1L, 2L), missing -> {
+            loads.add(missing);
+            return Map.of(1L, loaded);
+        });
+
+        Assertions.assertEquals(Set.of(0L, 1L), products.keySet());
+        assertSameProduct(cached, products.get(0L));
+        assertSameProduct(loaded, products.get(1L));
+        Assertions.assertEquals(List.of(Set.of(1L, 2L)), loads);
+    }
+
+    @Test
+    void whenCacheIsUsed_thenHitsAndMissesAreReported() {
+        Product product = TestUtils.createProduct();
+
+        productCache.get(product.getId(), id -> product);
+        productCache.get(product.getId(), id -> product);
+
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", ProductCache.CACHE_NAME).tag("result", "hit").functionCounter().count());
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", ProductCache.CACHE_NAME).tag("result", "miss").functionCounter().count());
+    }
+
+    private static void assertSameProduct(Product expected, Product actual) {
+        Assertions.assertEquals(expected.getId(), actual.getId());
+        Assertions.assertEquals(expected.getName(), actual.getName());
+        Assertions.assertEquals(expected.getDescription(), actual.getDescription());
+        Assertions.assertEquals(expected.getPrice(), actual.getPrice());
+        Assertions.assertEquals(expected.getStock(), actual.getStock());
+    }
+
+}
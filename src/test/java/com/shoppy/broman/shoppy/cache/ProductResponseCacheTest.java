@@ -0,0 +1,57 @@
+package com.shoppy.broman.shoppy.cache;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.model.Product;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+class ProductResponseCacheTest {
+
+    private ProductResponseCache responseCache;
+
+    @BeforeEach
+    void setUp() {
+        responseCache = TestUtils.createProductResponseCache();
+    }
+
+    @Test
+    void whenProductIsSerialized_thenPlainAndCompressedBytesMatch() throws IOException {
+        Product product = TestUtils.createProduct();
+
+        ProductResponseCache.SerializedProduct serialized = responseCache.get(product.getId(), id -> product);
+
+        Assertions.assertEquals("TEST", new JsonMapper().readTree(serialized.json()).get("name").asText());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(serialized.gzip()))) {
+            Assertions.assertArrayEquals(serialized.json(), gzip.readAllBytes());
+        }
+    }
+
+    @Test
+    void whenProductIsSaved_thenItIsSerializedAgain() {
+        Product product = TestUtils.createProduct();
+        AtomicInteger loads = new AtomicInteger();
+
+        responseCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        responseCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        responseCache.productSaved(product);
+        responseCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void whenProductIsMissing_thenNothingIsCached() {
+        Assertions.assertNull(responseCache.get(0L, id -> null));
+    }
+
+}
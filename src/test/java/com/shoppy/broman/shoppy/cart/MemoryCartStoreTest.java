@@ -0,0 +1,291 @@
+package com.shoppy.broman.shoppy.cart;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cart.MemoryCartStore;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Address;
+import com.shoppy.model.CardPaymentMethod;
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+import com.shoppy.repository.AddressRepository;
+import com.shoppy.repository.CardPaymentMethodRepository;
+import com.shoppy.repository.ProductRepository;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.mockito.Mockito;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class MemoryCartStoreTest {
+
+    private final ProductRepository productRepository = Mockito.mock(ProductRepository.class);
+    private final AddressRepository addressRepository = Mockito.mock(AddressRepository.class);
+    private final CardPaymentMethodRepository paymentMethodRepository = Mockito.mock(CardPaymentMethodRepository.class);
+    private final Map<Long, Product> products = new HashMap<>();
+    private final Principal alice = () -> "alice";
+    private final Principal bob = () -> "bob";
+
+    @TempDir
+    Path directory;
+
+    private Path path;
+    private MemoryCartStore store;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= 3; id++) {
+            Product product = TestUtils.createProduct();
+            product.setId(id);
+            products.put(id, product);
+        }
+        Mockito.when(productRepository.findAllById(Mockito.any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(products::containsKey).map(products::get).toList();
+        });
+        path = directory.resolve("carts.log");
+        store = open(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void whenACartIsChangedWithoutSaving_thenTheStoreKeepsItsOwnCopy() {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+
+        Assertions.assertTrue(store.find(alice).getItems().isEmpty());
+
+        store.save(alice, cart);
+
+        Checkout saved = store.find(alice);
+        Assertions.assertEquals(cart.getId(), saved.getId());
+        MatcherAssert.assertThat(saved.getItems(), Matchers.hasSize(1));
+        Assertions.assertNotNull(saved.getItems().get(0).getId());
+        Assertions.assertNull(store.find(bob));
+    }
+
+    @Test
+    void whenTheStoreIsReopened_thenTheCartsAreReplayedFromTheLog() {
+        Address address = TestUtils.createAddress();
+        CardPaymentMethod paymentMethod = TestUtils.createPaymentMethod();
+        Mockito.when(addressRepository.findAllById(Mockito.any())).thenReturn(List.of(address));
+        Mockito.when(paymentMethodRepository.findAllById(Mockito.any())).thenReturn(List.of(paymentMethod));
+
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        cart.addItem(item(2L, 1));
+        store.save(alice, cart);
+        cart.updateItem(item(1L, 5));
+        cart.deleteItemByProductId(2L);
+        cart.addItem(item(3L, 4));
+        cart.setAddress(address);
+        cart.setPaymentMethod(paymentMethod);
+        store.save(alice, cart);
+        store.delete(bob, store.findOrCreate(bob));
+        store.close();
+
+        store = open(100);
+
+        Checkout replayed = store.find(alice);
+        Assertions.assertEquals(cart.getId(), replayed.getId());
+        MatcherAssert.assertThat(replayed.getItems().stream().map(item -> item.getProduct().getId()).toList(), Matchers.contains(1L, 3L));
+        MatcherAssert.assertThat(replayed.getItems().stream().map(Item::getQuantity).toList(), Matchers.contains(5, 4));
+        Assertions.assertSame(address, replayed.getAddress());
+        Assertions.assertSame(paymentMethod, replayed.getPaymentMethod());
+        Assertions.assertNull(store.find(bob));
+    }
+
+    @Test
+    void whenTheLogEndsWithATornRecord_thenTheReplayStopsBeforeIt() throws IOException {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        store.save(alice, cart);
+        store.close();
+        Files.write(path, new byte[] {2, 0, 5, 'a', 'l'}, StandardOpenOption.APPEND);
+
+        store = open(100);
+
+        MatcherAssert.assertThat(store.find(alice).getItems(), Matchers.hasSize(1));
+    }
+
+    @Test
+    void whenTheLogGrowsPastTheThreshold_thenItIsCompacted() throws IOException {
+        store.close();
+        store = open(10);
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 1));
+        int quantity = 1;
+        long size;
+        do {
+            cart.updateItem(item(1L, ++quantity));
+            store.save(alice, cart);
+            size = Files.size(path);
+        }
+        while (quantity < 100 || size >= 30L * 20 && quantity < 100_000);
+        store.close();
+
+        store = open(10);
+
+        MatcherAssert.assertThat(size, Matchers.lessThan(30L * 20));
+        Assertions.assertEquals(quantity, store.find(alice).getItems().get(0).getQuantity());
+    }
+
+    @Test
+    void whenCompactingTheLogFails_thenTheChangesAreStillLogged() throws IOException {
+        store.close();
+        store = open(10);
+        Path rewritten = Files.createDirectory(directory.resolve("carts.log.tmp"));
+        Files.createFile(rewritten.resolve("blocked"));
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 1));
+        for (int quantity = 2; quantity <= 100; quantity++) {
+            cart.updateItem(item(1L, quantity));
+            store.save(alice, cart);
+        }
+        store.close();
+        Files.delete(rewritten.resolve("blocked"));
+        Files.delete(rewritten);
+
+        store = open(10);
+
+        Assertions.assertEquals(100, store.find(alice).getItems().get(0).getQuantity());
+    }
+
+    @Test
+    void whenASaveFailsPartway_thenNoneOfItsChangesAreKept() {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        store.save(alice, cart);
+        cart.addItem(item(2L, 1));
+        Item unsaved = item(3L, 4);
+        unsaved.setProduct(TestUtils.createProduct());
+        unsaved.getProduct().setId(null);
+        cart.addItem(unsaved);
+
+        Assertions.assertThrows(NullPointerException.class, () -> store.save(alice, cart));
+        MatcherAssert.assertThat(store.find(alice).getItems(), Matchers.hasSize(1));
+        Checkout stored = store.find(alice);
+        stored.updateItem(item(1L, 5));
+        store.save(alice, stored);
+        store.close();
+        store = open(100);
+
+        MatcherAssert.assertThat(store.find(alice).getItems(), Matchers.hasSize(1));
+        Assertions.assertEquals(5, store.find(alice).getItems().get(0).getQuantity());
+    }
+
+    @Test
+    void whenTheCartIsCheckedOut_thenItIsDeletedOnceTheOrderCommits() {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        store.save(alice, cart);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.checkedOut(alice, new Customer(), cart);
+            Assertions.assertNotNull(store.find(alice));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        Assertions.assertNull(store.find(alice));
+        store.close();
+        store = open(100);
+        Assertions.assertNull(store.find(alice));
+    }
+
+    @Test
+    void whenTheOrderRollsBack_thenTheCartIsKept() {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        store.save(alice, cart);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.checkedOut(alice, new Customer(), cart);
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        MatcherAssert.assertThat(store.find(alice).getItems(), Matchers.hasSize(1));
+    }
+
+    @Test
+    void whenTheCartIsMaterialized_thenItsReferencesAreReadAgain() {
+        Customer customer = new Customer();
+        Address address = TestUtils.createAddress();
+        CardPaymentMethod paymentMethod = TestUtils.createPaymentMethod();
+        customer.getAddresses().add(address);
+        customer.getPaymentMethods().add(paymentMethod);
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        cart.setAddress(address);
+        cart.setPaymentMethod(paymentMethod);
+        store.save(alice, cart);
+        Product current = TestUtils.createProduct();
+        current.setId(1L);
+        products.put(1L, current);
+
+        Checkout materialized = store.materialize(alice, customer);
+
+        Assertions.assertSame(current, materialized.getItems().get(0).getProduct());
+        Assertions.assertSame(address, materialized.getAddress());
+        Assertions.assertSame(paymentMethod, materialized.getPaymentMethod());
+        Assertions.assertNull(store.materialize(bob, customer));
+    }
+
+    @Test
+    void whenAProductOfTheCartWasDeleted_thenItCanNotBeMaterialized() {
+        Checkout cart = store.findOrCreate(alice);
+        cart.addItem(item(1L, 2));
+        store.save(alice, cart);
+        products.remove(1L);
+
+        Customer customer = new Customer();
+        APIException exception = Assertions.assertThrows(APIException.class, () -> store.materialize(alice, customer));
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    private MemoryCartStore open(long compactAfter) {
+        MemoryCartStore opened = new MemoryCartStore(path, false, compactAfter, productRepository, addressRepository, paymentMethodRepository);
+        opened.open();
+        return opened;
+    }
+
+    private Item item(Long productId, int quantity) {
+        Item item = TestUtils.createItem(products.get(productId));
+        item.setId(null);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+}
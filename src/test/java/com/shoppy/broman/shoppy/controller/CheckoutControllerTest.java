@@ -1,9 +1,12 @@
 package com.shoppy.broman.shoppy.controller;
 
 import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.IdempotencyCache;
+import com.shoppy.cart.JpaCartStore;
 import com.shoppy.controller.CheckoutController;
 import com.shoppy.controller.mapper.EntityMapper;
 import com.shoppy.exception.handler.APIExceptionHandler;
+import com.shoppy.inventory.StockReservations;
 import com.shoppy.model.Address;
 import com.shoppy.model.Checkout;
 import com.shoppy.model.Customer;
@@ -18,6 +21,11 @@ import com.shoppy.service.CheckoutService;
 import com.shoppy.service.CustomerService;
 import com.shoppy.service.ProductService;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -33,6 +41,8 @@ import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.security.Principal;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -53,13 +63,15 @@ class CheckoutControllerTest {
 
     @BeforeEach
     void setUp() {
+        ProductService productService = TestUtils.createProductService(productRepository);
         mockMvc = MockMvcBuilders.standaloneSetup(
                 new CheckoutController(
-                        new CheckoutService(checkoutRepository, customerService),
+                        new CheckoutService(new JpaCartStore(customerService, checkoutRepository), customerService, productService, Mockito.mock(StockReservations.class)),
                         new CardPaymentMethodService(customerService),
-                        new ProductService(productRepository),
+                        productService,
                         new AddressService(customerService),
-                        Mappers.getMapper(EntityMapper.class))
+                        Mappers.getMapper(EntityMapper.class),
+                        new IdempotencyCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry()))
                 ).setControllerAdvice(new APIExceptionHandler()
         ).build();
     }
@@ -69,8 +81,8 @@ class CheckoutControllerTest {
     void whenRequestingForCheckoutAndItIsPresent_thenSuccess() throws Exception {
         Checkout checkout = TestUtils.createCheckout();
 
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.of(checkout));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_CHECKOUT)
@@ -85,8 +97,8 @@ class CheckoutControllerTest {
     @Test
     @DisplayName("Should fail when requesting for checkout and it doesn't exists")
     void whenRequestingForCheckoutAndItIsNotPresent_thenFail() throws Exception {
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(null);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_CHECKOUT)
@@ -103,8 +115,8 @@ class CheckoutControllerTest {
     void whenRequestingForGetItemsAndCheckoutIsPresent_thenSuccess() throws Exception {
         Checkout checkout = TestUtils.createCheckout();
 
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.of(checkout));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_PRODUCTS)
@@ -119,8 +131,8 @@ class CheckoutControllerTest {
     @Test
     @DisplayName("Should fail when requesting items when checkout is not available")
     void whenRequestingForGetItemsAndCheckoutIsNotPresent_thenFail() throws Exception {
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(null);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_PRODUCTS)
@@ -263,8 +275,8 @@ class CheckoutControllerTest {
     void whenRequestingAddressesAndCheckoutIsPresent_thenSuccess() throws Exception {
         Checkout checkout = TestUtils.createCheckout();
 
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.of(checkout));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_ADDRESS)
@@ -279,8 +291,8 @@ class CheckoutControllerTest {
     @Test
     @DisplayName("Should fail when requesting address and checkout is unavailable")
     void whenRequestingAddressesAndCheckoutNotIsPresent_thenFail() throws Exception {
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(null);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_ADDRESS)
@@ -351,8 +363,8 @@ class CheckoutControllerTest {
     void whenRequestingCurrentPaymentMethodAndCheckoutExists_thenSuccess() throws Exception {
         Checkout checkout = TestUtils.createCheckout();
 
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.of(checkout));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_BILLING)
@@ -367,8 +379,8 @@ class CheckoutControllerTest {
     @Test
     @DisplayName("Should fail if requesting current checkout's payment method but checkout is unavailable")
     void whenRequestingCurrentPaymentMethodAndCheckoutNotExists_thenFail() throws Exception {
-        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
-        Mockito.when(customer.getCurrentCheckout()).thenReturn(null);
+        Mockito.doReturn("user").when(customerService).getUsername(Mockito.any());
+        Mockito.when(checkoutRepository.findCurrentCheckoutByUsername("user")).thenReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL_BILLING)
@@ -440,6 +452,7 @@ class CheckoutControllerTest {
 
         Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
         Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.when(productRepository.decrementStock(Mockito.any(), Mockito.anyInt())).thenReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .post(URL_ORDER)
@@ -452,4 +465,145 @@ class CheckoutControllerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should fail with conflict when an ordered product ran out of stock")
+    void whenOrderedProductIsOutOfStock_thenConflict() throws Exception {
+        Checkout checkout = TestUtils.createCheckout();
+
+        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.when(productRepository.decrementStock(Mockito.any(), Mockito.anyInt())).thenReturn(false);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL_ORDER)
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isConflict(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("not enough products in stock")
+                );
+        Mockito.verify(customer, Mockito.never()).addOrder(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should place the order once when it is retried with the same idempotency key")
+    void whenOrderIsRetriedWithTheSameIdempotencyKey_thenItIsPlacedOnce() throws Exception {
+        Principal principal = () -> "alice";
+        Checkout checkout = TestUtils.createCheckout();
+
+        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.when(productRepository.decrementStock(Mockito.any(), Mockito.anyInt())).thenReturn(true);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL_ORDER)
+                        .header("Idempotency-Key", "order-1")
+                        .principal(principal)
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isCreated(),
+                        MockMvcResultMatchers.header().string("Idempotent-Replayed", "false")
+                );
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL_ORDER)
+                        .header("Idempotency-Key", "order-1")
+                        .principal(principal)
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isCreated(),
+                        MockMvcResultMatchers.header().string("Idempotent-Replayed", "true")
+                );
+        Mockito.verify(customer, Mockito.times(1)).addOrder(Mockito.any());
+        Mockito.verify(checkoutRepository, Mockito.times(1)).delete(checkout);
+        Mockito.verify(customerService, Mockito.times(1)).getCustomerByUsernameOrCreate(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should run a retried order again when the first attempt failed validation")
+    void whenInvalidOrderIsRetriedWithTheSameIdempotencyKey_thenItRunsAgain() throws Exception {
+        Principal principal = () -> "alice";
+        Checkout checkout = TestUtils.createCheckout();
+        checkout.setAddress(null);
+
+        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .post(URL_ORDER)
+                            .header("Idempotency-Key", "order-1")
+                            .principal(principal)
+                            .accept(MediaType.APPLICATION_JSON)
+                    ).andDo(MockMvcResultHandlers.log())
+                    .andExpectAll(
+                            MockMvcResultMatchers.status().isBadRequest(),
+                            MockMvcResultMatchers.jsonPath("$.error").value("Address not provided")
+                    );
+        }
+        Mockito.verify(customerService, Mockito.times(2)).getCustomerByUsernameOrCreate(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should fail when the idempotency key is blank")
+    void whenIdempotencyKeyIsBlank_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL_ORDER)
+                        .header("Idempotency-Key", " ")
+                        .principal(() -> "alice")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("Idempotency-Key must have between 1 and 255 characters")
+                );
+        Mockito.verifyNoInteractions(customerService);
+    }
+
+    @Test
+    @DisplayName("Should report the outcome of every line of a batch cart update")
+    void whenPatchingCartProducts_thenEveryLineIsReported() throws Exception {
+        Checkout checkout = TestUtils.createCheckout();
+        Product product = TestUtils.createProduct();
+        product.setId(1L);
+
+        Mockito.when(productRepository.findAllById(Mockito.any())).thenReturn(List.of(checkout.getItems().get(0).getProduct(), product));
+        Mockito.doReturn(customer).when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .patch(URL_PRODUCTS)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"operations\": ["
+                                + "{\"operation\": \"add\", \"productId\": 1, \"quantity\": 2}, "
+                                + "{\"operation\": \"add\", \"productId\": 0, \"quantity\": 1}, "
+                                + "{\"operation\": \"update\", \"productId\": 0, \"quantity\": 3}, "
+                                + "{\"operation\": \"remove\", \"productId\": 7}]}")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$[*].status").value(Matchers.contains(201, 409, 200, 404)),
+                        MockMvcResultMatchers.jsonPath("$[1].message").value("product already existing"),
+                        MockMvcResultMatchers.jsonPath("$[3].productId").value(7)
+                );
+        Mockito.verify(productRepository).findAllById(Mockito.any());
+        Mockito.verify(checkoutRepository).save(checkout);
+        Assertions.assertEquals(2, checkout.getItems().size());
+    }
+
+    @Test
+    @DisplayName("Should fail when a batch cart update holds an unknown operation")
+    void whenPatchingCartProductsWithUnknownOperation_thenBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .patch(URL_PRODUCTS)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"operations\": [{\"operation\": \"replace\", \"productId\": 1}]}")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("Unknown cart operation")
+                );
+    }
+
+}
@@ -1,12 +1,23 @@
 package com.shoppy.broman.shoppy.controller;
 
 import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.CatalogVersion;
+import com.shoppy.cache.ProductResponseCache;
 import com.shoppy.controller.ProductController;
 import com.shoppy.controller.mapper.EntityMapper;
+import com.shoppy.enumeration.MovementType;
 import com.shoppy.exception.handler.APIExceptionHandler;
+import com.shoppy.inventory.InventoryLedger;
 import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetPage;
+import com.shoppy.search.ProductFacets;
+import com.shoppy.search.ProductFilter;
+import com.shoppy.search.ProductSuggestionIndex;
+import com.shoppy.service.ProductBatch;
+import com.shoppy.service.ProductChanges;
 import com.shoppy.service.ProductService;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,18 +26,25 @@ import org.mapstruct.factory.Mappers;
 
 import org.mockito.Mockito;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 class ProductControllerTest {
 
     private final ProductService productService = Mockito.mock(ProductService.class);
+    private final CatalogVersion catalogVersion = new CatalogVersion();
     private MockMvc mockMvc;
 
     private static final String URL = "/api/v1/products/";
@@ -34,7 +52,7 @@ class ProductControllerTest {
     @BeforeEach
     void setUp() {
         mockMvc = MockMvcBuilders.standaloneSetup(
-                new ProductController(productService, Mappers.getMapper(EntityMapper.class))
+                new ProductController(productService, Mappers.getMapper(EntityMapper.class), catalogVersion)
         ).setControllerAdvice(new APIExceptionHandler()).build();
     }
 
@@ -43,7 +61,7 @@ class ProductControllerTest {
     void whenRequestingAllProductsAndAllPropertiesAreSet_thenSuccess() throws Exception {
         List<Product> products = List.of(TestUtils.createProduct());
 
-        Mockito.when(productService.getProducts(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(products);
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(products));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL + String.format("?query=%s&pageNum=%s&pageSize=%s&sort=%s&sortBy=%s", "test", 0, 1, "asc", "price"))
@@ -61,7 +79,7 @@ class ProductControllerTest {
     void whenRequestingAllProductsUnsorted_thenSuccess() throws Exception {
         List<Product> products = List.of(TestUtils.createProduct());
 
-        Mockito.when(productService.getProducts(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(products);
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(products));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL + String.format("?query=%s&pageNum=%s&pageSize=%s", "test", 0, 1))
@@ -92,7 +110,7 @@ class ProductControllerTest {
     @DisplayName("Should use default property when sortBy is missing")
     void whenPropertyIsMissingShouldUseDefault_thenSuccess() throws Exception {
         List<Product> products = List.of(TestUtils.createProduct());
-        Mockito.when(productService.getProducts(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(products);
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(products));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get(URL + String.format("?query=%s&pageNum=%s&pageSize=%s&sort=%s", "test", 0, 1, "asc"))
@@ -148,21 +166,45 @@ class ProductControllerTest {
     }
 
     @Test
-    @DisplayName("Should use default settings when pageNum and pageSize are missing")
+    @DisplayName("Should stream every product as a JSON array when pageNum and pageSize are missing")
     void whenPageNumAndPageSizeAreMissingReturnDefault_thenSuccess() throws Exception {
-        List<Product> products = List.of(TestUtils.createProduct());
-        Mockito.when(productService.getProducts(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(products);
+        mockExport(List.of(TestUtils.createProduct(), TestUtils.createProduct()));
 
-        mockMvc.perform(MockMvcRequestBuilders
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
                         .get(URL + String.format("?query=%s&sort=%s", "test", "asc"))
                         .accept(MediaType.APPLICATION_JSON)
-                ).andDo(MockMvcResultHandlers.log())
+                ).andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andDo(MockMvcResultHandlers.log())
                 .andExpectAll(
                         MockMvcResultMatchers.status().isOk(),
-                        MockMvcResultMatchers.jsonPath("$").isNotEmpty()
+                        MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON),
+                        MockMvcResultMatchers.jsonPath("$.length()").value(2)
                 );
     }
 
+    @Test
+    @DisplayName("Should stream newline delimited JSON when the client accepts it")
+    void whenRequestingNdjson_thenOneProductPerLine() throws Exception {
+        mockExport(List.of(TestUtils.createProduct(), TestUtils.createProduct(), TestUtils.createProduct()));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                ).andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        String content = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON)
+                ).andReturn().getResponse().getContentAsString();
+
+        Assertions.assertEquals(3, content.lines().count());
+    }
+
     @Test
     @DisplayName("Should fail if index page is less than 0")
     void whenPageNumIsTooLow_thenFail() throws Exception {
@@ -176,6 +218,363 @@ class ProductControllerTest {
                 );
     }
 
+    @Test
+    @DisplayName("Should return a page and the next cursor when cursor paging is requested")
+    void whenRequestingProductsWithCursor_thenSuccess() throws Exception {
+        KeysetPage<Product> page = new KeysetPage<>(List.of(TestUtils.createProduct()), "next");
+        Mockito.when(productService.getProductsAfter(Mockito.any(), Mockito.any(), Mockito.eq(""), Mockito.eq(1))).thenReturn(page);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + String.format("?cursor=&pageSize=%s&sort=%s&sortBy=%s", 1, "desc", "stock"))
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.content").isNotEmpty(),
+                        MockMvcResultMatchers.jsonPath("$.next").value("next")
+                );
+    }
+
+    @Test
+    @DisplayName("Should reject a page size above the maximum for cursor and offset paging")
+    void whenPageSizeIsTooLarge_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + String.format("?cursor=&pageSize=%s", 101))
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("Page size must not be greater than 100")
+                );
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + String.format("?pageNum=0&pageSize=%s", Integer.MAX_VALUE))
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("Page size must not be greater than 100")
+                );
+        Mockito.verify(productService, Mockito.never()).getProductsAfter(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt());
+        Mockito.verify(productService, Mockito.never()).getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should use the default page size when only pageNum is set")
+    void whenPageSizeIsMissing_thenTheDefaultIsUsed() throws Exception {
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(List.of()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=2")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        Mockito.verify(productService).getProducts(Mockito.isNull(), Mockito.eq(false), Mockito.any(), Mockito.eq(PageRequest.of(2, 20)));
+    }
+
+    @Test
+    @DisplayName("Should fail when cursor and pageNum are combined")
+    void whenCursorAndPageNumAreSet_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + String.format("?cursor=&pageNum=%s&pageSize=%s", 0, 1))
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("'cursor' can not be combined with 'pageNum'")
+                );
+    }
+
+    @Test
+    @DisplayName("Should return products together with their facet counts when facets are requested")
+    void whenRequestingFacets_thenProductsAndCountsAreReturned() throws Exception {
+        ProductFacets facets = new ProductFacets(1, List.of(new ProductFacets.PriceFacet(0, null, 1)), new ProductFacets.StockFacet(1, 0));
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(List.of(TestUtils.createProduct())));
+        Mockito.when(productService.getFacets(null, false, new ProductFilter(1.0, 5.0, true))).thenReturn(facets);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=1&minPrice=1&maxPrice=5&inStock=true&facets=true")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.content[0].name").value("TEST"),
+                        MockMvcResultMatchers.jsonPath("$.facets.total").value(1),
+                        MockMvcResultMatchers.jsonPath("$.facets.stock.inStock").value(1)
+                );
+    }
+
+    @Test
+    @DisplayName("Should link the next page when there are more products")
+    void whenThereIsANextPage_thenLinkHeaderIsReturned() throws Exception {
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any()))
+                .thenReturn(new SliceImpl<>(List.of(TestUtils.createProduct()), PageRequest.of(0, 1), true));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=1")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().string(HttpHeaders.LINK, "<http://localhost/api/v1/products/?pageSize=1&pageNum=1>; rel=\"next\""),
+                        MockMvcResultMatchers.header().doesNotExist("X-Total-Count")
+                );
+        Mockito.verify(productService, Mockito.never()).getProductCount(Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should return the approximate total only when it is asked for")
+    void whenCountIsRequested_thenTotalCountHeaderIsReturned() throws Exception {
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any()))
+                .thenReturn(new SliceImpl<>(List.of(TestUtils.createProduct()), PageRequest.of(0, 1), false));
+        Mockito.when(productService.getProductCount(null, false, ProductFilter.NONE)).thenReturn(1L);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=1&count=true")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().string("X-Total-Count", "1"),
+                        MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK),
+                        MockMvcResultMatchers.jsonPath("$[0].name").value("TEST")
+                );
+    }
+
+    @Test
+    @DisplayName("Should fail when the price range is inverted")
+    void whenMinPriceIsGreaterThanMaxPrice_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=1&minPrice=10&maxPrice=5")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("'minPrice' must not be greater than 'maxPrice'")
+                );
+    }
+
+    @Test
+    @DisplayName("Should sort by every key of a multi-key sort")
+    void whenMultiKeySortIsRequested_thenEveryKeyIsUsed() throws Exception {
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(List.of()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=5&sort=price:asc,name:desc")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        Mockito.verify(productService).getProducts(Mockito.isNull(), Mockito.eq(false), Mockito.any(),
+                Mockito.eq(PageRequest.of(0, 5, Sort.by(Sort.Order.asc("price"), Sort.Order.desc("name")))));
+    }
+
+    @Test
+    @DisplayName("Should fail when sortBy is combined with a multi-key sort")
+    void whenSortByIsCombinedWithMultiKeySort_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=5&sort=price:asc&sortBy=name")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("'sortBy' can not be combined with a multi-key 'sort'")
+                );
+    }
+
+    @Test
+    @DisplayName("Should return the requested products and the missing ids when ids are given")
+    void whenRequestingProductsByIds_thenBatchIsReturned() throws Exception {
+        Product product = TestUtils.createProduct();
+        Mockito.when(productService.getProductsByIds(List.of(0L, 7L))).thenReturn(new ProductBatch(List.of(product), List.of(7L)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?ids=0,7")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.products[0].id").value(0),
+                        MockMvcResultMatchers.jsonPath("$.missing[0]").value(7)
+                );
+        Mockito.verify(productService, Mockito.never()).exportProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should tag catalog pages with the catalog version")
+    void whenRequestingProducts_thenETagIsReturned() throws Exception {
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(List.of()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=5")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().string(HttpHeaders.ETAG, catalogVersion.etag())
+                );
+    }
+
+    @Test
+    @DisplayName("Should answer 304 without querying when the catalog has not changed")
+    void whenETagMatches_thenNotModifiedWithoutQuerying() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?query=lamp&pageNum=0&pageSize=5")
+                        .header(HttpHeaders.IF_NONE_MATCH, catalogVersion.etag())
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isNotModified(),
+                        MockMvcResultMatchers.content().string("")
+                );
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?ids=1,2")
+                        .header(HttpHeaders.IF_NONE_MATCH, catalogVersion.etag())
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        Mockito.verify(productService, Mockito.times(2)).hasReservations();
+        Mockito.verifyNoMoreInteractions(productService);
+    }
+
+    @Test
+    @DisplayName("Should report stock net of reservations and tag the listing by the stock it reports")
+    void whenStockIsReserved_thenListingReportsTheAvailableStock() throws Exception {
+        Product product = TestUtils.createProduct();
+        Product available = TestUtils.createProduct();
+        available.setStock(product.getStock() - 1);
+        Mockito.when(productService.hasReservations()).thenReturn(true);
+        Mockito.when(productService.withReservations(Mockito.any(ProductFilter.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(productService.withReservations(List.of(product))).thenReturn(List.of(available));
+        Mockito.when(productService.getProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any())).thenReturn(new SliceImpl<>(List.of(product)));
+
+        String etag = mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=5")
+                        .header(HttpHeaders.IF_NONE_MATCH, catalogVersion.etag())
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$[0].stock").value(available.getStock())
+                ).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assertions.assertNotEquals(catalogVersion.etag(), etag);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "?pageNum=0&pageSize=5")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Should answer with the full listing once the catalog has changed")
+    void whenCatalogChanged_thenETagNoLongerMatches() throws Exception {
+        String etag = catalogVersion.etag();
+        catalogVersion.increment();
+        mockExport(List.of(TestUtils.createProduct()));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                ).andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().string(HttpHeaders.ETAG, catalogVersion.etag()),
+                        MockMvcResultMatchers.jsonPath("$[0].name").value("TEST")
+                );
+    }
+
+    @Test
+    @DisplayName("Should write the cached JSON of a single product")
+    void whenRequestingAProduct_thenCachedJsonIsWritten() throws Exception {
+        Mockito.when(productService.getSerializedProduct(0L)).thenReturn(serialize(TestUtils.createProduct()));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + 0L)
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING),
+                        MockMvcResultMatchers.jsonPath("$.name").value("TEST")
+                );
+    }
+
+    @Test
+    @DisplayName("Should write the cached gzip bytes when the client accepts gzip")
+    void whenRequestingAProductWithGzip_thenCompressedBytesAreWritten() throws Exception {
+        ProductResponseCache.SerializedProduct product = serialize(TestUtils.createProduct());
+        Mockito.when(productService.getSerializedProduct(0L)).thenReturn(product);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + 0L)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"),
+                        MockMvcResultMatchers.content().bytes(product.gzip())
+                );
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + 0L)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0")
+                ).andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    @DisplayName("Should answer 304 when the product has not changed")
+    void whenProductETagMatches_thenNotModified() throws Exception {
+        ProductResponseCache.SerializedProduct product = serialize(TestUtils.createProduct());
+        Mockito.when(productService.getSerializedProduct(0L)).thenReturn(product);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + 0L)
+                        .header(HttpHeaders.IF_NONE_MATCH, '"' + product.hash() + '"')
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Should fail when fuzzy matching is requested without a query")
+    void whenFuzzyIsSetWithoutQuery_thenFail() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + String.format("?fuzzy=true&pageNum=%s&pageSize=%s", 0, 1))
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isBadRequest(),
+                        MockMvcResultMatchers.jsonPath("$.error").value("'fuzzy' requires a 'query'")
+                );
+    }
+
+    @Test
+    @DisplayName("Should return suggestions for a prefix")
+    void whenRequestingSuggestions_thenSuccess() throws Exception {
+        Mockito.when(productService.getSuggestions("lam", 10)).thenReturn(List.of(new ProductSuggestionIndex.Suggestion(1L, "Lamp")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "suggest?prefix=lam")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$[0].id").value(1),
+                        MockMvcResultMatchers.jsonPath("$[0].name").value("Lamp")
+                );
+    }
+
+    private static ProductResponseCache.SerializedProduct serialize(Product product) {
+        return TestUtils.createProductResponseCache().get(product.getId(), id -> product);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockExport(List<Product> products) {
+        Mockito.doAnswer(invocation -> {
+            products.forEach(invocation.getArgument(4, Consumer.class));
+            return null;
+        }).when(productService).exportProducts(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
     @Test
     @DisplayName("Should success when creating a new product")
     void whenCreatingProduct_thenSuccess() throws Exception {
@@ -220,4 +619,98 @@ class ProductControllerTest {
         Mockito.verify(productService).deleteProduct(Mockito.anyLong());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should success when striping the stock of a product")
+    void whenStripingTheStockOfAProduct_thenSuccess() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put(URL + 0L + "/stock-stripes")
+                        .param("count", "8")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isNoContent(),
+                        MockMvcResultMatchers.jsonPath("$").doesNotExist()
+                );
+        Mockito.verify(productService).stripeStock(0L, 8);
+    }
+
+    @Test
+    @DisplayName("Should return the stock of a product according to the inventory ledger")
+    void whenGettingTheInventoryLevel_thenSuccess() throws Exception {
+        Mockito.when(productService.getInventoryLevel(1L)).thenReturn(new InventoryLedger.InventoryLevel(1L, 7, 9, 42));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + 1L + "/inventory")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.stock").value(7),
+                        MockMvcResultMatchers.jsonPath("$.snapshotStock").value(9)
+                );
+    }
+
+    @Test
+    @DisplayName("Should success when recording a stock receipt")
+    void whenRecordingAStockReceipt_thenSuccess() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL + 1L + "/inventory")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\": \"receipt\", \"quantity\": 12}")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isNoContent(),
+                        MockMvcResultMatchers.jsonPath("$").doesNotExist()
+                );
+        Mockito.verify(productService).recordMovement(1L, MovementType.RECEIPT, 12);
+    }
+
+    @Test
+    @DisplayName("Should fail when recording a movement without quantity")
+    void whenRecordingAMovementWithoutQuantity_thenBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL + 1L + "/inventory")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\": \"adjustment\"}")
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        Mockito.verifyNoInteractions(productService);
+    }
+
+    @Test
+    @DisplayName("Should return the outcome of an inventory rebuild")
+    void whenRebuildingTheInventory_thenSuccess() throws Exception {
+        Mockito.when(productService.rebuildInventory()).thenReturn(new InventoryLedger.RebuildResult(3, 40, 40, 5));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post(URL + "inventory/rebuild")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.products").value(3),
+                        MockMvcResultMatchers.jsonPath("$.movements").value(40)
+                );
+    }
+
+    @Test
+    @DisplayName("Should return the product changes after a version")
+    void whenGettingChanges_thenSuccess() throws Exception {
+        Product product = TestUtils.createProduct();
+        Mockito.when(productService.getChanges(4L, 2)).thenReturn(new ProductChanges(List.of(
+                new ProductChanges.Change(5L, product.getId(), false, product),
+                new ProductChanges.Change(6L, 9L, true, null)
+        ), 6L, false));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get(URL + "changes")
+                        .param("since", "4")
+                        .param("limit", "2")
+                        .accept(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.log())
+                .andExpectAll(
+                        MockMvcResultMatchers.status().isOk(),
+                        MockMvcResultMatchers.jsonPath("$.next").value(6),
+                        MockMvcResultMatchers.jsonPath("$.changes[0].product.name").value(product.getName()),
+                        MockMvcResultMatchers.jsonPath("$.changes[1].deleted").value(true),
+                        MockMvcResultMatchers.jsonPath("$.changes[1].product").doesNotExist()
+                );
+    }
+
+}
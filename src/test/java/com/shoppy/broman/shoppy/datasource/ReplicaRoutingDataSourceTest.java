@@ -0,0 +1,144 @@
+package com.shoppy.broman.shoppy.datasource;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.config.DataSourceConfiguration;
+import com.shoppy.datasource.PrimaryPinFilter;
+import com.shoppy.datasource.ReplicaRoutingDataSource;
+import com.shoppy.model.Product;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.service.ProductService;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Two H2 databases play the primary and the replica. Hibernate only creates the schema on the primary, the replica
+ * gets a products table holding a single product of its own, so every read shows where it was routed.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "shoppy.datasource.replica.jdbc-url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1",
+        "shoppy.datasource.replica.username=sa"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReplicaRoutingDataSourceTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("create table if not exists products (id bigint primary key, name varchar(255) not null, description varchar(255) not null, price double not null, stock integer not null)");
+        replica.update("delete from products");
+        replica.update("insert into products values (1, 'Replica', 'Replica product', 1.0, 1)");
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        productRepository.save(new Product(null, "Primary", "Primary product", 1.0, 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void whenTheTransactionIsReadOnly_thenItReadsFromTheReplica() {
+        MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Replica"));
+        MatcherAssert.assertThat(new TransactionTemplate(transactionManager).execute(status -> names()), Matchers.contains("Primary"));
+    }
+
+    @Test
+    void whenARequestWrote_thenItsReadOnlyTransactionsReadFromThePrimary() throws Exception {
+        new PrimaryPinFilter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), (request, response) -> {
+            MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Replica"));
+            productRepository.save(new Product(null, "Written", "Written product", 1.0, 1));
+            MatcherAssert.assertThat(readOnlyNames(), Matchers.containsInAnyOrder("Primary", "Written"));
+        });
+
+        MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Replica"));
+    }
+
+    @Test
+    void whenAWriteHappensOutsideARequest_thenReadOnlyTransactionsStayOnTheReplica() {
+        productRepository.save(new Product(null, "Written", "Written product", 1.0, 1));
+
+        MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Replica"));
+    }
+
+    @Test
+    void whenWorkRunsOnThePrimary_thenReadOnlyTransactionsReadFromThePrimary() {
+        MatcherAssert.assertThat(ReplicaRoutingDataSource.onPrimary(this::readOnlyNames), Matchers.contains("Primary"));
+        MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Replica"));
+    }
+
+    @Test
+    void whenAnEvictedProductIsReloaded_thenItIsReadFromThePrimary() {
+        ProductService productService = TestUtils.createProductService(productRepository);
+        Product product = productRepository.save(new Product(null, "Primary", "Primary product", 1.0, 1));
+        new JdbcTemplate(replicaDataSource).update("update products set id = ?, name = 'Stale'", product.getId());
+        Assertions.assertEquals("Primary", productService.getProductById(product.getId()).getName());
+
+        product.setName("Updated");
+        productRepository.save(product);
+        productService.stockChanged(List.of(product.getId()));
+
+        Assertions.assertEquals("Updated", productService.getProductById(product.getId()).getName());
+        Assertions.assertEquals("Updated", productService.getProductsById(List.of(product.getId())).get(product.getId()).getName());
+        MatcherAssert.assertThat(readOnlyNames(), Matchers.contains("Stale"));
+    }
+
+    @Test
+    void eachDatabaseHasItsOwnNamedPool() {
+        Assertions.assertEquals("primary", primaryDataSource.getPoolName());
+        Assertions.assertEquals("replica", replicaDataSource.getPoolName());
+        Assertions.assertTrue(replicaDataSource.isReadOnly());
+    }
+
+    private List<String> readOnlyNames() {
+        return readOnlyTransaction.execute(status -> names());
+    }
+
+    private List<String> names() {
+        return productRepository.findAll().stream().map(Product::getName).toList();
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.shoppy.broman.shoppy.inventory;
+
+import com.shoppy.inventory.HierarchicalTimingWheel;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+class HierarchicalTimingWheelTest {
+
+    private final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 4, 0);
+
+    @Test
+    void whenAdvancingPastADeadline_thenTheTimeoutExpiresOnItsTick() {
+        wheel.schedule("a", 25);
+        wheel.schedule("b", 30);
+
+        MatcherAssert.assertThat(wheel.advance(29), Matchers.empty());
+        MatcherAssert.assertThat(wheel.advance(30), Matchers.containsInAnyOrder("a", "b"));
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void whenATimeoutIsBeyondTheFirstLevel_thenItCascadesDownAndExpiresOnTime() {
+        wheel.schedule("late", 1_230);
+
+        MatcherAssert.assertThat(wheel.advance(1_229), Matchers.empty());
+        MatcherAssert.assertThat(wheel.advance(1_230), Matchers.contains("late"));
+    }
+
+    @Test
+    void whenATimeoutIsCancelled_thenItNeverExpires() {
+        HierarchicalTimingWheel.Timeout<String> timeout = wheel.schedule("a", 500);
+
+        Assertions.assertTrue(wheel.cancel(timeout));
+        Assertions.assertFalse(wheel.cancel(timeout));
+        MatcherAssert.assertThat(wheel.advance(1_000), Matchers.empty());
+    }
+
+    @Test
+    void whenTheDeadlineHasPassed_thenTheTimeoutExpiresOnTheNextTick() {
+        wheel.advance(100);
+        wheel.schedule("past", 20);
+
+        MatcherAssert.assertThat(wheel.advance(110), Matchers.contains("past"));
+    }
+
+    @Test
+    void whenManyTimeoutsAreScheduled_thenEachExpiresOnTheTickOfItsDeadline() {
+        Random random = new Random(42);
+        Map<String, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = 1 + random.nextInt(50_000);
+            deadlines.put("t" + i, deadline);
+            wheel.schedule("t" + i, deadline);
+        }
+        List<String> expired = new ArrayList<>();
+        for (long now = 0; now <= 50_000; now += 10 + random.nextInt(200)) {
+            for (String value : wheel.advance(now)) {
+                long tick = (deadlines.get(value) + 9) / 10 * 10;
+                Assertions.assertTrue(tick <= now, value + " expired early");
+                Assertions.assertTrue(tick > now - 210, value + " expired late");
+                expired.add(value);
+            }
+        }
+        expired.addAll(wheel.advance(50_010));
+        Assertions.assertEquals(deadlines.size(), expired.size());
+    }
+
+}
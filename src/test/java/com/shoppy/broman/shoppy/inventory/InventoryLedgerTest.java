@@ -0,0 +1,212 @@
+package com.shoppy.broman.shoppy.inventory;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.enumeration.MovementType;
+import com.shoppy.inventory.InventoryLedger;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+import com.shoppy.repository.InventoryMovementRepository;
+import com.shoppy.repository.InventorySnapshotRepository;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.StockStripeRepository;
+import com.shoppy.service.ProductService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryLedgerTest {
+
+    @Autowired
+    private InventoryMovementRepository movementRepository;
+
+    @Autowired
+    private InventorySnapshotRepository snapshotRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockStripeRepository stripeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private InventoryLedger ledger;
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        ledger = TestUtils.createInventoryLedger(movementRepository, snapshotRepository, transactionManager);
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        movementRepository.deleteAllInBatch();
+        snapshotRepository.deleteAllInBatch();
+        stripeRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void whenMovementsAreRecordedInATransaction_thenTheyAreWrittenOnCommit() {
+        transaction.executeWithoutResult(status -> {
+            ledger.record(MovementType.RECEIPT, 1L, 10);
+            ledger.record(MovementType.SALE, 1L, -2);
+            ledger.record(MovementType.SALE, 2L, -1);
+            Assertions.assertEquals(0, movementRepository.count());
+        });
+
+        Assertions.assertEquals(3, movementRepository.count());
+    }
+
+    @Test
+    void whenTheTransactionRollsBack_thenNothingIsWritten() {
+        transaction.executeWithoutResult(status -> {
+            ledger.record(MovementType.RECEIPT, 1L, 10);
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertEquals(0, movementRepository.count());
+    }
+
+    @Test
+    void whenASnapshotIsTaken_thenTheLevelIsTheSnapshotPlusLaterMovements() {
+        ledger.record(MovementType.RECEIPT, 1L, 10);
+        ledger.record(MovementType.SALE, 1L, -3);
+
+        Assertions.assertEquals(1, ledger.snapshot());
+        ledger.record(MovementType.SALE, 1L, -2);
+
+        InventoryLedger.InventoryLevel level = ledger.level(1L);
+        Assertions.assertEquals(5, level.stock());
+        Assertions.assertEquals(7, level.snapshotStock());
+        Assertions.assertEquals(1, ledger.snapshot());
+        Assertions.assertEquals(5, ledger.level(1L).snapshotStock());
+    }
+
+    @Test
+    void whenTheLedgerIsRebuilt_thenEveryProductGetsTheSameStock() {
+        Map<Long, Long> expected = new HashMap<>();
+        for (long productId = 1; productId <= 7; productId++) {
+            ledger.record(MovementType.RECEIPT, productId, (int) (10 * productId));
+            ledger.record(MovementType.SALE, productId, -1);
+            ledger.record(MovementType.ADJUSTMENT, productId, (int) -productId);
+            expected.put(productId, 10 * productId - 1 - productId);
+        }
+        ledger.snapshot();
+        ledger.record(MovementType.SALE, 3L, -4);
+        expected.merge(3L, -4L, Long::sum);
+
+        InventoryLedger.RebuildResult result = ledger.rebuild();
+
+        Assertions.assertEquals(7, result.products());
+        Assertions.assertEquals(22, result.movements());
+        expected.forEach((productId, stock) -> {
+            InventoryLedger.InventoryLevel level = ledger.level(productId);
+            Assertions.assertEquals(stock, level.stock());
+            Assertions.assertEquals(stock, level.snapshotStock());
+        });
+    }
+
+    @Test
+    void whenAProductIsClosed_thenItsSnapshotIsDroppedAndTheRebuildSkipsIt() {
+        ledger.record(MovementType.RECEIPT, 1L, 10);
+        ledger.record(MovementType.RECEIPT, 2L, 4);
+        ledger.snapshot();
+
+        ledger.close(1L, 10);
+
+        Assertions.assertEquals(0, ledger.level(1L).stock());
+        Assertions.assertEquals(1, ledger.snapshot());
+        Assertions.assertFalse(snapshotRepository.existsById(1L));
+        Assertions.assertEquals(1, ledger.rebuild().products());
+        Assertions.assertFalse(snapshotRepository.existsById(1L));
+        Assertions.assertEquals(4, ledger.level(2L).stock());
+    }
+
+    @Test
+    void whenStockChangesGoThroughTheProductService_thenTheLedgerMatchesTheProducts() {
+        StockStripes stockStripes = new StockStripes(stripeRepository);
+        ProductService productService = TestUtils.createProductService(productRepository, stockStripes, ledger);
+        Product lamp = newProduct(5);
+        Product chair = newProduct(8);
+        Product table = newProduct(3);
+        transaction.executeWithoutResult(status -> List.of(lamp, chair, table).forEach(productService::addProduct));
+
+        transaction.executeWithoutResult(status -> productService.recordMovement(lamp.getId(), MovementType.RECEIPT, 4));
+        transaction.executeWithoutResult(status -> productService.stripeStock(chair.getId(), 3));
+        transaction.executeWithoutResult(status -> productService.decrementStock(List.of(newItem(lamp, 2), newItem(chair, 5))));
+        transaction.executeWithoutResult(status -> productService.updateProduct(table.getId(), newProduct(10)));
+        transaction.executeWithoutResult(status -> productService.deleteProduct(lamp.getId()));
+        transaction.executeWithoutResult(status -> stockStripes.updateProductStock(stockStripes.drainChanged()));
+
+        for (Product product : List.of(chair, table)) {
+            Assertions.assertEquals((long) productRepository.findById(product.getId()).orElseThrow().getStock(), ledger.level(product.getId()).stock());
+        }
+        Assertions.assertEquals(0, ledger.level(lamp.getId()).stock());
+        ledger.rebuild();
+        for (Product product : List.of(chair, table)) {
+            Assertions.assertEquals((long) productRepository.findById(product.getId()).orElseThrow().getStock(), ledger.level(product.getId()).snapshotStock());
+        }
+        Assertions.assertFalse(snapshotRepository.existsById(lamp.getId()));
+    }
+
+    @Test
+    void whenAStripedProductIsDeleted_thenItsStripesAreRemoved() {
+        StockStripes stockStripes = new StockStripes(stripeRepository);
+        ProductService productService = TestUtils.createProductService(productRepository, stockStripes, ledger);
+        Product chair = newProduct(8);
+        transaction.executeWithoutResult(status -> productService.addProduct(chair));
+        transaction.executeWithoutResult(status -> productService.stripeStock(chair.getId(), 3));
+
+        transaction.executeWithoutResult(status -> productService.deleteProduct(chair.getId()));
+
+        Assertions.assertEquals(0, stockStripes.count(chair.getId()));
+        Assertions.assertEquals(0, ledger.level(chair.getId()).stock());
+    }
+
+    @Test
+    void whenProductsPredateTheLedger_thenTheirStockIsOpened() {
+        Product product = TestUtils.createProduct();
+        product.setId(null);
+        product.setStock(5);
+        product = productRepository.save(product);
+
+        ledger.openBalances();
+        ledger.openBalances();
+
+        Assertions.assertEquals(1, movementRepository.count());
+        Assertions.assertEquals(5, ledger.level(product.getId()).stock());
+    }
+
+    private static Product newProduct(int stock) {
+        Product product = TestUtils.createProduct();
+        product.setId(null);
+        product.setStock(stock);
+        return product;
+    }
+
+    private static Item newItem(Product product, int quantity) {
+        Item item = TestUtils.createItem(product);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+}
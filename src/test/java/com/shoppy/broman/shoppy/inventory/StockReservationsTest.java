@@ -0,0 +1,120 @@
+package com.shoppy.broman.shoppy.inventory;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.exception.APIException;
+import com.shoppy.inventory.StockReservations;
+import com.shoppy.model.Product;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StockReservationsTest {
+
+    private final ProductResponseCache responseCache = TestUtils.createProductResponseCache();
+    private final StockReservations reservations = TestUtils.createStockReservations(true, responseCache);
+    private final Product product = createProduct(10);
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+
+    @Test
+    void whenStockIsReserved_thenTheCatalogReportsTheRest() {
+        reservations.reserve(first, product, 4);
+
+        Assertions.assertEquals(6, reservations.available(product).getStock());
+        Assertions.assertEquals(10, product.getStock());
+    }
+
+    @Test
+    void whenNothingIsReserved_thenTheProductIsReturnedAsIs() {
+        Assertions.assertSame(product, reservations.available(product));
+    }
+
+    @Test
+    void whenOtherCheckoutsHoldTheStock_thenReservingFailsWithConflict() {
+        reservations.reserve(first, product, 8);
+
+        APIException exception = Assertions.assertThrows(APIException.class, () -> reservations.reserve(second, product, 3));
+        Assertions.assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        Assertions.assertEquals(8, reservations.reserved(product.getId()));
+    }
+
+    @Test
+    void whenACheckoutReservesAgain_thenItsPreviousReservationIsReplaced() {
+        reservations.reserve(first, product, 8);
+        reservations.reserve(first, product, 10);
+        reservations.reserve(first, product, 2);
+
+        Assertions.assertEquals(2, reservations.reserved(product.getId()));
+    }
+
+    @Test
+    void whenAReservationIsReleased_thenTheStockIsAvailableAgain() {
+        reservations.reserve(first, product, 8);
+        reservations.release(first, List.of(product.getId()));
+
+        reservations.reserve(second, product, 10);
+        Assertions.assertEquals(10, reservations.reserved(product.getId()));
+    }
+
+    @Test
+    void whenReservationsExpire_thenTheyAreReleasedTogether() {
+        Product other = createProduct(5);
+        other.setId(2L);
+        reservations.reserve(first, product, 3);
+        reservations.reserve(second, other, 5);
+
+        reservations.expire(System.currentTimeMillis() + 60_000);
+        Assertions.assertEquals(3, reservations.reserved(product.getId()));
+
+        reservations.expire(System.currentTimeMillis() + 16 * 60_000);
+        Assertions.assertEquals(0, reservations.reserved(product.getId()));
+        Assertions.assertEquals(0, reservations.reserved(other.getId()));
+    }
+
+    @Test
+    void whenHoldsAreRestored_thenTheyAreAsTheyWere() {
+        Product other = createProduct(5);
+        other.setId(2L);
+        reservations.reserve(first, product, 3);
+        Map<Long, Integer> held = reservations.held(first, List.of(product.getId(), other.getId()));
+
+        reservations.reserve(first, product, 7);
+        reservations.reserve(first, other, 2);
+        reservations.restore(first, List.of(product.getId(), other.getId()), held);
+
+        Assertions.assertEquals(Map.of(product.getId(), 3), reservations.held(first, List.of(product.getId(), other.getId())));
+        Assertions.assertEquals(3, reservations.reserved(product.getId()));
+        Assertions.assertEquals(0, reservations.reserved(other.getId()));
+    }
+
+    @Test
+    void whenStockIsReserved_thenOnlyTheDetailOfThatProductIsEvicted() {
+        Product other = createProduct(5);
+        other.setId(2L);
+        AtomicInteger loads = new AtomicInteger();
+        responseCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        responseCache.get(other.getId(), id -> { loads.incrementAndGet(); return other; });
+
+        reservations.reserve(first, product, 3);
+        responseCache.get(product.getId(), id -> { loads.incrementAndGet(); return product; });
+        responseCache.get(other.getId(), id -> { loads.incrementAndGet(); return other; });
+
+        Assertions.assertEquals(3, loads.get());
+    }
+
+    private static Product createProduct(int stock) {
+        Product product = TestUtils.createProduct();
+        product.setId(1L);
+        product.setStock(stock);
+        return product;
+    }
+
+}
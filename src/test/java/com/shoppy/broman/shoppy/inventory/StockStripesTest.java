@@ -0,0 +1,108 @@
+package com.shoppy.broman.shoppy.inventory;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Product;
+import com.shoppy.model.StockStripe;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.StockStripeRepository;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import javax.persistence.EntityManager;
+
+import java.util.List;
+import java.util.Set;
+
+@DataJpaTest
+class StockStripesTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockStripeRepository stripeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private StockStripes stockStripes;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        stockStripes = new StockStripes(stripeRepository);
+        product = TestUtils.createProduct();
+        product.setId(null);
+        product.setStock(10);
+        product = productRepository.save(product);
+        stockStripes.stripe(product, 4);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void whenStriping_thenTheStockIsSpreadEvenly() {
+        MatcherAssert.assertThat(stocks(), Matchers.contains(3, 3, 2, 2));
+        Assertions.assertEquals(4, stockStripes.count(product.getId()));
+    }
+
+    @Test
+    void whenProductIsNotStriped_thenDecrementLeavesItToTheProductRow() {
+        Assertions.assertEquals(StockStripes.Outcome.NOT_STRIPED, stockStripes.decrement(product.getId() + 1, 1));
+    }
+
+    @Test
+    void whenStripesRunDry_thenDecrementsMoveToTheOthers() {
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(StockStripes.Outcome.DECREMENTED, stockStripes.decrement(product.getId(), 2));
+        }
+        entityManager.clear();
+        Assertions.assertEquals(2, stocks().stream().mapToInt(Integer::intValue).sum());
+        MatcherAssert.assertThat(stocks(), Matchers.everyItem(Matchers.lessThan(2)));
+    }
+
+    @Test
+    void whenNoSingleStripeHoldsTheQuantity_thenSeveralStripesAreDrained() {
+        Assertions.assertEquals(StockStripes.Outcome.DECREMENTED, stockStripes.decrement(product.getId(), 7));
+        entityManager.flush();
+        entityManager.clear();
+        Assertions.assertEquals(3, stocks().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void whenAllStripesTogetherAreShort_thenNothingIsTaken() {
+        Assertions.assertEquals(StockStripes.Outcome.SHORT, stockStripes.decrement(product.getId(), 11));
+        entityManager.clear();
+        Assertions.assertEquals(10, stocks().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void whenProductStockIsUpdated_thenItCarriesTheSumOfTheStripes() {
+        stockStripes.decrement(product.getId(), 3);
+        stockStripes.updateProductStock(Set.of(product.getId()));
+        entityManager.clear();
+
+        Assertions.assertEquals(7, productRepository.findById(product.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void whenStripingWithOneStripe_thenTheStripesAreRemoved() {
+        stockStripes.stripe(productRepository.findById(product.getId()).orElseThrow(), 1);
+
+        Assertions.assertEquals(0, stockStripes.count(product.getId()));
+    }
+
+    private List<Integer> stocks() {
+        return stripeRepository.findByProductIdForUpdate(product.getId()).stream().map(StockStripe::getStock).toList();
+    }
+
+}
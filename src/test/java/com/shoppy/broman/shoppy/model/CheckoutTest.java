@@ -0,0 +1,123 @@
+package com.shoppy.broman.shoppy.model;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class CheckoutTest {
+
+    @Test
+    @DisplayName("Should find, update and delete lines by product id in a large cart")
+    void whenMutatingALargeCart_thenLinesAreFoundByProductId() {
+        Checkout checkout = new Checkout();
+        for (long id = 0; id < 5000; id++) {
+            checkout.addItem(createItem(id * 64, 1));
+        }
+
+        checkout.updateItem(createItem(640, 7));
+        Assertions.assertEquals(7, checkout.findItemByProductId(640L).getQuantity());
+
+        for (long id = 0; id < 5000; id += 2) {
+            Assertions.assertTrue(checkout.deleteItemByProductId(id * 64));
+        }
+        Assertions.assertEquals(2500, checkout.getItems().size());
+        for (long id = 0; id < 5000; id++) {
+            Assertions.assertEquals(id % 2 == 1, checkout.containsProduct(id * 64));
+        }
+        Assertions.assertFalse(checkout.deleteItemByProductId(0L));
+        Assertions.assertNull(checkout.findItemByProductId(null));
+    }
+
+    @Test
+    @DisplayName("Should reject a second line of the same product")
+    void whenAddingADuplicatedProduct_thenConflict() {
+        Checkout checkout = new Checkout();
+        checkout.addItem(createItem(1, 1));
+
+        APIException exception = Assertions.assertThrows(APIException.class, () -> checkout.addItem(createItem(1, 2)));
+        Assertions.assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        Assertions.assertEquals(1, checkout.getItems().size());
+    }
+
+    @Test
+    @DisplayName("Should notice lines changed without going through the checkout")
+    void whenItemsAreChangedDirectly_thenTheIndexFollows() {
+        Checkout checkout = new Checkout();
+        checkout.addItem(createItem(1, 1));
+        checkout.getItems().add(createItem(2, 1));
+        Assertions.assertTrue(checkout.containsProduct(2L));
+
+        checkout.setItems(new ArrayList<>(List.of(createItem(3, 1))));
+        Assertions.assertFalse(checkout.containsProduct(1L));
+        Assertions.assertTrue(checkout.containsProduct(3L));
+    }
+
+    @Test
+    @DisplayName("Should notice lines replaced without changing the number of lines")
+    void whenItemsAreReplacedInPlace_thenTheIndexFollows() {
+        Checkout checkout = new Checkout();
+        checkout.addItem(createItem(1, 1));
+        checkout.addItem(createItem(2, 1));
+        Assertions.assertTrue(checkout.containsProduct(1L));
+
+        checkout.getItems().set(0, createItem(3, 1));
+        Assertions.assertFalse(checkout.containsProduct(1L));
+        Assertions.assertTrue(checkout.containsProduct(3L));
+
+        Product product = TestUtils.createProduct();
+        product.setId(4L);
+        checkout.findItemByProductId(2L).setProduct(product);
+        Assertions.assertFalse(checkout.containsProduct(2L));
+        Assertions.assertSame(checkout.getItems().get(1), checkout.findItemByProductId(4L));
+
+        checkout.getItems().removeIf(item -> item.getProduct().getId() == 3L);
+        checkout.getItems().add(createItem(5, 1));
+        Assertions.assertFalse(checkout.containsProduct(3L));
+        Assertions.assertTrue(checkout.containsProduct(5L));
+    }
+
+    @Test
+    @DisplayName("Should agree with a linear scan over random mutations")
+    void whenMutatingRandomly_thenTheIndexMatchesTheItems() {
+        Random random = new Random(42);
+        Checkout checkout = new Checkout();
+        for (int i = 0; i < 20000; i++) {
+            long productId = random.nextInt(300);
+            if (random.nextBoolean()) {
+                if (!checkout.containsProduct(productId)) {
+                    checkout.addItem(createItem(productId, 1));
+                }
+            }
+            else {
+                boolean present = checkout.getItems().stream().anyMatch(item -> item.getProduct().getId() == productId);
+                Assertions.assertEquals(present, checkout.deleteItemByProductId(productId));
+            }
+        }
+        for (long productId = 0; productId < 300; productId++) {
+            long id = productId;
+            Item expected = checkout.getItems().stream().filter(item -> item.getProduct().getId() == id).findFirst().orElse(null);
+            Assertions.assertSame(expected, checkout.findItemByProductId(productId));
+        }
+    }
+
+    private static Item createItem(long productId, int quantity) {
+        Product product = TestUtils.createProduct();
+        product.setId(productId);
+        Item item = TestUtils.createItem(product);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+}
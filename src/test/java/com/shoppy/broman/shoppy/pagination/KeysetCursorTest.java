@@ -0,0 +1,56 @@
+package com.shoppy.broman.shoppy.pagination;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetCursor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+class KeysetCursorTest {
+
+    @Test
+    void whenSortHasNoId_thenIdIsAppendedWithLastDirection() {
+        Sort sort = KeysetCursor.withTiebreaker(Sort.by(Sort.Order.desc("price")));
+        Assertions.assertEquals(Sort.by(Sort.Order.desc("price"), Sort.Order.desc("id")), sort);
+    }
+
+    @Test
+    void whenSortIsUnsorted_thenIdAscendingIsUsed() {
+        Assertions.assertEquals(Sort.by(Sort.Order.asc("id")), KeysetCursor.withTiebreaker(Sort.unsorted()));
+    }
+
+    @Test
+    void whenCursorIsEncoded_thenDecodingRestoresTheKeys() {
+        Product product = TestUtils.createProduct();
+        product.setId(42L);
+        Sort sort = KeysetCursor.withTiebreaker(Sort.by(Sort.Order.asc("stock")));
+
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of(sort, product).encode(), sort);
+
+        Assertions.assertEquals(List.of(100, 42L), cursor.getKeys());
+    }
+
+    @Test
+    void whenCursorBelongsToAnotherSort_thenException() {
+        Product product = TestUtils.createProduct();
+        String cursor = KeysetCursor.of(KeysetCursor.withTiebreaker(Sort.by(Sort.Order.asc("price"))), product).encode();
+        Sort sort = KeysetCursor.withTiebreaker(Sort.by(Sort.Order.asc("name")));
+
+        APIException exception = Assertions.assertThrows(APIException.class, () -> KeysetCursor.decode(cursor, sort));
+        Assertions.assertEquals("Cursor does not match the requested sort", exception.getMessage());
+    }
+
+    @Test
+    void whenCursorIsGarbage_thenException() {
+        Sort sort = KeysetCursor.withTiebreaker(Sort.unsorted());
+        APIException exception = Assertions.assertThrows(APIException.class, () -> KeysetCursor.decode("not a cursor", sort));
+        Assertions.assertEquals("Invalid cursor", exception.getMessage());
+    }
+
+}
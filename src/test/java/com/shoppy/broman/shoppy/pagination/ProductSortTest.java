@@ -0,0 +1,93 @@
+package com.shoppy.broman.shoppy.pagination;
+
+import com.shoppy.enumeration.SortProperty;
+import com.shoppy.exception.APIException;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetCursor;
+import com.shoppy.pagination.ProductSort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ProductSortTest {
+
+    @Test
+    void whenParsingSeveralKeys_thenOrdersKeepTheirDirection() {
+        Assertions.assertEquals(Sort.by(Sort.Order.asc("price"), Sort.Order.desc("name")), ProductSort.parse("price:asc,name:DESC"));
+    }
+
+    @Test
+    void whenAPropertyIsRepeated_thenException() {
+        APIException exception = Assertions.assertThrows(APIException.class, () -> ProductSort.parse("price:asc,price:desc"));
+        Assertions.assertEquals("Duplicated sorting property: price", exception.getMessage());
+    }
+
+    @Test
+    void whenTooManyKeysAreGiven_thenException() {
+        Assertions.assertThrows(APIException.class, () -> ProductSort.parse("price:asc,name:desc,stock:asc"));
+    }
+
+    @Test
+    void whenAKeyIsMalformed_thenException() {
+        APIException invalidKey = Assertions.assertThrows(APIException.class, () -> ProductSort.parse("price:asc,name"));
+        Assertions.assertEquals("Invalid sorting key: name", invalidKey.getMessage());
+        APIException unknownMethod = Assertions.assertThrows(APIException.class, () -> ProductSort.parse("price:up"));
+        Assertions.assertEquals("Unknown sorting method: up", unknownMethod.getMessage());
+    }
+
+    @Test
+    void whenASortDoesNotPairStock_thenAnIndexServesIt() {
+        List<List<String>> indexes = Arrays.stream(Product.class.getAnnotation(Table.class).indexes()).map(ProductSortTest::columns).toList();
+        for (Sort sort : indexedSorts()) {
+            List<String> expected = KeysetCursor.withTiebreaker(sort).stream().map(order -> order.getProperty() + ' ' + order.getDirection()).toList();
+            List<String> reversed = KeysetCursor.withTiebreaker(sort).stream().map(order -> order.getProperty() + ' ' + (order.isAscending() ? Sort.Direction.DESC : Sort.Direction.ASC)).toList();
+            Assertions.assertTrue(indexes.contains(expected) || indexes.contains(reversed), "No index serves " + sort);
+        }
+    }
+
+    /**
+     * Index columns with their direction, followed by the primary key InnoDB appends when it is not listed.
+     */
+    private static List<String> columns(Index index) {
+        List<String> columns = new ArrayList<>();
+        for (String column : index.columnList().split(",")) {
+            String[] parts = column.trim().split("\\s+");
+            columns.add(parts[0] + ' ' + (parts.length > 1 ? parts[1].toUpperCase() : Sort.Direction.ASC));
+        }
+        if (columns.stream().noneMatch(column -> column.startsWith("id "))) {
+            columns.add("id " + Sort.Direction.ASC);
+        }
+        return columns;
+    }
+
+    /**
+     * Allowed sorts, leaving out the two key sorts involving stock, which are deliberately not indexed.
+     */
+    private static List<Sort> indexedSorts() {
+        List<Sort> sorts = new ArrayList<>();
+        for (SortProperty first : SortProperty.values()) {
+            for (Sort.Direction firstDirection : Sort.Direction.values()) {
+                Sort.Order firstOrder = Sort.Order.by(first.getProperty()).with(firstDirection);
+                sorts.add(Sort.by(firstOrder));
+                for (SortProperty second : SortProperty.values()) {
+                    for (Sort.Direction secondDirection : Sort.Direction.values()) {
+                        if (second != first && first != SortProperty.STOCK && second != SortProperty.STOCK) {
+                            sorts.add(Sort.by(firstOrder, Sort.Order.by(second.getProperty()).with(secondDirection)));
+                        }
+                    }
+                }
+            }
+        }
+        return sorts;
+    }
+
+}
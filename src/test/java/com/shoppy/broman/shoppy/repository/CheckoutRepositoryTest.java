@@ -0,0 +1,83 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+import com.shoppy.repository.CheckoutRepository;
+
+import org.hibernate.Hibernate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import javax.persistence.EntityManager;
+
+import java.util.Optional;
+
+@DataJpaTest
+class CheckoutRepositoryTest {
+
+    @Autowired
+    private CheckoutRepository checkoutRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        Checkout checkout = new Checkout();
+        checkout.setAddress(TestUtils.createAddress());
+        checkout.setPaymentMethod(TestUtils.createPaymentMethod());
+        entityManager.persist(checkout.getAddress());
+        entityManager.persist(checkout.getPaymentMethod());
+        for (int i = 0; i < 3; i++) {
+            Product product = TestUtils.createProduct();
+            product.setId(null);
+            product.setName("Product #" + i);
+            entityManager.persist(product);
+            Item item = TestUtils.createItem(product);
+            item.setId(null);
+            checkout.addItem(item);
+        }
+        entityManager.persist(createCustomer("alice", checkout));
+        entityManager.persist(createCustomer("bob", null));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    @DisplayName("Should fetch the checkout with its items, products, address and payment method at once")
+    void whenFindingTheCurrentCheckout_thenEverythingItReferencesIsLoaded() {
+        Checkout checkout = checkoutRepository.findCurrentCheckoutByUsername("alice").orElseThrow();
+
+        Assertions.assertTrue(Hibernate.isInitialized(checkout.getItems()));
+        Assertions.assertEquals(3, checkout.getItems().size());
+        checkout.getItems().forEach(item -> Assertions.assertTrue(Hibernate.isInitialized(item.getProduct())));
+        Assertions.assertTrue(Hibernate.isInitialized(checkout.getAddress()));
+        Assertions.assertTrue(Hibernate.isInitialized(checkout.getPaymentMethod()));
+    }
+
+    @Test
+    @DisplayName("Should find nothing for customers without a checkout or unknown usernames")
+    void whenThereIsNoCurrentCheckout_thenNothingIsFound() {
+        Assertions.assertEquals(Optional.empty(), checkoutRepository.findCurrentCheckoutByUsername("bob"));
+        Assertions.assertEquals(Optional.empty(), checkoutRepository.findCurrentCheckoutByUsername("carol"));
+    }
+
+    private static Customer createCustomer(String username, Checkout checkout) {
+        return Customer.builder()
+                .username(username)
+                .name("Test")
+                .surname("Test")
+                .currentCheckout(checkout)
+                .build();
+    }
+
+}
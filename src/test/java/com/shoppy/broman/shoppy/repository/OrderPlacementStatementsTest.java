@@ -0,0 +1,135 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cart.JpaCartStore;
+import com.shoppy.inventory.InventoryLedger;
+import com.shoppy.inventory.StockReservations;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Address;
+import com.shoppy.model.CardPaymentMethod;
+import com.shoppy.model.Checkout;
+import com.shoppy.model.Customer;
+import com.shoppy.model.Product;
+import com.shoppy.repository.CheckoutRepository;
+import com.shoppy.repository.CustomerRepository;
+import com.shoppy.repository.InventoryMovementRepository;
+import com.shoppy.repository.InventorySnapshotRepository;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.StockStripeRepository;
+import com.shoppy.service.CheckoutService;
+import com.shoppy.service.CustomerService;
+import com.shoppy.service.ProductService;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.mockito.Mockito;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderPlacementStatementsTest {
+
+    private static final int LINES = 5;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CheckoutRepository checkoutRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockStripeRepository stripeRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+    private CheckoutService checkoutService;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        CustomerService customerService = Mockito.spy(new CustomerService(customerRepository));
+        Mockito.doAnswer(invocation -> customerRepository.findCustomerByUsername("buyer").orElseThrow())
+                .when(customerService).getCustomerByUsernameOrCreate(Mockito.any());
+        InventoryLedger ledger = TestUtils.createInventoryLedger(Mockito.mock(InventoryMovementRepository.class), Mockito.mock(InventorySnapshotRepository.class));
+        ProductService productService = TestUtils.createProductService(productRepository, new StockStripes(stripeRepository), ledger);
+        checkoutService = new CheckoutService(new JpaCartStore(customerService, checkoutRepository), customerService, productService, Mockito.mock(StockReservations.class));
+    }
+
+    @Test
+    @DisplayName("Should place an order with a fixed number of statements and a single flush")
+    void whenPlacingAnOrder_thenStatementsAreBatchedInOneFlush() {
+        transaction.executeWithoutResult(status -> {
+            Address address = TestUtils.createAddress();
+            CardPaymentMethod paymentMethod = TestUtils.createPaymentMethod();
+            Checkout checkout = new Checkout();
+            checkout.setAddress(address);
+            checkout.setPaymentMethod(paymentMethod);
+            for (int i = 0; i < LINES; i++) {
+                Product product = TestUtils.createProduct();
+                product.setId(null);
+                product.setName("Product #" + i);
+                Product saved = productRepository.save(product);
+                checkout.addItem(TestUtils.createItem(saved));
+            }
+            Customer customer = Customer.builder()
+                    .username("buyer")
+                    .name("Test")
+                    .surname("Test")
+                    .currentCheckout(checkout)
+                    .build();
+            customer.setAddresses(new ArrayList<>(List.of(address)));
+            customer.setPaymentMethods(new ArrayList<>(List.of(paymentMethod)));
+            customer.setOrders(new ArrayList<>());
+            customerRepository.save(customer);
+        });
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Principal principal = () -> "buyer";
+        transaction.executeWithoutResult(status -> checkoutService.processOrder(principal));
+
+        // Reads: the customer, its checkout, the checkout's lines and the customer's orders. Stock: per line the stripe
+        // lookup, the conditional update, the product refresh and the stripe lookup again under the row lock. Flush: the order insert, the customer, line and
+        // order foreign key updates, then one batch deleting the lines and the checkout delete. After the commit: one
+        // read of the decremented products for the caches and indexes.
+        Assertions.assertEquals(4 + 4 * LINES + 6 + 1, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(1, statistics.getFlushCount());
+        Assertions.assertEquals(1, statistics.getEntityInsertCount());
+        Assertions.assertEquals(LINES + 1, statistics.getEntityDeleteCount());
+
+        Assertions.assertEquals(0, checkoutRepository.count());
+        transaction.executeWithoutResult(status -> {
+            Customer customer = customerRepository.findCustomerByUsername("buyer").orElseThrow();
+            Assertions.assertNull(customer.getCurrentCheckout());
+            Assertions.assertEquals(1, customer.getOrders().size());
+        });
+        productRepository.findAll().forEach(product -> Assertions.assertEquals(99, product.getStock()));
+    }
+
+}
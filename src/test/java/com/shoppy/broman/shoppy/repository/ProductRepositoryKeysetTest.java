@@ -0,0 +1,76 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetCursor;
+import com.shoppy.repository.ProductRepository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+@DataJpaTest
+class ProductRepositoryKeysetTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 25; i++) {
+            Product product = TestUtils.createProduct();
+            product.setId(null);
+            product.setName("Product #" + (i % 7));
+            product.setPrice((double) (i % 4));
+            product.setStock(i % 5);
+            productRepository.save(product);
+        }
+    }
+
+    static Stream<Arguments> sorts() {
+        return Stream.of(
+                Arguments.of(Sort.unsorted()),
+                Arguments.of(Sort.by(Sort.Order.asc("name"))),
+                Arguments.of(Sort.by(Sort.Order.desc("name"))),
+                Arguments.of(Sort.by(Sort.Order.asc("price"))),
+                Arguments.of(Sort.by(Sort.Order.desc("price"))),
+                Arguments.of(Sort.by(Sort.Order.asc("stock"))),
+                Arguments.of(Sort.by(Sort.Order.desc("stock")))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("sorts")
+    @DisplayName("Should visit every product exactly once and in order when seeking page by page")
+    void whenSeekingPageByPage_thenResultMatchesOffsetOrder(Sort sort) {
+        Sort seekSort = KeysetCursor.withTiebreaker(sort);
+        List<Product> expected = productRepository.findAll(seekSort);
+
+        List<Product> visited = new ArrayList<>();
+        Specification<Product> after = null;
+        List<Product> page;
+        do {
+            page = productRepository.findAll(after, seekSort, 4);
+            visited.addAll(page);
+            if (!page.isEmpty()) {
+                String cursor = KeysetCursor.of(seekSort, page.get(page.size() - 1)).encode();
+                after = KeysetCursor.decode(cursor, seekSort).seek();
+            }
+        } while (page.size() == 4);
+
+        Assertions.assertEquals(expected.stream().map(Product::getId).toList(), visited.stream().map(Product::getId).toList());
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.ProductSpecifications;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+@DataJpaTest
+class ProductRepositorySliceTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 5; i++) {
+            Product product = TestUtils.createProduct();
+            product.setId(null);
+            product.setName("Product #" + i);
+            product.setPrice(i * 10.0);
+            productRepository.save(product);
+        }
+    }
+
+    @Test
+    @DisplayName("Should tell whether a next page exists without counting")
+    void whenReadingSlices_thenHasNextIsSetUntilTheLastPage() {
+        Sort sort = Sort.by(Sort.Order.asc("price"));
+
+        Slice<Product> first = productRepository.findSlice(null, PageRequest.of(0, 2, sort));
+        Assertions.assertEquals(List.of(0.0, 10.0), first.map(Product::getPrice).getContent());
+        Assertions.assertTrue(first.hasNext());
+
+        Slice<Product> last = productRepository.findSlice(null, PageRequest.of(2, 2, sort));
+        Assertions.assertEquals(List.of(40.0), last.map(Product::getPrice).getContent());
+        Assertions.assertFalse(last.hasNext());
+    }
+
+    @Test
+    @DisplayName("Should not report a next page when the page is exactly filled")
+    void whenPageIsExactlyFilled_thenThereIsNoNextPage() {
+        Slice<Product> slice = productRepository.findSlice(ProductSpecifications.nameContainsIgnoreCase("#"), PageRequest.of(0, 5));
+        Assertions.assertEquals(5, slice.getNumberOfElements());
+        Assertions.assertFalse(slice.hasNext());
+    }
+
+}
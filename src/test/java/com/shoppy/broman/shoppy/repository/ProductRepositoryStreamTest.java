@@ -0,0 +1,64 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.ProductSpecifications;
+import com.shoppy.search.ProductFilter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+@DataJpaTest
+class ProductRepositoryStreamTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 10; i++) {
+            Product product = TestUtils.createProduct();
+            product.setId(null);
+            product.setName(i % 2 == 0 ? "Even 100% #" + i : "Odd #" + i);
+            product.setPrice(i * 10.0);
+            product.setStock(i % 3);
+            productRepository.save(product);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    @DisplayName("Should stream matching products in order and leave the persistence context empty")
+    void whenStreamingProducts_thenProductsAreDetached() {
+        try (Stream<Product> products = productRepository.stream(ProductSpecifications.nameContainsIgnoreCase("100%"), Sort.by(Sort.Order.desc("name")))) {
+            List<String> names = products.peek(product -> Assertions.assertFalse(entityManager.contains(product))).map(Product::getName).toList();
+            Assertions.assertEquals(List.of("Even 100% #8", "Even 100% #6", "Even 100% #4", "Even 100% #2", "Even 100% #0"), names);
+        }
+    }
+
+    @Test
+    @DisplayName("Should only stream products within the price range and in stock")
+    void whenStreamingWithAFilter_thenOnlyMatchingProductsAreStreamed() {
+        ProductFilter filter = new ProductFilter(20.0, 70.0, true);
+        try (Stream<Product> products = productRepository.stream(ProductSpecifications.matching(filter), Sort.by("price"))) {
+            Assertions.assertEquals(List.of(20.0, 40.0, 50.0, 70.0), products.map(Product::getPrice).toList());
+        }
+    }
+
+}
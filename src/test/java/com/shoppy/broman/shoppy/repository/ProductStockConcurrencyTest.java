@@ -0,0 +1,147 @@
+package com.shoppy.broman.shoppy.repository;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.exception.APIException;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Item;
+import com.shoppy.model.Product;
+import com.shoppy.repository.ProductRepository;
+import com.shoppy.repository.StockStripeRepository;
+import com.shoppy.service.ProductService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductStockConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ORDERS_PER_THREAD = 25;
+    private static final int STOCK = 60;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockStripeRepository stripeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        stripeRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Should never sell more than the stock when orders race for the same products")
+    void whenOrdersRaceForTheSameProducts_thenStockIsNeverOversold() throws Exception {
+        Product first = productRepository.save(createProduct("First"));
+        Product second = productRepository.save(createProduct("Second"));
+
+        race(first, second);
+
+        Assertions.assertEquals(0, productRepository.findById(first.getId()).orElseThrow().getStock());
+        Assertions.assertEquals(0, productRepository.findById(second.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    @DisplayName("Should never sell more than the stock when orders race for striped products")
+    void whenOrdersRaceForStripedProducts_thenStockIsNeverOversold() throws Exception {
+        Product first = productRepository.save(createProduct("First"));
+        Product second = productRepository.save(createProduct("Second"));
+        StockStripes stockStripes = new StockStripes(stripeRepository);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            stockStripes.stripe(first, 4);
+            stockStripes.stripe(second, 3);
+        });
+
+        race(first, second, stockStripes);
+
+        transaction.executeWithoutResult(status -> {
+            Assertions.assertEquals(0, stockStripes.lockTotal(first.getId()));
+            Assertions.assertEquals(0, stockStripes.lockTotal(second.getId()));
+        });
+    }
+
+    private void race(Product first, Product second) throws Exception {
+        race(first, second, TestUtils.createStockStripes());
+    }
+
+    private void race(Product first, Product second, StockStripes stockStripes) throws Exception {
+        ProductService productService = TestUtils.createProductService(productRepository, stockStripes);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            // Half of the orders list the products the other way round; the decrement order must not depend on it
+            boolean reversed = thread % 2 == 1;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    List<Item> items = reversed
+                            ? List.of(createItem(second.getId()), createItem(first.getId()))
+                            : List.of(createItem(first.getId()), createItem(second.getId()));
+                    try {
+                        transaction.executeWithoutResult(status -> productService.decrementStock(items));
+                        placed.incrementAndGet();
+                    }
+                    catch (APIException exception) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(STOCK, placed.get());
+        Assertions.assertEquals(THREADS * ORDERS_PER_THREAD - STOCK, rejected.get());
+    }
+
+    private static Product createProduct(String name) {
+        Product product = TestUtils.createProduct();
+        product.setId(null);
+        product.setName(name);
+        product.setStock(STOCK);
+        return product;
+    }
+
+    private static Item createItem(Long productId) {
+        Product product = TestUtils.createProduct();
+        product.setId(productId);
+        return TestUtils.createItem(product);
+    }
+
+}
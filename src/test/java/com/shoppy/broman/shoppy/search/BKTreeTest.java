@@ -0,0 +1,43 @@
+package com.shoppy.broman.shoppy.search;
+
+import com.shoppy.search.BKTree;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class BKTreeTest {
+
+    private BKTree tree;
+
+    @BeforeEach
+    void setUp() {
+        tree = new BKTree();
+        for (String term : new String[] {"book", "books", "cake", "boo", "boon", "cook", "cape", "cart"}) {
+            tree.add(term);
+        }
+    }
+
+    @Test
+    void whenSearchingWithinDistance_thenEveryCloseTermIsReturned() {
+        MatcherAssert.assertThat(tree.search("bok", 1), Matchers.equalTo(Map.of("book", 1, "boo", 1)));
+        MatcherAssert.assertThat(tree.search("caqe", 1).keySet(), Matchers.containsInAnyOrder("cake", "cape"));
+    }
+
+    @Test
+    void whenSearchingWithZeroDistance_thenOnlyTheExactTermIsReturned() {
+        MatcherAssert.assertThat(tree.search("cook", 0), Matchers.equalTo(Map.of("cook", 0)));
+        MatcherAssert.assertThat(tree.search("cooks", 0), Matchers.anEmptyMap());
+    }
+
+    @Test
+    void whenAddingADuplicate_thenSizeIsUnchanged() {
+        tree.add("book");
+        MatcherAssert.assertThat(tree.size(), Matchers.is(8));
+    }
+
+}
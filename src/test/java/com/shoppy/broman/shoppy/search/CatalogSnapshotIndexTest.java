@@ -0,0 +1,100 @@
+package com.shoppy.broman.shoppy.search;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.pagination.KeysetCursor;
+import com.shoppy.search.CatalogSnapshotIndex;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+class CatalogSnapshotIndexTest {
+
+    private CatalogSnapshotIndex catalogSnapshot;
+
+    @BeforeEach
+    void setUp() {
+        catalogSnapshot = new CatalogSnapshotIndex(true);
+        catalogSnapshot.productSaved(createProduct(3L, "lamp", 20.0));
+        catalogSnapshot.productSaved(createProduct(1L, "Chair", 50.0));
+        catalogSnapshot.productSaved(createProduct(2L, "Table", 20.0));
+        catalogSnapshot.productSaved(createProduct(4L, "Sofa", 300.0));
+        catalogSnapshot.markReady();
+    }
+
+    @Test
+    void whenPagingUnsorted_thenProductsAreOrderedById() {
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.unsorted(), 1, 2)), Matchers.contains(2L, 3L));
+    }
+
+    @Test
+    void whenPagingSorted_thenTiesAreBrokenByIdInTheSortDirection() {
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.by(Sort.Order.asc("price")), 0, 10)), Matchers.contains(2L, 3L, 1L, 4L));
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.by(Sort.Order.desc("price")), 0, 3)), Matchers.contains(4L, 1L, 3L));
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.by(Sort.Order.asc("name")), 0, 10)), Matchers.contains(1L, 3L, 4L, 2L));
+    }
+
+    @Test
+    void whenPagingPastTheEnd_thenPageIsEmpty() {
+        MatcherAssert.assertThat(catalogSnapshot.page(Sort.unsorted(), 10, 5), Matchers.empty());
+    }
+
+    @Test
+    void whenSeekingAfterACursor_thenFollowingProductsAreReturned() {
+        Sort sort = KeysetCursor.withTiebreaker(Sort.by(Sort.Order.desc("price")));
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of(sort, createProduct(3L, "lamp", 20.0)).encode(), sort);
+        MatcherAssert.assertThat(ids(catalogSnapshot.after(sort, cursor, 10)), Matchers.contains(2L));
+
+        Sort ascending = KeysetCursor.withTiebreaker(Sort.by(Sort.Order.asc("price")));
+        KeysetCursor missing = KeysetCursor.decode(KeysetCursor.of(ascending, createProduct(9L, "Gone", 30.0)).encode(), ascending);
+        MatcherAssert.assertThat(ids(catalogSnapshot.after(ascending, missing, 10)), Matchers.contains(1L, 4L));
+    }
+
+    @Test
+    void whenProductsChange_thenNewSnapshotIsPublishedAndOldPagesAreUntouched() {
+        List<Product> before = catalogSnapshot.page(Sort.by(Sort.Order.asc("price")), 0, 10);
+
+        catalogSnapshot.productSaved(createProduct(4L, "Sofa", 5.0));
+        catalogSnapshot.productDeleted(1L);
+        catalogSnapshot.productSaved(createProduct(5L, "Bed", 20.0));
+
+        MatcherAssert.assertThat(ids(before), Matchers.contains(2L, 3L, 1L, 4L));
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.by(Sort.Order.asc("price")), 0, 10)), Matchers.contains(4L, 2L, 3L, 5L));
+        MatcherAssert.assertThat(ids(catalogSnapshot.page(Sort.unsorted(), 0, 10)), Matchers.contains(2L, 3L, 4L, 5L));
+    }
+
+    @Test
+    void whenSortHasSeveralProperties_thenItIsNotSupported() {
+        Assertions.assertTrue(catalogSnapshot.supports(KeysetCursor.withTiebreaker(Sort.by(Sort.Order.desc("stock")))));
+        Assertions.assertFalse(catalogSnapshot.supports(Sort.by(Sort.Order.asc("price"), Sort.Order.desc("name"))));
+    }
+
+    @Test
+    void whenDisabled_thenItIsNeverReady() {
+        CatalogSnapshotIndex disabled = new CatalogSnapshotIndex(false);
+        disabled.productSaved(createProduct(1L, "Chair", 50.0));
+        disabled.markReady();
+        Assertions.assertFalse(disabled.isReady());
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+
+    private static Product createProduct(Long id, String name, Double price) {
+        Product product = TestUtils.createProduct();
+        product.setId(id);
+        product.setName(name);
+        product.setPrice(price);
+        return product;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.shoppy.broman.shoppy.search;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.search.ProductFacetIndex;
+import com.shoppy.search.ProductFacets;
+import com.shoppy.search.ProductFilter;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+class ProductFacetIndexTest {
+
+    private ProductFacetIndex facetIndex;
+
+    @BeforeEach
+    void setUp() {
+        facetIndex = new ProductFacetIndex();
+        facetIndex.productSaved(createProduct(1L, 5.0, 10));
+        facetIndex.productSaved(createProduct(2L, 15.0, 0));
+        facetIndex.productSaved(createProduct(3L, 20.0, 3));
+        facetIndex.productSaved(createProduct(4L, 120.0, 1));
+        facetIndex.productSaved(createProduct(5L, 1500.0, 0));
+    }
+
+    @Test
+    void whenCountingWithoutFilter_thenEveryProductIsCounted() {
+        ProductFacets facets = facetIndex.count(null, ProductFilter.NONE);
+        MatcherAssert.assertThat(facets.total(), Matchers.is(5L));
+        MatcherAssert.assertThat(counts(facets), Matchers.contains(1L, 2L, 0L, 0L, 1L, 0L, 0L, 1L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(3, 2)));
+        MatcherAssert.assertThat(facets.price().get(7).to(), Matchers.nullValue());
+    }
+
+    @Test
+    void whenFilteringByStock_thenPriceCountsOnlyIncludeAvailableProducts() {
+        ProductFacets facets = facetIndex.count(null, new ProductFilter(null, null, true));
+        MatcherAssert.assertThat(facets.total(), Matchers.is(3L));
+        MatcherAssert.assertThat(counts(facets), Matchers.contains(1L, 1L, 0L, 0L, 1L, 0L, 0L, 0L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(3, 2)));
+    }
+
+    @Test
+    void whenFilteringByAPriceRangeInsideABucket_thenStockCountsOnlyIncludeProductsInRange() {
+        ProductFacets facets = facetIndex.count(null, new ProductFilter(12.0, 18.0, false));
+        MatcherAssert.assertThat(facets.total(), Matchers.is(1L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(0, 1)));
+        MatcherAssert.assertThat(counts(facets), Matchers.contains(1L, 2L, 0L, 0L, 1L, 0L, 0L, 1L));
+    }
+
+    @Test
+    void whenCountingCandidates_thenOtherProductsAreIgnored() {
+        ProductFacets facets = facetIndex.count(List.of(2L, 4L, 99L), new ProductFilter(10.0, null, true));
+        MatcherAssert.assertThat(facets.total(), Matchers.is(1L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(1, 1)));
+    }
+
+    @Test
+    void whenTheStockOfAProductIsReserved_thenItIsCountedAsUnavailable() {
+        ProductFacets facets = facetIndex.count(null, new ProductFilter(null, null, true).withSoldOut(Set.of(1L)));
+        MatcherAssert.assertThat(facets.total(), Matchers.is(2L));
+        MatcherAssert.assertThat(counts(facets), Matchers.contains(0L, 1L, 0L, 0L, 1L, 0L, 0L, 0L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(2, 3)));
+    }
+
+    @Test
+    void whenProductsChange_thenCountsFollow() {
+        facetIndex.productSaved(createProduct(2L, 60.0, 4));
+        facetIndex.productDeleted(5L);
+        facetIndex.productSaved(createProduct(6L, 7.5, 2));
+
+        ProductFacets facets = facetIndex.count(null, ProductFilter.NONE);
+        MatcherAssert.assertThat(counts(facets), Matchers.contains(2L, 1L, 0L, 1L, 1L, 0L, 0L, 0L));
+        MatcherAssert.assertThat(facets.stock(), Matchers.equalTo(new ProductFacets.StockFacet(5, 0)));
+    }
+
+    private static List<Long> counts(ProductFacets facets) {
+        return facets.price().stream().map(ProductFacets.PriceFacet::count).toList();
+    }
+
+    private static Product createProduct(Long id, Double price, Integer stock) {
+        Product product = TestUtils.createProduct();
+        product.setId(id);
+        product.setPrice(price);
+        product.setStock(stock);
+        return product;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.shoppy.broman.shoppy.search;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.search.ProductFilter;
+import com.shoppy.search.ProductSearchIndex;
+import com.shoppy.search.SearchResult;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new ProductSearchIndex();
+        searchIndex.productSaved(createProduct(1L, "Red running shoes", "Lightweight shoes for running", 59.99));
+        searchIndex.productSaved(createProduct(2L, "Blue shoes", "Classic leather shoes", 89.99));
+        searchIndex.productSaved(createProduct(3L, "Running shorts", "Breathable shorts", 19.99));
+        searchIndex.productSaved(createProduct(4L, "Socks", "Socks for running shoes", 4.99));
+    }
+
+    @Test
+    void whenSearchingATerm_thenNameMatchesRankFirst() {
+        MatcherAssert.assertThat(searchIndex.search("shoes", Pageable.ofSize(10)).ids(), Matchers.contains(2L, 1L, 4L));
+    }
+
+    @Test
+    void whenSearchingSeveralTerms_thenEveryTermMustMatch() {
+        MatcherAssert.assertThat(searchIndex.search("running shoes", Pageable.ofSize(10)).ids(), Matchers.contains(1L, 4L));
+    }
+
+    @Test
+    void whenSearchingPartOfATerm_thenContainingTermsMatch() {
+        MatcherAssert.assertThat(searchIndex.search("shor", Pageable.ofSize(10)).ids(), Matchers.contains(3L));
+        MatcherAssert.assertThat(searchIndex.search("ck", Pageable.ofSize(10)).ids(), Matchers.contains(4L));
+    }
+
+    @Test
+    void whenSortIsRequested_thenSortIsAppliedBeforeRelevance() {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.asc("price")));
+        MatcherAssert.assertThat(searchIndex.search("shoes", pageable).ids(), Matchers.contains(4L, 1L, 2L));
+    }
+
+    @Test
+    void whenPaging_thenOnlyRequestedSliceIsReturnedWithTheTotal() {
+        SearchResult result = searchIndex.search("shoes", PageRequest.of(1, 2));
+        MatcherAssert.assertThat(result.ids(), Matchers.contains(4L));
+        MatcherAssert.assertThat(result.total(), Matchers.is(3L));
+    }
+
+    @Test
+    void whenProductIsUpdated_thenOldTermsNoLongerMatch() {
+        searchIndex.productSaved(createProduct(2L, "Blue boots", "Classic leather boots", 89.99));
+        MatcherAssert.assertThat(searchIndex.search("shoes", Pageable.ofSize(10)).ids(), Matchers.contains(1L, 4L));
+        MatcherAssert.assertThat(searchIndex.search("boot", Pageable.ofSize(10)).ids(), Matchers.contains(2L));
+    }
+
+    @Test
+    void whenProductIsDeleted_thenItNoLongerMatches() {
+        searchIndex.productDeleted(3L);
+        MatcherAssert.assertThat(searchIndex.search("shorts", Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenADeletedProductIsReplaced_thenTheNewProductOnlyMatchesItsOwnTerms() {
+        searchIndex.productDeleted(1L);
+        searchIndex.productSaved(createProduct(5L, "Running jacket", "Warm jacket", 99.99));
+        MatcherAssert.assertThat(searchIndex.search("running", Pageable.ofSize(10)).ids(), Matchers.containsInAnyOrder(3L, 4L, 5L));
+        MatcherAssert.assertThat(searchIndex.search("red", Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenRequestingTheFirstPageOfManyMatches_thenTheBestMatchesAreReturnedInOrder() {
+        for (long id = 10; id < 60; id++) {
+            searchIndex.productSaved(createProduct(id, "Plain mug", "Mug", 9.99));
+        }
+        searchIndex.productSaved(createProduct(60L, "Mug mug", "Mug", 9.99));
+
+        SearchResult result = searchIndex.search("mug", PageRequest.of(0, 3));
+        MatcherAssert.assertThat(result.ids(), Matchers.contains(60L, 10L, 11L));
+        MatcherAssert.assertThat(result.total(), Matchers.is(51L));
+        MatcherAssert.assertThat(searchIndex.search("mug", PageRequest.of(1, 2, Sort.by(Sort.Order.desc("id")))).ids(), Matchers.contains(58L, 57L));
+    }
+
+    @Test
+    void whenSearchingAMisspelledTermFuzzily_thenCloseNamesMatch() {
+        MatcherAssert.assertThat(searchIndex.search("shoos", true, Pageable.ofSize(10)).ids(), Matchers.contains(2L, 1L, 4L));
+        MatcherAssert.assertThat(searchIndex.search("runnign shoes", true, Pageable.ofSize(10)).ids(), Matchers.contains(1L, 4L));
+        MatcherAssert.assertThat(searchIndex.search("shoos", false, Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenSearchingFuzzily_thenExactMatchesRankFirst() {
+        searchIndex.productSaved(createProduct(5L, "Sock", "Single sock", 1.99));
+        MatcherAssert.assertThat(searchIndex.search("sock", true, Pageable.ofSize(10)).ids(), Matchers.contains(5L, 4L));
+    }
+
+    @Test
+    void whenSearchingAShortTermFuzzily_thenNoTypoIsTolerated() {
+        searchIndex.productSaved(createProduct(5L, "TV stand", "Stand", 39.99));
+        MatcherAssert.assertThat(searchIndex.search("tv", true, Pageable.ofSize(10)).ids(), Matchers.contains(5L));
+        MatcherAssert.assertThat(searchIndex.search("tx", true, Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenProductIsDeleted_thenItsTermsNoLongerMatchFuzzily() {
+        searchIndex.productDeleted(3L);
+        MatcherAssert.assertThat(searchIndex.search("shortz", true, Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenFilterIsSet_thenOnlyProductsWithinItMatch() {
+        ProductFilter filter = new ProductFilter(10.0, 60.0, false);
+        SearchResult result = searchIndex.search("shoes", false, filter, Pageable.ofSize(10));
+        MatcherAssert.assertThat(result.ids(), Matchers.contains(1L));
+        MatcherAssert.assertThat(result.total(), Matchers.is(1L));
+    }
+
+    private static Product createProduct(Long id, String name, String description, Double price) {
+        Product product = TestUtils.createProduct();
+        product.setId(id);
+        product.setName(name);
+        product.setDescription(description);
+        product.setPrice(price);
+        return product;
+    }
+
+}
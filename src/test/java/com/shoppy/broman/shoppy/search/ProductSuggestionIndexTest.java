@@ -0,0 +1,88 @@
+package com.shoppy.broman.shoppy.search;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.Product;
+import com.shoppy.search.ProductSuggestionIndex;
+import com.shoppy.search.ProductSuggestionIndex.Suggestion;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+class ProductSuggestionIndexTest {
+
+    private ProductSuggestionIndex suggestionIndex;
+
+    @BeforeEach
+    void setUp() {
+        suggestionIndex = new ProductSuggestionIndex();
+        suggestionIndex.productSaved(createProduct(1L, "Red running shoes", 5));
+        suggestionIndex.productSaved(createProduct(2L, "Running shorts", 50));
+        suggestionIndex.productSaved(createProduct(3L, "Rain coat", 20));
+    }
+
+    @Test
+    void whenPrefixMatches_thenProductsAreRankedByStock() {
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("r", 10)), Matchers.contains(2L, 3L, 1L));
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("Run", 10)), Matchers.contains(2L, 1L));
+    }
+
+    @Test
+    void whenPrefixMatchesAWordInsideTheName_thenProductIsSuggested() {
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("shoe", 10)), Matchers.contains(1L));
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("running sho", 10)), Matchers.contains(2L, 1L));
+    }
+
+    @Test
+    void whenNothingMatches_thenNoSuggestions() {
+        MatcherAssert.assertThat(suggestionIndex.suggest("xyz", 10), Matchers.empty());
+    }
+
+    @Test
+    void whenStockChanges_thenRankingIsUpdated() {
+        suggestionIndex.productSaved(createProduct(1L, "Red running shoes", 100));
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("run", 10)), Matchers.contains(1L, 2L));
+    }
+
+    @Test
+    void whenProductIsDeleted_thenItIsNoLongerSuggested() {
+        suggestionIndex.productDeleted(2L);
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("r", 10)), Matchers.contains(3L, 1L));
+        MatcherAssert.assertThat(suggestionIndex.suggest("running sh", 10), Matchers.contains(new Suggestion(1L, "Red running shoes")));
+    }
+
+    @Test
+    void whenMoreProductsThanTopKMatch_thenBestAreKeptAcrossDeletes() {
+        IntStream.range(10, 30).forEach(i -> suggestionIndex.productSaved(createProduct((long) i, "Tent " + i, i)));
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("tent", 3)), Matchers.contains(29L, 28L, 27L));
+
+        suggestionIndex.productDeleted(29L);
+        suggestionIndex.productDeleted(28L);
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("tent", 3)), Matchers.contains(27L, 26L, 25L));
+    }
+
+    @Test
+    void whenPrefixIsLongerThanTheTrieDepth_thenNamesAreFiltered() {
+        suggestionIndex.productSaved(createProduct(4L, "Extraordinarily comfortable chair", 1));
+        suggestionIndex.productSaved(createProduct(5L, "Extraordinarily comfortable sofa", 2));
+        MatcherAssert.assertThat(ids(suggestionIndex.suggest("extraordinarily comfortable ch", 10)), Matchers.contains(4L));
+    }
+
+    private static List<Long> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::id).toList();
+    }
+
+    private static Product createProduct(Long id, String name, int stock) {
+        Product product = TestUtils.createProduct();
+        product.setId(id);
+        product.setName(name);
+        product.setStock(stock);
+        return product;
+    }
+
+}
@@ -1,7 +1,10 @@
 package com.shoppy.broman.shoppy.service;
 
 import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cart.JpaCartStore;
+import com.shoppy.enumeration.CartOperationType;
 import com.shoppy.exception.APIException;
+import com.shoppy.inventory.StockReservations;
 import com.shoppy.model.Address;
 import com.shoppy.model.CardPaymentMethod;
 import com.shoppy.model.Checkout;
@@ -12,6 +15,7 @@ import com.shoppy.repository.CheckoutRepository;
 
 import com.shoppy.service.CheckoutService;
 import com.shoppy.service.CustomerService;
+import com.shoppy.service.ProductService;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 
@@ -22,18 +26,28 @@ import org.junit.jupiter.api.Test;
 
 import org.mockito.Mockito;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 class CheckoutServiceTest {
 
     private final CheckoutRepository checkoutRepository = Mockito.mock(CheckoutRepository.class);
     private final CustomerService customerService = Mockito.mock(CustomerService.class);
+    private final ProductService productService = Mockito.mock(ProductService.class);
+    private final StockReservations reservations = Mockito.mock(StockReservations.class);
     private final Customer customer = Mockito.mock(Customer.class);
     private CheckoutService checkoutService;
 
     @BeforeEach
     void setUp() {
-        checkoutService = new CheckoutService(checkoutRepository, customerService);
+        checkoutService = new CheckoutService(new JpaCartStore(customerService, checkoutRepository), customerService, productService, reservations);
     }
 
     @Test
@@ -118,6 +132,40 @@ class CheckoutServiceTest {
         Assertions.assertThrows(APIException.class, () -> checkoutService.addItemToCheckout(principal, item), "not enough products in stock");
     }
 
+    @Test
+    @DisplayName("Should reserve the item's quantity when reservations are enabled")
+    void whenAddingItemWithReservationsEnabled_thenQuantityIsReserved() {
+        Item item = TestUtils.createItem();
+        Checkout checkout = TestUtils.createCheckout();
+        checkout.getItems().clear();
+
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(Mockito.any())).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        checkoutService.addItemToCheckout(Mockito.mock(Principal.class), item);
+
+        Mockito.verify(reservations).reserve(checkout.getId(), item.getProduct(), item.getQuantity());
+        Mockito.verify(checkoutRepository).save(checkout);
+    }
+
+    @Test
+    @DisplayName("Should not save the item when its quantity can not be reserved")
+    void whenReservationFails_thenItemIsNotSaved() {
+        Item item = TestUtils.createItem();
+        Checkout checkout = TestUtils.createCheckout();
+        checkout.getItems().clear();
+
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+        Mockito.doThrow(new APIException("not enough products in stock", HttpStatus.CONFLICT)).when(reservations).reserve(Mockito.any(), Mockito.any(), Mockito.anyInt());
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(Mockito.any())).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        Principal principal = Mockito.mock(Principal.class);
+        Assertions.assertThrows(APIException.class, () -> checkoutService.addItemToCheckout(principal, item), "not enough products in stock");
+        Mockito.verify(checkoutRepository, Mockito.never()).save(Mockito.any());
+    }
+
     @Test
     @DisplayName("Should success when updating an existing item in checkout")
     void whenUpdatingAnExistingItem_thenSuccess() {
@@ -250,11 +298,69 @@ class CheckoutServiceTest {
         Mockito.when(customerService.getCustomerByUsernameOrCreate(principal)).thenReturn(customer);
         Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
 
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+
         checkoutService.processOrder(principal);
 
+        Mockito.verify(productService).decrementStock(checkout.getItems());
+        Mockito.verify(reservations).release(Mockito.eq(checkout.getId()), Mockito.anyList());
         Mockito.verify(customer).addOrder(Mockito.any());
         Mockito.verify(customer).setCurrentCheckout(null);
-        Mockito.verify(customerService, Mockito.times(2)).saveOrUpdate(customer);
+        Mockito.verify(checkoutRepository).delete(checkout);
+        Mockito.verify(customerService, Mockito.times(1)).getCustomerByUsernameOrCreate(principal);
+        Mockito.verify(customerService, Mockito.never()).saveOrUpdate(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should keep the reservations of an order until it has committed")
+    void whenOrderIsPlacedInATransaction_thenReservationsAreReleasedAfterCommit() {
+        Principal principal = Mockito.mock(Principal.class);
+        Checkout checkout = TestUtils.createCheckout();
+
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(principal)).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            checkoutService.processOrder(principal);
+            Mockito.verify(reservations, Mockito.never()).release(Mockito.any(), Mockito.anyList());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Mockito.verify(reservations).release(Mockito.eq(checkout.getId()), Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Should not place the order when an item is out of stock")
+    void whenOrderedItemIsOutOfStock_thenOrderIsNotPlaced() {
+        Principal principal = Mockito.mock(Principal.class);
+        Checkout checkout = TestUtils.createCheckout();
+
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(principal)).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+        Mockito.doThrow(new APIException("not enough products in stock", HttpStatus.CONFLICT)).when(productService).decrementStock(Mockito.any());
+
+        Assertions.assertThrows(APIException.class, () -> checkoutService.processOrder(principal), "not enough products in stock");
+        Mockito.verify(customer, Mockito.never()).addOrder(Mockito.any());
+        Mockito.verify(customerService, Mockito.never()).saveOrUpdate(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Should not touch the stock when the address is missing")
+    void whenAddressIsMissing_thenStockIsNotDecremented() {
+        Principal principal = Mockito.mock(Principal.class);
+        Checkout checkout = TestUtils.createCheckout();
+        checkout.setAddress(null);
+
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(principal)).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        Assertions.assertThrows(APIException.class, () -> checkoutService.processOrder(principal));
+        Mockito.verifyNoInteractions(productService);
     }
 
     @Test
@@ -338,4 +444,94 @@ class CheckoutServiceTest {
         Assertions.assertThrows(APIException.class, () -> checkoutService.assignPaymentMethod(principal, paymentMethod), "checkout is not present");
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should look products up once and save once for a batch of cart operations")
+    void whenApplyingCartOperations_thenProductsAreReadOnceAndTheCartSavedOnce() {
+        Checkout checkout = TestUtils.createCheckout();
+        Product product = TestUtils.createProduct();
+        product.setId(1L);
+
+        Mockito.when(productService.getProductsById(Mockito.any())).thenReturn(Map.of(1L, product));
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(Mockito.any())).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        List<CheckoutService.CartLineResult> results = checkoutService.updateItems(Mockito.mock(Principal.class), List.of(
+                new CheckoutService.CartOperation(CartOperationType.ADD, 1L, 2),
+                new CheckoutService.CartOperation(CartOperationType.REMOVE, 0L, null),
+                new CheckoutService.CartOperation(CartOperationType.UPDATE, 2L, 1)
+        ));
+
+        MatcherAssert.assertThat(results.stream().map(CheckoutService.CartLineResult::status).toList(), Matchers.contains(201, 204, 404));
+        Mockito.verify(productService).getProductsById(Set.of(1L, 2L));
+        Mockito.verify(checkoutRepository).save(checkout);
+        MatcherAssert.assertThat(checkout.getItems().stream().map(item -> item.getProduct().getId()).toList(), Matchers.contains(1L));
+    }
+
+    @Test
+    @DisplayName("Should keep the other lines when the quantity of one can not be reserved")
+    void whenOneCartOperationCanNotBeReserved_thenTheOthersAreApplied() {
+        Checkout checkout = TestUtils.createCheckout();
+        Product scarce = TestUtils.createProduct();
+        scarce.setId(1L);
+        Product plenty = TestUtils.createProduct();
+        plenty.setId(2L);
+
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+        Mockito.doThrow(new APIException("not enough products in stock", HttpStatus.CONFLICT)).when(reservations).reserve(Mockito.any(), Mockito.eq(scarce), Mockito.anyInt());
+        Mockito.when(productService.getProductsById(Mockito.any())).thenReturn(Map.of(1L, scarce, 2L, plenty));
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(Mockito.any())).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        List<CheckoutService.CartLineResult> results = checkoutService.updateItems(Mockito.mock(Principal.class), List.of(
+                new CheckoutService.CartOperation(CartOperationType.ADD, 1L, 2),
+                new CheckoutService.CartOperation(CartOperationType.ADD, 2L, 200)
+        ));
+
+        MatcherAssert.assertThat(results.stream().map(CheckoutService.CartLineResult::status).toList(), Matchers.contains(409, 409));
+        MatcherAssert.assertThat(results.stream().map(CheckoutService.CartLineResult::message).toList(), Matchers.everyItem(Matchers.is("not enough products in stock")));
+        MatcherAssert.assertThat(checkout.getItems(), Matchers.hasSize(1));
+        Mockito.verify(checkoutRepository).save(checkout);
+    }
+
+    @Test
+    @DisplayName("Should put the reservations back when the cart update rolls back")
+    void whenCartUpdateRollsBack_thenReservationsAreRestored() {
+        Checkout checkout = TestUtils.createCheckout();
+        Product product = TestUtils.createProduct();
+        product.setId(1L);
+        Map<Long, Integer> held = Map.of(1L, 1);
+
+        Mockito.when(reservations.isEnabled()).thenReturn(true);
+        Mockito.when(reservations.held(checkout.getId(), List.of(1L))).thenReturn(held);
+        Mockito.when(productService.getProductsById(Mockito.any())).thenReturn(Map.of(1L, product));
+        Mockito.when(customerService.getCustomerByUsernameOrCreate(Mockito.any())).thenReturn(customer);
+        Mockito.when(customer.getCurrentCheckout()).thenReturn(checkout);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            checkoutService.updateItems(Mockito.mock(Principal.class), List.of(new CheckoutService.CartOperation(CartOperationType.ADD, 1L, 2)));
+            Mockito.verify(reservations).reserve(checkout.getId(), product, 2);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            Mockito.verify(reservations, Mockito.never()).restore(Mockito.any(), Mockito.any(), Mockito.any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Mockito.verify(reservations).restore(checkout.getId(), List.of(1L), held);
+    }
+
+    @Test
+    @DisplayName("Should fail when a batch holds no cart operation or too many")
+    void whenCartOperationsAreEmptyOrTooMany_thenException() {
+        Principal principal = Mockito.mock(Principal.class);
+        List<CheckoutService.CartOperation> tooMany = Collections.nCopies(CheckoutService.MAX_CART_OPERATIONS + 1, new CheckoutService.CartOperation(CartOperationType.REMOVE, 1L, null));
+
+        Assertions.assertThrows(APIException.class, () -> checkoutService.updateItems(principal, List.of()), "operations must not be empty");
+        Assertions.assertThrows(APIException.class, () -> checkoutService.updateItems(principal, tooMany), "At most 100 operations can be applied at once");
+        Mockito.verifyNoInteractions(productService, checkoutRepository);
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.shoppy.broman.shoppy.service;
+
+import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.model.ProductChange;
+import com.shoppy.repository.ProductChangeRepository;
+import com.shoppy.service.ProductChangeFeed;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductChangeFeedTest {
+
+    @Autowired
+    private ProductChangeRepository changeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ProductChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        changeFeed = TestUtils.createProductChangeFeed(changeRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void whenAProductIsWrittenTwiceInATransaction_thenOneEntryIsRecordedOnCommit() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            changeFeed.saved(1L);
+            changeFeed.saved(2L);
+            changeFeed.deleted(1L);
+            Assertions.assertEquals(0, changeRepository.count());
+        });
+        changeFeed.relay();
+
+        List<ProductChange> changes = changeFeed.read(0, 10);
+        MatcherAssert.assertThat(changes.stream().map(ProductChange::getProductId).toList(), Matchers.contains(1L, 2L));
+        Assertions.assertTrue(changes.get(0).isDeleted());
+        Assertions.assertFalse(changes.get(1).isDeleted());
+    }
+
+    @Test
+    void whenReadingSinceAVersion_thenOnlyLaterEntriesAreReturnedInOrder() {
+        changeFeed.saved(1L);
+        changeFeed.saved(2L);
+        changeFeed.deleted(3L);
+        changeFeed.relay();
+        long first = changeFeed.read(0, 1).get(0).getVersion();
+
+        List<ProductChange> changes = changeFeed.read(first, 10);
+
+        MatcherAssert.assertThat(changes.stream().map(ProductChange::getProductId).toList(), Matchers.contains(2L, 3L));
+        Assertions.assertTrue(changes.get(0).getVersion() < changes.get(1).getVersion());
+    }
+
+    @Test
+    void whenEntriesAreNotRelayedYet_thenTheyAreNotRead() {
+        changeFeed.saved(1L);
+
+        Assertions.assertTrue(changeFeed.read(0, 10).isEmpty());
+    }
+
+    @Test
+    void whenATransactionIsStillOpen_thenLaterWritersDoNotWaitAndItsEntryIsVersionedAfterTheirs() throws Exception {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            changeRepository.append(List.of(new ProductChange(null, null, 1L, false, LocalDateTime.now())));
+            try {
+                CompletableFuture.runAsync(() -> {
+                    changeFeed.saved(2L);
+                    changeFeed.relay();
+                }).get(10, TimeUnit.SECONDS);
+            }
+            catch (Exception exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+        MatcherAssert.assertThat(changeFeed.read(0, 10).stream().map(ProductChange::getProductId).toList(), Matchers.contains(2L));
+        changeFeed.relay();
+
+        List<ProductChange> changes = changeFeed.read(0, 10);
+        MatcherAssert.assertThat(changes.stream().map(ProductChange::getProductId).toList(), Matchers.contains(2L, 1L));
+        Assertions.assertEquals(changes.get(0).getVersion() + 1, changes.get(1).getVersion());
+    }
+
+    @Test
+    void whenATransactionRollsBack_thenItsEntriesAreNeverVersioned() {
+        changeFeed.saved(1L);
+        changeFeed.relay();
+        long last = changeFeed.read(0, 10).get(0).getVersion();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            changeRepository.append(List.of(new ProductChange(null, null, 2L, false, LocalDateTime.now())));
+            status.setRollbackOnly();
+        });
+
+        changeFeed.saved(3L);
+        changeFeed.relay();
+
+        List<ProductChange> changes = changeFeed.read(last, 10);
+        MatcherAssert.assertThat(changes.stream().map(ProductChange::getProductId).toList(), Matchers.contains(3L));
+        Assertions.assertEquals(last + 1, changes.get(0).getVersion());
+    }
+
+}
@@ -1,10 +1,32 @@
 package com.shoppy.broman.shoppy.service;
 
 import com.shoppy.broman.shoppy.TestUtils;
+import com.shoppy.cache.CatalogVersion;
+import com.shoppy.cache.ProductResponseCache;
+import com.shoppy.enumeration.MovementType;
 import com.shoppy.exception.APIException;
+import com.shoppy.inventory.InventoryLedger;
+import com.shoppy.inventory.StockReservations;
+import com.shoppy.inventory.StockStripes;
+import com.shoppy.model.Item;
 import com.shoppy.model.Product;
+import com.shoppy.model.ProductChange;
+import com.shoppy.model.StockStripe;
+import com.shoppy.pagination.KeysetPage;
+import com.shoppy.repository.InventoryMovementRepository;
+import com.shoppy.repository.InventorySnapshotRepository;
+import com.shoppy.repository.ProductChangeRepository;
 import com.shoppy.repository.ProductRepository;
-
+import com.shoppy.repository.StockStripeRepository;
+import com.shoppy.search.CatalogSnapshotIndex;
+import com.shoppy.search.ProductFacetIndex;
+import com.shoppy.search.ProductFacets;
+import com.shoppy.search.ProductFilter;
+import com.shoppy.search.ProductSearchIndex;
+import com.shoppy.search.ProductSuggestionIndex;
+
+import com.shoppy.service.ProductBatch;
+import com.shoppy.service.ProductChanges;
 import com.shoppy.service.ProductService;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -13,23 +35,47 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import org.mockito.InOrder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.LongStream;
 
 class ProductServiceTest {
 
     private final ProductRepository productRepository = Mockito.mock(ProductRepository.class);
+    private final ProductResponseCache responseCache = TestUtils.createProductResponseCache();
+    private final CatalogVersion catalogVersion = new CatalogVersion();
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+    private final ProductSuggestionIndex suggestionIndex = new ProductSuggestionIndex();
+    private final ProductFacetIndex facetIndex = new ProductFacetIndex();
+    private final CatalogSnapshotIndex catalogSnapshot = new CatalogSnapshotIndex(true);
+    private final StockStripeRepository stripeRepository = Mockito.mock(StockStripeRepository.class);
+    private final StockStripes stockStripes = TestUtils.createStockStripes(stripeRepository);
+    private final StockReservations reservations = TestUtils.createStockReservations(true, responseCache);
+    private final InventoryMovementRepository movementRepository = Mockito.mock(InventoryMovementRepository.class);
+    private final InventoryLedger ledger = TestUtils.createInventoryLedger(movementRepository, Mockito.mock(InventorySnapshotRepository.class));
+    private final ProductChangeRepository changeRepository = Mockito.mock(ProductChangeRepository.class);
     private ProductService productService;
 
     @BeforeEach
     void setUp() {
-        productService = new ProductService(productRepository);
+        productService = new ProductService(productRepository, TestUtils.createProductCache(), responseCache, TestUtils.createProductCountCache(), catalogVersion, searchIndex, suggestionIndex, facetIndex, catalogSnapshot, reservations, stockStripes, ledger, TestUtils.createProductChangeFeed(changeRepository), List.of(searchIndex, suggestionIndex, facetIndex, catalogSnapshot, responseCache), Mockito.mock(PlatformTransactionManager.class));
     }
 
     @Test
@@ -38,31 +84,486 @@ class ProductServiceTest {
         Pageable pageable = Pageable.unpaged();
         List<Product> products = List.of();
 
-        Mockito.when(productRepository.findProductsByNameContainingIgnoreCase(query, pageable)).thenReturn(products);
+        Mockito.when(productRepository.findSlice(Mockito.notNull(), Mockito.eq(pageable))).thenReturn(new SliceImpl<>(products));
+
+        MatcherAssert.assertThat(productService.getProducts(query, false, ProductFilter.NONE, pageable).getContent(), Matchers.is(Matchers.equalTo(products)));
+    }
+
+    @Test
+    void whenSearchIndexIsReady_thenProductsAreReturnedInRankOrder() {
+        Product chair = createProduct(1L, "Office chair", "Chair with wheels");
+        Product table = createProduct(2L, "Table", "Goes well with a chair");
+        searchIndex.productSaved(table);
+        searchIndex.productSaved(chair);
+        searchIndex.markReady();
+
+        Mockito.when(productRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(table, chair));
+
+        MatcherAssert.assertThat(productService.getProducts("chair", false, ProductFilter.NONE, Pageable.ofSize(10)), Matchers.contains(chair, table));
+        Mockito.verify(productRepository, Mockito.never()).findSlice(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void whenPageIsSorted_thenIdIsAppendedAsTiebreaker() {
+        Pageable pageable = PageRequest.of(2, 10, Sort.by(Sort.Order.desc("price")));
+        Pageable expected = PageRequest.of(2, 10, Sort.by(Sort.Order.desc("price"), Sort.Order.desc("id")));
+
+        Mockito.when(productRepository.findSlice(null, expected)).thenReturn(new SliceImpl<>(List.of()));
+
+        MatcherAssert.assertThat(productService.getProducts(null, false, ProductFilter.NONE, pageable).getContent(), Matchers.empty());
+        Mockito.verify(productRepository).findSlice(null, expected);
+    }
+
+    @Test
+    void whenCatalogSnapshotIsReady_thenBrowsingSkipsTheRepository() {
+        Product cheap = createProduct(1L, "Cheap", "Cheap");
+        cheap.setPrice(1.0);
+        Mockito.when(productRepository.save(cheap)).thenReturn(cheap);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(cheap));
+        catalogSnapshot.markReady();
+
+        productService.addProduct(cheap);
+
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.asc("price")));
+        MatcherAssert.assertThat(productService.getProducts(null, false, ProductFilter.NONE, pageable), Matchers.contains(Matchers.hasProperty("id", Matchers.is(1L))));
+        Mockito.verify(productRepository, Mockito.never()).findSlice(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void whenFilterIsSetWithoutQuery_thenFilteredQueryIsUsed() {
+        ProductFilter filter = new ProductFilter(null, 10.0, true);
+        Pageable pageable = Pageable.ofSize(10);
+
+        Mockito.when(productRepository.findSlice(Mockito.notNull(), Mockito.eq(pageable))).thenReturn(new SliceImpl<>(List.of()));
+
+        MatcherAssert.assertThat(productService.getProducts(null, false, filter, pageable).getContent(), Matchers.empty());
+        Mockito.verify(productRepository, Mockito.never()).findSlice(null, pageable);
+    }
+
+    @Test
+    void whenSearchHasMoreMatches_thenSliceHasNext() {
+        Product first = createProduct(1L, "Lamp", "Lamp");
+        Product second = createProduct(2L, "Desk lamp", "Lamp");
+        List.of(first, second).forEach(searchIndex::productSaved);
+        searchIndex.markReady();
+
+        Mockito.when(productRepository.findAllById(Mockito.anyList())).thenReturn(List.of(first, second));
+
+        Assertions.assertTrue(productService.getProducts("lamp", false, ProductFilter.NONE, PageRequest.of(0, 1)).hasNext());
+        Assertions.assertFalse(productService.getProducts("lamp", false, ProductFilter.NONE, PageRequest.of(1, 1)).hasNext());
+    }
+
+    @Test
+    void whenCountIsRequestedTwice_thenTheDatabaseIsCountedOnce() {
+        Mockito.when(productRepository.count(Mockito.<Specification<Product>>isNull())).thenReturn(42L);
+
+        Assertions.assertEquals(42, productService.getProductCount(null, false, ProductFilter.NONE));
+        Assertions.assertEquals(42, productService.getProductCount(null, false, ProductFilter.NONE));
+        Mockito.verify(productRepository, Mockito.times(1)).count(Mockito.<Specification<Product>>isNull());
+    }
+
+    @Test
+    void whenFacetIndexIsReady_thenCountSkipsTheDatabase() {
+        facetIndex.productSaved(createProduct(1L, "Lamp", "Lamp"));
+        facetIndex.productSaved(createProduct(2L, "Chair", "Chair"));
+        facetIndex.markReady();
+
+        Assertions.assertEquals(2, productService.getProductCount(null, false, ProductFilter.NONE));
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void whenDecrementingStock_thenProductsAreDecrementedInIdOrderAndReindexed() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        Product chair = createProduct(1L, "Chair", "Chair");
+        Item lampItem = TestUtils.createItem(lamp);
+        Item chairItem = TestUtils.createItem(chair);
+        chairItem.setQuantity(3);
+        facetIndex.productSaved(lamp);
+        facetIndex.productSaved(chair);
+        facetIndex.markReady();
+        String etag = catalogVersion.etag();
+
+        Mockito.when(productRepository.decrementStock(Mockito.any(), Mockito.anyInt())).thenAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            product.setStock(product.getStock() - invocation.<Integer>getArgument(1));
+            return product.getStock() >= 0;
+        });
+        chair.setStock(3);
+        Mockito.when(productRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(chair, lamp));
+
+        productService.decrementStock(List.of(lampItem, chairItem));
+
+        InOrder inOrder = Mockito.inOrder(productRepository);
+        inOrder.verify(productRepository).decrementStock(chair, 3);
+        inOrder.verify(productRepository).decrementStock(lamp, 1);
+        Assertions.assertEquals(1, facetIndex.count(null, new ProductFilter(null, null, true)).total());
+        Assertions.assertNotEquals(etag, catalogVersion.etag());
+    }
+
+    @Test
+    void whenAProductIsStriped_thenItsStripesAreDecrementedInstead() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        StockStripeRepository.StripeStock stripe = Mockito.mock(StockStripeRepository.StripeStock.class);
+        Mockito.when(stripe.getId()).thenReturn(7L);
+        Mockito.when(stripe.getStock()).thenReturn(5);
+        Mockito.when(stripeRepository.findStockByProductId(2L)).thenReturn(List.of(stripe));
+        Mockito.when(stripeRepository.tryDecrementStock(7L, 1)).thenReturn(true);
+
+        productService.decrementStock(List.of(TestUtils.createItem(lamp)));
+
+        Mockito.verify(productRepository, Mockito.never()).decrementStock(Mockito.any(), Mockito.anyInt());
+        MatcherAssert.assertThat(stockStripes.drainChanged(), Matchers.contains(2L));
+    }
+
+    @Test
+    void whenAProductIsStripedWhileItsRowIsDecremented_thenItsStripesAreDecrementedToo() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        StockStripeRepository.StripeStock stripe = Mockito.mock(StockStripeRepository.StripeStock.class);
+        Mockito.when(stripe.getId()).thenReturn(7L);
+        Mockito.when(stripe.getStock()).thenReturn(5);
+        Mockito.when(stripeRepository.findStockByProductId(2L)).thenReturn(List.of(), List.of(stripe));
+        Mockito.when(productRepository.decrementStock(lamp, 1)).thenReturn(true);
+        Mockito.when(stripeRepository.findByProductIdForUpdate(2L)).thenReturn(List.of(new StockStripe(7L, 2L, 0, 5)));
+        Mockito.when(stripeRepository.tryDecrementStock(7L, 1)).thenReturn(true);
+
+        productService.decrementStock(List.of(TestUtils.createItem(lamp)));
+
+        Mockito.verify(stripeRepository).tryDecrementStock(7L, 1);
+        MatcherAssert.assertThat(stockStripes.drainChanged(), Matchers.contains(2L));
+    }
+
+    @Test
+    void whenStockIsDecremented_thenEverySaleIsRecorded() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        Item item = TestUtils.createItem(lamp);
+        Mockito.when(productRepository.decrementStock(lamp, item.getQuantity())).thenReturn(true);
+
+        productService.decrementStock(List.of(item));
+
+        Mockito.verify(movementRepository).append(Mockito.argThat(movements -> movements.size() == 1
+                && movements.get(0).getType() == MovementType.SALE
+                && movements.get(0).getQuantity() == -item.getQuantity()));
+    }
+
+    @Test
+    void whenStockIsReceived_thenItIsAddedAndRecorded() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        int stock = lamp.getStock();
+        Mockito.when(productRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(lamp));
+
+        productService.recordMovement(2L, MovementType.RECEIPT, 4);
+
+        Assertions.assertEquals(stock + 4, lamp.getStock());
+        Mockito.verify(movementRepository).append(Mockito.argThat(movements -> movements.get(0).getType() == MovementType.RECEIPT));
+    }
+
+    @Test
+    void whenAnAdjustmentTakesMoreThanTheStock_thenConflict() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        Mockito.when(productRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(lamp));
+
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.recordMovement(2L, MovementType.ADJUSTMENT, -lamp.getStock() - 1));
+        Assertions.assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        Mockito.verifyNoInteractions(movementRepository);
+    }
+
+    @Test
+    void whenASaleIsRecordedByHand_thenException() {
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.recordMovement(2L, MovementType.SALE, -1));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+
+    @Test
+    void whenProductsAreWritten_thenTheChangesAreRecorded() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+
+        productService.addProduct(product);
+        productService.deleteProduct(1L);
+
+        ArgumentCaptor<List<ProductChange>> changes = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(changeRepository, Mockito.times(2)).append(changes.capture());
+        Assertions.assertFalse(changes.getAllValues().get(0).get(0).isDeleted());
+        Assertions.assertTrue(changes.getAllValues().get(1).get(0).isDeleted());
+    }
+
+    @Test
+    void whenStockChangesAreHandedOverInATransaction_thenTheyAreAppendedOnceBeforeTheCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            productService.stockChanged(List.of(1L, 2L));
+            Mockito.verifyNoInteractions(changeRepository);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.beforeCommit(false));
+        }
+        finally {
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ArgumentCaptor<List<ProductChange>> changes = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(changeRepository).append(changes.capture());
+        MatcherAssert.assertThat(changes.getValue().stream().map(ProductChange::getProductId).toList(), Matchers.contains(1L, 2L));
+    }
+
+    @Test
+    void whenChangesAreRead_thenDeletedAndMissingProductsAreTombstones() {
+        Product lamp = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(changeRepository.findChanges(5L, Pageable.ofSize(3))).thenReturn(List.of(
+                new ProductChange(null, 6L, 1L, false, null),
+                new ProductChange(null, 7L, 2L, false, null),
+                new ProductChange(null, 8L, 3L, true, null)
+        ));
+        Mockito.when(productRepository.findAllById(Set.of(1L, 2L))).thenReturn(List.of(lamp));
+
+        ProductChanges changes = productService.getChanges(5L, 2);
+
+        Assertions.assertTrue(changes.isHasMore());
+        Assertions.assertEquals(7L, changes.getNext());
+        MatcherAssert.assertThat(changes.getChanges(), Matchers.hasSize(2));
+        Assertions.assertEquals(lamp.getName(), changes.getChanges().get(0).product().getName());
+        Assertions.assertTrue(changes.getChanges().get(1).deleted());
+    }
+
+    @Test
+    void whenChangeLimitIsOutOfRange_thenException() {
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.getChanges(0L, ProductService.MAX_CHANGES_SIZE + 1));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+
+    @Test
+    void whenStripeCountIsOutOfRange_thenException() {
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.stripeStock(1L, StockStripes.MAX_STRIPES + 1));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+
+    @Test
+    void whenAProductIsShort_thenDecrementFailsWithConflict() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        Product chair = createProduct(1L, "Chair", "Chair");
+        String etag = catalogVersion.etag();
+
+        Mockito.when(productRepository.decrementStock(chair, 1)).thenReturn(false);
+
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.decrementStock(List.of(TestUtils.createItem(lamp), TestUtils.createItem(chair))));
+        Assertions.assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        Mockito.verify(productRepository, Mockito.never()).decrementStock(Mockito.eq(lamp), Mockito.anyInt());
+        Assertions.assertEquals(etag, catalogVersion.etag());
+    }
+
+    @Test
+    void whenStockIsReserved_thenTheCatalogReportsTheAvailableStock() {
+        Product lamp = createProduct(1L, "Lamp", "Lamp");
+        Mockito.when(productRepository.save(lamp)).thenReturn(lamp);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(lamp));
+        Mockito.when(productRepository.findById(1L)).thenReturn(Optional.of(lamp));
+        catalogSnapshot.markReady();
+        productService.addProduct(lamp);
+        productService.getSerializedProduct(1L);
+        String etag = catalogVersion.etag();
+
+        reservations.reserve(UUID.randomUUID(), lamp, 30);
+
+        MatcherAssert.assertThat(new String(productService.getSerializedProduct(1L).json()), Matchers.containsString("\"stock\":70"));
+        MatcherAssert.assertThat(productService.withReservations(productService.getProducts(null, false, ProductFilter.NONE, Pageable.ofSize(10)).getContent()),
+                Matchers.contains(Matchers.hasProperty("stock", Matchers.is(70))));
+        Assertions.assertTrue(productService.withReservations(new ProductFilter(null, null, true)).soldOut().isEmpty());
+        Assertions.assertEquals(etag, catalogVersion.etag());
+        Assertions.assertEquals(100, lamp.getStock());
+
+        reservations.reserve(UUID.randomUUID(), lamp, 70);
+
+        MatcherAssert.assertThat(productService.withReservations(new ProductFilter(null, null, true)).soldOut(), Matchers.contains(1L));
+        Assertions.assertTrue(productService.hasReservations());
+    }
+
+    @Test
+    void whenFacetsAreRequestedForAQuery_thenOnlyMatchingProductsAreCounted() {
+        Product lamp = createProduct(1L, "Desk lamp", "Lamp");
+        Product chair = createProduct(2L, "Chair", "Chair");
+        List.of(lamp, chair).forEach(product -> {
+            searchIndex.productSaved(product);
+            facetIndex.productSaved(product);
+        });
+        searchIndex.markReady();
+        facetIndex.markReady();
+
+        ProductFacets facets = productService.getFacets("lamp", false, ProductFilter.NONE);
+        Assertions.assertEquals(1, facets.total());
+    }
+
+    @Test
+    void whenFacetIndexIsNotReady_thenException() {
+        Assertions.assertThrows(APIException.class, () -> productService.getFacets(null, false, ProductFilter.NONE), "Facet counts are not available yet");
+    }
+
+    @Test
+    void whenProductIsAddedOrDeleted_thenSearchIndexIsUpdated() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(product));
+        searchIndex.markReady();
+
+        productService.addProduct(product);
+        MatcherAssert.assertThat(searchIndex.search("lamp", Pageable.ofSize(10)).ids(), Matchers.contains(1L));
+
+        productService.deleteProduct(1L);
+        MatcherAssert.assertThat(searchIndex.search("lamp", Pageable.ofSize(10)).ids(), Matchers.empty());
+    }
+
+    @Test
+    void whenProductsArePublishedWhileTheIndexesLoad_thenTheirStreamedStateIsSkipped() {
+        Product lamp = createProduct(1L, "Lamp", "Desk lamp");
+        Product chair = createProduct(2L, "Chair", "Chair");
+        Product table = createProduct(3L, "Table", "Table");
+        Mockito.when(productRepository.save(lamp)).thenReturn(lamp);
+        Mockito.when(productRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(chair));
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(lamp));
+        List<Product> loaded = new ArrayList<>();
+
+        productService.indexLoadStarted();
+        productService.addProduct(lamp);
+        productService.deleteProduct(2L);
+        productService.indexLoaded(createProduct(1L, "Old lamp", "Desk lamp"), loaded::add);
+        productService.indexLoaded(chair, loaded::add);
+        productService.indexLoaded(table, loaded::add);
+        productService.indexLoadFinished();
+        productService.indexLoaded(chair, loaded::add);
+
+        MatcherAssert.assertThat(loaded, Matchers.contains(table, chair));
+    }
+
+    @Test
+    void whenProductIsAddedInATransaction_thenIndexesWaitForTheCommit() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(product));
+        searchIndex.markReady();
+        String etag = catalogVersion.etag();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            productService.addProduct(product);
+            MatcherAssert.assertThat(searchIndex.search("lamp", Pageable.ofSize(10)).ids(), Matchers.empty());
+            Assertions.assertEquals(etag, catalogVersion.etag());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        MatcherAssert.assertThat(searchIndex.search("lamp", Pageable.ofSize(10)).ids(), Matchers.contains(1L));
+        Assertions.assertNotEquals(etag, catalogVersion.etag());
+    }
+
+    @Test
+    void whenProductIsUpdated_thenTheCommittedRowIsPublished() {
+        Product written = createProduct(1L, "Lamp", "Desk lamp");
+        Product committed = createProduct(1L, "Lamp", "Desk lamp");
+        committed.setStock(0);
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(written));
+        Mockito.when(productRepository.save(written)).thenReturn(written);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(committed));
+        facetIndex.markReady();
+
+        productService.updateProduct(1L, written);
+
+        Assertions.assertEquals(0, facetIndex.count(null, new ProductFilter(null, null, true)).total());
+    }
+
+    @Test
+    void whenProductsAreWritten_thenCatalogVersionIsBumped() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+
+        productService.addProduct(product);
+        productService.updateProduct(1L, product);
+        productService.deleteProduct(1L);
+
+        Assertions.assertEquals(3, catalogVersion.current());
+    }
+
+    @Test
+    void whenProductIsAdded_thenItIsSuggested() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(product));
+
+        productService.addProduct(product);
+
+        MatcherAssert.assertThat(productService.getSuggestions("la", 5), Matchers.contains(new ProductSuggestionIndex.Suggestion(1L, "Lamp")));
+    }
 
-        MatcherAssert.assertThat(productService.getProducts(query, null, pageable), Matchers.is(Matchers.equalTo(products)));
+    @Test
+    void whenSuggestionPrefixIsBlank_thenException() {
+        Assertions.assertThrows(APIException.class, () -> productService.getSuggestions(" ", 5), "Prefix value is empty");
     }
 
     @Test
     void whenQueryIsPresentButEmpty_thenException() {
         String query = "";
-        Sort sort = Sort.unsorted();
-        Assertions.assertThrows(APIException.class, () -> productService.getProducts(query, sort, null), "Query value is empty");
+        Pageable pageable = Pageable.unpaged();
+        Assertions.assertThrows(APIException.class, () -> productService.getProducts(query, false, ProductFilter.NONE, pageable), "Query value is empty");
     }
 
     @Test
     void whenQueryIsNotPresent_thenReturnAllProducts() {
-        Sort sort = Sort.unsorted();
         Pageable pageable = Pageable.unpaged();
         List<Product> products = List.of();
 
-        Mockito.when(productRepository.findAll(pageable)).thenReturn(Page.empty());
+        Mockito.when(productRepository.findSlice(null, pageable)).thenReturn(new SliceImpl<>(products));
 
-        MatcherAssert.assertThat(productService.getProducts(null, sort, pageable), Matchers.is(Matchers.equalTo(products)));
+        MatcherAssert.assertThat(productService.getProducts(null, false, ProductFilter.NONE, pageable).getContent(), Matchers.is(Matchers.equalTo(products)));
+    }
+
+    @Test
+    void whenExportingProducts_thenEveryProductIsHandedToTheConsumer() {
+        List<Product> products = List.of(TestUtils.createProduct(), TestUtils.createProduct());
+        List<Product> exported = new ArrayList<>();
+
+        Mockito.when(productRepository.stream(Mockito.isNull(), Mockito.any(Sort.class))).thenReturn(products.stream());
+
+        productService.exportProducts(null, false, ProductFilter.NONE, Sort.unsorted(), exported::add);
+        Assertions.assertEquals(products, exported);
+    }
+
+    @Test
+    void whenExportingWithAnEmptyQuery_thenException() {
+        Sort sort = Sort.unsorted();
+        Assertions.assertThrows(APIException.class, () -> productService.exportProducts(" ", false, ProductFilter.NONE, sort, product -> {}), "Query value is empty");
+    }
+
+    @Test
+    void whenMoreProductsThanPageSizeAreFound_thenNextCursorIsReturned() {
+        List<Product> products = List.of(TestUtils.createProduct(), TestUtils.createProduct(), TestUtils.createProduct());
+
+        Mockito.when(productRepository.findAll(Mockito.isNull(), Mockito.any(Sort.class), Mockito.eq(3))).thenReturn(products);
+
+        KeysetPage<Product> page = productService.getProductsAfter(Sort.unsorted(), ProductFilter.NONE, "", 2);
+        Assertions.assertEquals(2, page.getContent().size());
+        Assertions.assertNotNull(page.getNext());
+    }
+
+    @Test
+    void whenLastPageIsReached_thenNextCursorIsNull() {
+        List<Product> products = List.of(TestUtils.createProduct());
+
+        Mockito.when(productRepository.findAll(Mockito.isNull(), Mockito.any(Sort.class), Mockito.eq(3))).thenReturn(products);
+
+        KeysetPage<Product> page = productService.getProductsAfter(Sort.unsorted(), ProductFilter.NONE, "", 2);
+        Assertions.assertEquals(1, page.getContent().size());
+        Assertions.assertNull(page.getNext());
     }
 
     @Test
     void whenAddProductIsCalled_thenSuccess() {
+        Mockito.when(productRepository.save(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0));
         productService.addProduct(TestUtils.createProduct());
         Mockito.verify(productRepository).save(Mockito.any());
     }
@@ -72,7 +573,61 @@ class ProductServiceTest {
         Product product = TestUtils.createProduct();
         Mockito.when(productRepository.findById(product.getId())).thenReturn(Optional.of(product));
 
-        MatcherAssert.assertThat(productService.getProductById(product.getId()), Matchers.is(Matchers.sameInstance(product)));
+        MatcherAssert.assertThat(productService.getProductById(product.getId()), Matchers.samePropertyValuesAs(product));
+    }
+
+    @Test
+    void whenProductsAreRequestedByIds_thenTheyAreReturnedInRequestOrderWithTheMissingIds() {
+        Product first = createProduct(1L, "First", "First");
+        Product second = createProduct(2L, "Second", "Second");
+
+        Mockito.when(productRepository.findAllById(Set.of(1L, 2L, 3L))).thenReturn(List.of(first, second));
+
+        ProductBatch batch = productService.getProductsByIds(List.of(2L, 3L, 1L, 2L));
+        MatcherAssert.assertThat(batch.getProducts(), Matchers.contains(Matchers.samePropertyValuesAs(second), Matchers.samePropertyValuesAs(first)));
+        MatcherAssert.assertThat(batch.getMissing(), Matchers.contains(3L));
+    }
+
+    @Test
+    void whenProductsAreRequestedByIdsTwice_thenTheCacheIsUsed() {
+        Product product = createProduct(1L, "First", "First");
+
+        Mockito.when(productRepository.findAllById(Set.of(1L))).thenReturn(List.of(product));
+
+        productService.getProductsByIds(List.of(1L));
+        MatcherAssert.assertThat(productService.getProductsByIds(List.of(1L)).getProducts(), Matchers.contains(Matchers.samePropertyValuesAs(product)));
+        Mockito.verify(productRepository, Mockito.times(1)).findAllById(Mockito.any());
+    }
+
+    @Test
+    void whenTooManyIdsAreRequested_thenException() {
+        List<Long> ids = LongStream.rangeClosed(1, ProductService.MAX_LOOKUP_SIZE + 1).boxed().toList();
+        Assertions.assertThrows(APIException.class, () -> productService.getProductsByIds(ids));
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void whenSerializedProductIsRequestedAgain_thenItIsServedFromTheCacheUntilUpdated() {
+        Product product = createProduct(1L, "Lamp", "Desk lamp");
+        Mockito.when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(product));
+
+        ProductResponseCache.SerializedProduct first = productService.getSerializedProduct(1L);
+        Assertions.assertSame(first, productService.getSerializedProduct(1L));
+
+        product.setName("Floor lamp");
+        productService.updateProduct(1L, product);
+
+        MatcherAssert.assertThat(new String(productService.getSerializedProduct(1L).json()), Matchers.containsString("Floor lamp"));
+        Mockito.verify(productRepository, Mockito.times(2)).findById(1L);
+    }
+
+    @Test
+    void whenSerializedProductIsMissing_thenException() {
+        Mockito.when(productRepository.findById(1L)).thenReturn(Optional.empty());
+        Assertions.assertThrows(APIException.class, () -> productService.getSerializedProduct(1L), "product not found");
     }
 
     @Test
@@ -80,7 +635,33 @@ class ProductServiceTest {
         Product product = TestUtils.createProduct();
         Mockito.when(productRepository.findById(product.getId())).thenReturn(Optional.of(product));
 
-        MatcherAssert.assertThat(productService.getProductNotNull(product.getId()), Matchers.is(Matchers.sameInstance(product)));
+        MatcherAssert.assertThat(productService.getProductNotNull(product.getId()), Matchers.samePropertyValuesAs(product));
+    }
+
+    @Test
+    void whenGetProductByIdIsCalledTwice_thenRepositoryIsQueriedOnce() {
+        Product product = TestUtils.createProduct();
+        Mockito.when(productRepository.findById(product.getId())).thenReturn(Optional.of(product));
+
+        productService.getProductById(product.getId());
+        MatcherAssert.assertThat(productService.getProductById(product.getId()), Matchers.samePropertyValuesAs(product));
+
+        Mockito.verify(productRepository, Mockito.times(1)).findById(product.getId());
+    }
+
+    @Test
+    void whenUpdatingACachedProduct_thenCacheIsInvalidated() {
+        Product product = TestUtils.createProduct();
+        Mockito.when(productRepository.findById(product.getId())).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.findByIdForUpdate(product.getId())).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.save(product)).thenReturn(product);
+        Mockito.when(productRepository.findAllById(List.of(product.getId()))).thenReturn(List.of(product));
+
+        productService.getProductById(product.getId());
+        productService.updateProduct(product.getId(), product);
+        productService.getProductById(product.getId());
+
+        Mockito.verify(productRepository, Mockito.times(2)).findById(product.getId());
     }
 
     @Test
@@ -93,41 +674,86 @@ class ProductServiceTest {
     void whenUpdatingAExistingProduct_thenSuccess() {
         Product product = TestUtils.createProduct();
 
-        Mockito.when(productRepository.existsById(product.getId())).thenReturn(true);
+        Mockito.when(productRepository.findByIdForUpdate(product.getId())).thenReturn(Optional.of(product));
         Mockito.when(productRepository.findById(product.getId())).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.save(product)).thenReturn(product);
 
         productService.updateProduct(product.getId(), product);
 
-        Mockito.verify(productRepository).existsById(product.getId());
+        Mockito.verify(productRepository).findByIdForUpdate(product.getId());
         Mockito.verify(productRepository).save(product);
     }
 
+    @Test
+    void whenUpdatingTheStock_thenTheDifferenceIsRecordedAsAnAdjustment() {
+        Product current = createProduct(1L, "Lamp", "Desk lamp");
+        Product updated = createProduct(1L, "Lamp", "Desk lamp");
+        updated.setStock(current.getStock() + 5);
+        Mockito.when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(current));
+        Mockito.when(productRepository.save(updated)).thenReturn(updated);
+
+        productService.updateProduct(1L, updated);
+
+        Mockito.verify(movementRepository).append(Mockito.argThat(movements -> movements.size() == 1
+                && movements.get(0).getType() == MovementType.ADJUSTMENT
+                && movements.get(0).getQuantity() == 5));
+    }
+
     @Test
     void whenUpdatingANotExistingProduct_thenException() {
         Product product = TestUtils.createProduct();
         Long productId = product.getId();
-        Mockito.when(productRepository.existsById(productId)).thenReturn(false);
         Assertions.assertThrows(APIException.class, () -> productService.updateProduct(productId, product), "product not found");
     }
 
     @Test
     void whenDeletingAnExistingProduct_thenSuccess() {
-        Long productId = 0L;
+        Product product = TestUtils.createProduct();
+        Long productId = product.getId();
 
-        Mockito.when(productRepository.existsById(productId)).thenReturn(true);
+        Mockito.when(productRepository.findByIdForUpdate(productId)).thenReturn(Optional.of(product));
 
         productService.deleteProduct(productId);
 
-        Mockito.verify(productRepository).deleteById(productId);
+        Mockito.verify(productRepository).delete(product);
+    }
+
+    @Test
+    void whenDeletingAProduct_thenItsStockIsClosedAndItsStripesRemoved() {
+        Product lamp = createProduct(2L, "Lamp", "Lamp");
+        List<StockStripe> stripes = List.of(new StockStripe(1L, 2L, 0, 3), new StockStripe(2L, 2L, 1, 4));
+        Mockito.when(productRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(lamp));
+        Mockito.when(stripeRepository.findByProductIdForUpdate(2L)).thenReturn(stripes);
+
+        productService.deleteProduct(2L);
+
+        Mockito.verify(movementRepository).append(Mockito.argThat(movements -> movements.size() == 1
+                && movements.get(0).getType() == MovementType.CLOSING
+                && movements.get(0).getQuantity() == -7));
+        Mockito.verify(stripeRepository).deleteAllInBatch(stripes);
+    }
+
+    @Test
+    void whenAClosingIsRecordedByHand_thenException() {
+        APIException exception = Assertions.assertThrows(APIException.class, () -> productService.recordMovement(2L, MovementType.CLOSING, -1));
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
     }
 
     @Test
     void whenDeletingANotExistingProduct_thenException() {
         Long productId = 0L;
 
-        Mockito.when(productRepository.existsById(productId)).thenReturn(false);
+        Mockito.when(productRepository.findByIdForUpdate(productId)).thenReturn(Optional.empty());
 
         Assertions.assertThrows(APIException.class, () -> productService.deleteProduct(productId), "product not found");
     }
 
-}
\ No newline at end of file
+    private static Product createProduct(Long id, String name, String description) {
+        Product product = TestUtils.createProduct();
+        product.setId(id);
+        product.setName(name);
+        product.setDescription(description);
+        return product;
+    }
+
+}